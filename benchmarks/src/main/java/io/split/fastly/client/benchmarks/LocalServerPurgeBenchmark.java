@@ -0,0 +1,81 @@
+package io.split.fastly.client.benchmarks;
+
+import io.split.fastly.client.FastlyApiClient;
+import io.split.fastly.client.LocalFastlyServer;
+import org.asynchttpclient.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures purges end to end, through the default executor and a real connection pool, against an in-process
+ * {@link LocalFastlyServer}. Unlike {@link PurgeBenchmark}, this includes encoding, the loopback round trip and
+ * response handling, so it shows how many purges per second one client can sustain.
+ * <p>
+ * Run with <code>java -jar target/benchmarks.jar LocalServerPurgeBenchmark -prof gc</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LocalServerPurgeBenchmark {
+
+  private LocalFastlyServer server;
+  private FastlyApiClient client;
+  private String url;
+  private List<String> keys;
+
+  @Setup
+  public void setup() throws InterruptedException {
+    server = new LocalFastlyServer();
+    url = server.getBaseUrl();
+    client = new FastlyApiClient("benchmarkApiKey", "benchmarkServiceId");
+    keys = new ArrayList<>();
+    for (int i = 0; i < 256; i++) {
+      keys.add("surrogate-key-" + i);
+    }
+  }
+
+  /**
+   * The server records every request, drop them so memory doesn't grow across iterations.
+   */
+  @Setup(Level.Iteration)
+  public void clearRequests() {
+    server.clearRequests();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    client.closeConnectionPool();
+    server.close();
+  }
+
+  @Benchmark
+  public Response purgeKey() {
+    return client.purgeKeyAsync("surrogate-key", Collections.emptyMap(), url).join();
+  }
+
+  @Benchmark
+  public Response purgeKeys() {
+    return client.purgeKeysAsync(keys, url).join();
+  }
+}
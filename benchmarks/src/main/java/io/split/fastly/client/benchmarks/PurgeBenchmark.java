@@ -0,0 +1,98 @@
+package io.split.fastly.client.benchmarks;
+
+import io.split.fastly.client.FastlyApiClient;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of building purge requests, without any network involved.
+ * <p>
+ * Run with <code>java -jar target/benchmarks.jar -prof gc</code> to get allocations per call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PurgeBenchmark {
+
+  private FastlyApiClient client;
+  private List<String> keys;
+
+  @Setup
+  public void setup() {
+    client = new FastlyApiClient("benchmarkApiKey", "benchmarkServiceId", null, new NoopExecutor());
+    keys = new ArrayList<>();
+    for (int i = 0; i < 256; i++) {
+      keys.add("surrogate-key-" + i);
+    }
+  }
+
+  @Benchmark
+  public Future<Response> purgeKey() {
+    return client.purgeKey("surrogate-key");
+  }
+
+  @Benchmark
+  public Future<Response> softPurgeKey() {
+    return client.softPurgeKey("surrogate-key");
+  }
+
+  @Benchmark
+  public Future<Response> purgeKeys() {
+    return client.purgeKeys(keys);
+  }
+
+  @Benchmark
+  public Future<Response> purgeUrl() {
+    return client.purgeUrl("https://www.example.com/some/path");
+  }
+
+  /**
+   * Accepts every request and returns an already completed future, so only request construction is measured.
+   */
+  static final class NoopExecutor implements FastlyApiClient.AsyncHttpExecutor {
+
+    private static final CompletableFuture<Response> DONE = CompletableFuture.completedFuture(null);
+
+    @Override
+    public Future<Response> execute(String apiUrl, FastlyApiClient.Method method, Map<String, String> headers,
+        Map<String, String> parameters) {
+      return DONE;
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(String apiUrl, FastlyApiClient.Method method,
+        Map<String, String> headers, Map<String, String> parameters) {
+      return DONE;
+    }
+
+    @Override
+    public CompletableFuture<Response> executeStreamAsync(String apiUrl, FastlyApiClient.Method method,
+        Map<String, String> headers, BodyGenerator body) {
+      return DONE;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package io.split.fastly.client.soak;
+
+import com.google.common.base.Preconditions;
+import io.split.fastly.client.FastlyApiClient;
+import org.asynchttpclient.Response;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the purges of a trace at a fixed rate, whether or not earlier ones were answered.
+ * <p>
+ * The i-th purge is due at {@code start + i / qps}. A closed loop, which waits for responses before sending more,
+ * sends less when the server slows down and only measures the requests it managed to send: that coordinated
+ * omission hides the very stalls a soak test looks for. Here the schedule never moves, and latency is measured from
+ * the due time, so time spent queued in the client or in the generator itself is counted.
+ */
+public final class OpenLoopGenerator {
+
+  private final FastlyApiClient _client;
+  private final String _fastlyUrl;
+  private final PurgeTrace _trace;
+  private final double _qps;
+  private final long _maxOutstanding;
+
+  /**
+   * @param maxOutstanding purges waiting for a response above which the next ones are skipped, and reported as
+   *     such, instead of piling up until the JVM runs out of memory.
+   */
+  public OpenLoopGenerator(FastlyApiClient client, String fastlyUrl, PurgeTrace trace, double qps,
+      long maxOutstanding) {
+    Preconditions.checkArgument(qps > 0, "qps must be positive");
+    Preconditions.checkArgument(maxOutstanding > 0, "maxOutstanding must be positive");
+    _client = Preconditions.checkNotNull(client, "client cannot be null!");
+    _fastlyUrl = Preconditions.checkNotNull(fastlyUrl, "fastlyUrl cannot be null!");
+    _trace = Preconditions.checkNotNull(trace, "trace cannot be null!");
+    _qps = qps;
+    _maxOutstanding = maxOutstanding;
+  }
+
+  /**
+   * Sends purges for {@code duration}, then waits up to {@code drain} for the outstanding ones.
+   */
+  public SoakReport run(String name, long duration, long drain, TimeUnit unit) throws InterruptedException {
+    SoakReport report = new SoakReport(name);
+    AtomicLong outstanding = new AtomicLong();
+    long skipped = 0;
+    double intervalNanos = TimeUnit.SECONDS.toNanos(1) / _qps;
+    long durationNanos = unit.toNanos(duration);
+
+    report.start();
+    long start = System.nanoTime();
+    for (long i = 0; ; i++) {
+      long due = start + (long) (i * intervalNanos);
+      if (due - start >= durationNanos) {
+        break;
+      }
+      long wait;
+      while ((wait = due - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+      if (outstanding.get() >= _maxOutstanding) {
+        skipped++;
+        continue;
+      }
+      outstanding.incrementAndGet();
+      report.sent(System.nanoTime() - due);
+      send(_trace.get(i)).whenComplete((r, t) -> {
+        long latency = System.nanoTime() - due;
+        if (t != null) {
+          Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+          report.failed(latency, cause.getClass().getSimpleName());
+        } else if (r.getStatusCode() >= 200 && r.getStatusCode() < 300) {
+          report.succeeded(latency);
+        } else {
+          report.failed(latency, "HTTP " + r.getStatusCode());
+        }
+        outstanding.decrementAndGet();
+      });
+    }
+
+    long drainUntil = System.nanoTime() + unit.toNanos(drain);
+    while (outstanding.get() > 0 && drainUntil - System.nanoTime() > 0) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    report.end(outstanding.get(), skipped);
+    return report;
+  }
+
+  private CompletableFuture<Response> send(PurgeOp op) {
+    try {
+      return op.send(_client, _fastlyUrl);
+    } catch (RuntimeException e) {
+      CompletableFuture<Response> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package io.split.fastly.client.soak;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.split.fastly.client.FastlyApiClient;
+import org.asynchttpclient.Response;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One purge of a trace.
+ * <p>
+ * Written one per line as the kind followed by its arguments: <code>key k1</code>, <code>soft-key k1</code>,
+ * <code>batch k1 k2 k3</code>, <code>soft-batch k1 k2</code>, <code>url https://www.example.com/page</code> or
+ * <code>all</code>. Url purges are sent to the url as is, everything else to the base url under test.
+ */
+public final class PurgeOp {
+
+  public enum Kind {
+    KEY("key"),
+    SOFT_KEY("soft-key"),
+    BATCH("batch"),
+    SOFT_BATCH("soft-batch"),
+    URL("url"),
+    ALL("all");
+
+    private final String _name;
+
+    Kind(String name) {
+      _name = name;
+    }
+
+    public String getName() {
+      return _name;
+    }
+
+    public static Kind of(String name) {
+      for (Kind kind : values()) {
+        if (kind._name.equals(name.toLowerCase(Locale.ROOT))) {
+          return kind;
+        }
+      }
+      throw new IllegalArgumentException("unknown purge kind " + name);
+    }
+  }
+
+  private static final Splitter WHITESPACE = Splitter.on(' ').trimResults().omitEmptyStrings();
+  private static final Map<String, String> SOFT_PURGE_HEADER = ImmutableMap.of("Fastly-Soft-Purge", "1");
+
+  private final Kind _kind;
+  private final List<String> _arguments;
+
+  public PurgeOp(Kind kind, List<String> arguments) {
+    _kind = kind;
+    _arguments = ImmutableList.copyOf(arguments);
+    if (kind != Kind.ALL && _arguments.isEmpty()) {
+      throw new IllegalArgumentException(kind.getName() + " needs an argument");
+    }
+  }
+
+  /**
+   * @return null for blank lines and comments, starting with <code>#</code>.
+   */
+  public static PurgeOp parse(String line) {
+    String trimmed = line.trim();
+    if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+      return null;
+    }
+    List<String> tokens = WHITESPACE.splitToList(trimmed);
+    return new PurgeOp(Kind.of(tokens.get(0)), tokens.subList(1, tokens.size()));
+  }
+
+  public Kind getKind() {
+    return _kind;
+  }
+
+  public List<String> getArguments() {
+    return _arguments;
+  }
+
+  public CompletableFuture<Response> send(FastlyApiClient client, String fastlyUrl) {
+    switch (_kind) {
+      case KEY:
+        return client.purgeKeyAsync(_arguments.get(0), Collections.emptyMap(), fastlyUrl);
+      case SOFT_KEY:
+        return client.purgeKeyAsync(_arguments.get(0), SOFT_PURGE_HEADER, fastlyUrl);
+      case BATCH:
+        return client.purgeKeysAsync(_arguments, Collections.emptyMap(), fastlyUrl);
+      case SOFT_BATCH:
+        return client.purgeKeysAsync(_arguments, SOFT_PURGE_HEADER, fastlyUrl);
+      case URL:
+        return client.purgeUrlAsync(_arguments.get(0));
+      default:
+        return client.purgeAllAsync(fastlyUrl);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return _arguments.isEmpty() ? _kind.getName() : _kind.getName() + " " + String.join(" ", _arguments);
+  }
+}
@@ -0,0 +1,132 @@
+package io.split.fastly.client.soak;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * The purges a soak test replays, in order, starting over once the end is reached.
+ */
+public final class PurgeTrace {
+
+  private final List<PurgeOp> _ops;
+
+  public PurgeTrace(List<PurgeOp> ops) {
+    Preconditions.checkArgument(!ops.isEmpty(), "trace cannot be empty");
+    _ops = ImmutableList.copyOf(ops);
+  }
+
+  /**
+   * Reads a recorded trace, one {@link PurgeOp} per line.
+   */
+  public static PurgeTrace load(Path file) throws IOException {
+    List<PurgeOp> ops = new ArrayList<>();
+    try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+      lines.forEach(line -> {
+        PurgeOp op = PurgeOp.parse(line);
+        if (op != null) {
+          ops.add(op);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return new PurgeTrace(ops);
+  }
+
+  /**
+   * Parses a mix such as <code>key=60,soft-key=20,batch=10,url=9,all=1</code>, the relative weight of each kind.
+   */
+  public static Map<PurgeOp.Kind, Integer> parseMix(String mix) {
+    Map<PurgeOp.Kind, Integer> weights = new EnumMap<>(PurgeOp.Kind.class);
+    for (Map.Entry<String, String> entry : Splitter.on(',').trimResults().withKeyValueSeparator('=').split(mix)
+        .entrySet()) {
+      int weight = Integer.parseInt(entry.getValue());
+      Preconditions.checkArgument(weight >= 0, "weight of %s cannot be negative", entry.getKey());
+      weights.put(PurgeOp.Kind.of(entry.getKey()), weight);
+    }
+    return weights;
+  }
+
+  /**
+   * Builds a random trace with the given mix of kinds.
+   *
+   * @param keySpace number of distinct surrogate keys, which are <code>soak-key-0</code> and so on.
+   * @param batchSize keys per batch purge, at most 256.
+   * @param urlPrefix url purges go to this prefix followed by <code>/soak/page-N</code>.
+   */
+  public static PurgeTrace synthetic(Map<PurgeOp.Kind, Integer> mix, int size, int keySpace, int batchSize,
+      String urlPrefix, long seed) {
+    Preconditions.checkArgument(size > 0, "size must be positive");
+    Preconditions.checkArgument(keySpace > 0, "keySpace must be positive");
+    Preconditions.checkArgument(batchSize > 0 && batchSize <= 256, "batchSize must be between 1 and 256");
+    int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+    Preconditions.checkArgument(total > 0, "mix must have a positive weight");
+
+    Random random = new Random(seed);
+    List<PurgeOp> ops = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      PurgeOp.Kind kind = pick(mix, random.nextInt(total));
+      List<String> arguments = new ArrayList<>();
+      switch (kind) {
+        case KEY:
+        case SOFT_KEY:
+          arguments.add(key(random, keySpace));
+          break;
+        case BATCH:
+        case SOFT_BATCH:
+          for (int k = 0; k < batchSize; k++) {
+            arguments.add(key(random, keySpace));
+          }
+          break;
+        case URL:
+          arguments.add(urlPrefix + "/soak/page-" + random.nextInt(keySpace));
+          break;
+        default:
+          break;
+      }
+      ops.add(new PurgeOp(kind, arguments));
+    }
+    return new PurgeTrace(ops);
+  }
+
+  private static PurgeOp.Kind pick(Map<PurgeOp.Kind, Integer> mix, int draw) {
+    int seen = 0;
+    PurgeOp.Kind picked = null;
+    for (Map.Entry<PurgeOp.Kind, Integer> entry : mix.entrySet()) {
+      seen += entry.getValue();
+      picked = entry.getKey();
+      if (draw < seen) {
+        break;
+      }
+    }
+    return picked;
+  }
+
+  private static String key(Random random, int keySpace) {
+    return "soak-key-" + random.nextInt(keySpace);
+  }
+
+  public int size() {
+    return _ops.size();
+  }
+
+  /**
+   * The i-th purge sent, wrapping around the trace.
+   */
+  public PurgeOp get(long i) {
+    return _ops.get((int) (i % _ops.size()));
+  }
+}
@@ -0,0 +1,98 @@
+package io.split.fastly.client.soak;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * CPU time, allocated bytes and garbage collections of this JVM at some instant, to compute rates between two
+ * snapshots. Values the JVM can't provide are -1.
+ * <p>
+ * Allocations are summed over live threads, so bytes allocated by threads that ended between the snapshots are
+ * missed: the client's I/O threads live as long as the client, which is what matters here.
+ */
+final class ResourceUsage {
+
+  private final long _nanoTime;
+  private final long _cpuNanos;
+  private final long _allocatedBytes;
+  private final long _gcCount;
+  private final long _gcMillis;
+
+  private ResourceUsage(long nanoTime, long cpuNanos, long allocatedBytes, long gcCount, long gcMillis) {
+    _nanoTime = nanoTime;
+    _cpuNanos = cpuNanos;
+    _allocatedBytes = allocatedBytes;
+    _gcCount = gcCount;
+    _gcMillis = gcMillis;
+  }
+
+  static ResourceUsage now() {
+    long gcCount = 0;
+    long gcMillis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      gcCount += Math.max(gc.getCollectionCount(), 0);
+      gcMillis += Math.max(gc.getCollectionTime(), 0);
+    }
+    return new ResourceUsage(System.nanoTime(), cpuNanos(), allocatedBytes(), gcCount, gcMillis);
+  }
+
+  private static long cpuNanos() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+    if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    long total = 0;
+    for (long allocated : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      total += Math.max(allocated, 0);
+    }
+    return total;
+  }
+
+  /**
+   * Share of the machine used by this process since {@code start}, between 0 and 1, or -1 if unknown.
+   */
+  double cpuLoadSince(ResourceUsage start) {
+    if (_cpuNanos < 0 || start._cpuNanos < 0) {
+      return -1;
+    }
+    long wall = _nanoTime - start._nanoTime;
+    return wall <= 0 ? 0 : (double) (_cpuNanos - start._cpuNanos) / wall / Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Bytes allocated per second since {@code start}, or -1 if unknown.
+   */
+  double allocationRateSince(ResourceUsage start) {
+    if (_allocatedBytes < 0 || start._allocatedBytes < 0) {
+      return -1;
+    }
+    long wall = _nanoTime - start._nanoTime;
+    return wall <= 0 ? 0 : (_allocatedBytes - start._allocatedBytes) * 1e9 / wall;
+  }
+
+  long gcCountSince(ResourceUsage start) {
+    return _gcCount - start._gcCount;
+  }
+
+  long gcMillisSince(ResourceUsage start) {
+    return _gcMillis - start._gcMillis;
+  }
+
+  long nanosSince(ResourceUsage start) {
+    return _nanoTime - start._nanoTime;
+  }
+}
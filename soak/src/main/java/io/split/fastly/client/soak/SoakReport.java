@@ -0,0 +1,141 @@
+package io.split.fastly.client.soak;
+
+import io.split.fastly.client.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome of one soak run. Latencies are measured from the time each purge was scheduled to be sent, not from the
+ * time it actually was, so a stalled client shows up as latency instead of being hidden by a lower send rate.
+ */
+public final class SoakReport {
+
+  private final String _name;
+  private final LatencyHistogram _latency = new LatencyHistogram();
+  private final LatencyHistogram _sendLag = new LatencyHistogram();
+  private final LongAdder _sent = new LongAdder();
+  private final LongAdder _succeeded = new LongAdder();
+  private final ConcurrentMap<String, LongAdder> _errors = new ConcurrentHashMap<>();
+  private long _unanswered;
+  private long _skipped;
+  private ResourceUsage _start;
+  private ResourceUsage _end;
+
+  SoakReport(String name) {
+    _name = name;
+  }
+
+  void start() {
+    _start = ResourceUsage.now();
+  }
+
+  /**
+   * Stops the clock for throughput and resource usage. Purges still unanswered then are counted as such.
+   */
+  void end(long unanswered, long skipped) {
+    _end = ResourceUsage.now();
+    _unanswered = unanswered;
+    _skipped = skipped;
+  }
+
+  void sent(long lagNanos) {
+    _sent.increment();
+    _sendLag.record(lagNanos);
+  }
+
+  void succeeded(long latencyNanos) {
+    _succeeded.increment();
+    _latency.record(latencyNanos);
+  }
+
+  /**
+   * @param error the status code of an error response or the class of the exception.
+   */
+  void failed(long latencyNanos, String error) {
+    _latency.record(latencyNanos);
+    _errors.computeIfAbsent(error, e -> new LongAdder()).increment();
+  }
+
+  public String getName() {
+    return _name;
+  }
+
+  public long getSent() {
+    return _sent.sum();
+  }
+
+  public long getSucceeded() {
+    return _succeeded.sum();
+  }
+
+  /**
+   * Count of failed purges by status code or exception class.
+   */
+  public Map<String, Long> getErrors() {
+    Map<String, Long> errors = new TreeMap<>();
+    _errors.forEach((error, count) -> errors.put(error, count.sum()));
+    return errors;
+  }
+
+  /**
+   * Nanoseconds between the scheduled send time of each answered purge and its response.
+   */
+  public LatencyHistogram getLatency() {
+    return _latency;
+  }
+
+  /**
+   * Nanoseconds each purge was sent after its scheduled time, which grows when the load generator can't keep up.
+   */
+  public LatencyHistogram getSendLag() {
+    return _sendLag;
+  }
+
+  public long getUnanswered() {
+    return _unanswered;
+  }
+
+  /**
+   * Purges not sent because too many were already waiting for a response.
+   */
+  public long getSkipped() {
+    return _skipped;
+  }
+
+  /**
+   * Answered purges per second.
+   */
+  public double getThroughput() {
+    long nanos = _end.nanosSince(_start);
+    return nanos <= 0 ? 0 : _latency.getCount() * 1e9 / nanos;
+  }
+
+  public void print(PrintStream out) {
+    out.printf(Locale.ROOT, "== %s%n", _name);
+    out.printf(Locale.ROOT, "sent %d, succeeded %d, unanswered %d, skipped %d, throughput %.1f/s%n",
+        getSent(), getSucceeded(), _unanswered, _skipped, getThroughput());
+    out.printf(Locale.ROOT, "latency ms: p50 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+        millis(_latency.getValueAtPercentile(50)), millis(_latency.getValueAtPercentile(99)),
+        millis(_latency.getValueAtPercentile(99.9)), millis(_latency.getMax()));
+    out.printf(Locale.ROOT, "send lag ms: p99 %.2f, max %.2f%n", millis(_sendLag.getValueAtPercentile(99)),
+        millis(_sendLag.getMax()));
+    out.printf(Locale.ROOT, "errors: %s%n", getErrors());
+    double cpu = _end.cpuLoadSince(_start);
+    double allocation = _end.allocationRateSince(_start);
+    out.printf(Locale.ROOT, "cpu %s, allocation %s, gc %d collections in %d ms%n",
+        cpu < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f%%", cpu * 100),
+        allocation < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f MB/s", allocation / (1024 * 1024)),
+        _end.gcCountSince(_start), _end.gcMillisSince(_start));
+  }
+
+  private static double millis(long nanos) {
+    return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,124 @@
+package io.split.fastly.client.soak;
+
+import com.google.common.base.Splitter;
+import io.split.fastly.client.FastlyApiClient;
+import org.asynchttpclient.DefaultAsyncHttpClientConfig;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs purge traces through {@link FastlyApiClient} at a fixed rate and prints a {@link SoakReport} per client
+ * configuration.
+ * <p>
+ * Arguments are <code>name=value</code> pairs:
+ * <ul>
+ * <li><code>url</code>: base url under test, such as a {@code LocalFastlyServer}, a mock or a proxy. Required, so a
+ * soak test never purges a real service by accident.</li>
+ * <li><code>qps</code>: purges sent per second, 100 by default.</li>
+ * <li><code>duration</code> and <code>warmup</code>: seconds of measured and unmeasured load, 60 and 10 by
+ * default.</li>
+ * <li><code>drain</code>: seconds to wait for the last responses after each run, 10 by default.</li>
+ * <li><code>trace</code>: file with one purge per line, see {@link PurgeOp}. When absent, a random trace is built
+ * from <code>mix</code> (<code>key=70,soft-key=15,batch=10,url=4,all=1</code> by default), <code>keys</code>
+ * (10000 distinct keys) and <code>batch</code> (16 keys per batch purge).</li>
+ * <li><code>maxConnectionsPerHost</code> and <code>ioThreads</code>: comma separated values, one run per
+ * combination, to compare pool sizes. Unset means the client's defaults.</li>
+ * <li><code>apiKey</code> and <code>serviceId</code>: sent to the url under test, placeholders by default.</li>
+ * <li><code>maxOutstanding</code>: purges waiting for a response above which new ones are skipped, 100000 by
+ * default.</li>
+ * </ul>
+ */
+public final class SoakTest {
+
+  private static final String DEFAULT_MIX = "key=70,soft-key=15,batch=10,url=4,all=1";
+  private static final Splitter LIST = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private SoakTest() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator < 0) {
+        throw new IllegalArgumentException("expected name=value, got " + arg);
+      }
+      options.put(arg.substring(0, separator), arg.substring(separator + 1));
+    }
+
+    String url = options.get("url");
+    if (url == null) {
+      throw new IllegalArgumentException("url is required");
+    }
+    double qps = Double.parseDouble(options.getOrDefault("qps", "100"));
+    long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+    long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+    long drain = Long.parseLong(options.getOrDefault("drain", "10"));
+    long maxOutstanding = Long.parseLong(options.getOrDefault("maxOutstanding", "100000"));
+    String apiKey = options.getOrDefault("apiKey", "soakApiKey");
+    String serviceId = options.getOrDefault("serviceId", "soakServiceId");
+
+    PurgeTrace trace;
+    if (options.containsKey("trace")) {
+      trace = PurgeTrace.load(Paths.get(options.get("trace")));
+    } else {
+      trace = PurgeTrace.synthetic(PurgeTrace.parseMix(options.getOrDefault("mix", DEFAULT_MIX)), 100_000,
+          Integer.parseInt(options.getOrDefault("keys", "10000")), Integer.parseInt(options.getOrDefault("batch", "16")),
+          url, 42);
+    }
+
+    List<SoakReport> reports = new ArrayList<>();
+    for (String connections : values(options.get("maxConnectionsPerHost"))) {
+      for (String ioThreads : values(options.get("ioThreads"))) {
+        DefaultAsyncHttpClientConfig.Builder config = new DefaultAsyncHttpClientConfig.Builder();
+        StringBuilder name = new StringBuilder("qps=").append(qps);
+        if (!connections.isEmpty()) {
+          config.setMaxConnectionsPerHost(Integer.parseInt(connections));
+          name.append(" maxConnectionsPerHost=").append(connections);
+        }
+        if (!ioThreads.isEmpty()) {
+          config.setIoThreadsCount(Integer.parseInt(ioThreads));
+          name.append(" ioThreads=").append(ioThreads);
+        }
+
+        FastlyApiClient client = new FastlyApiClient(apiKey, serviceId, config.build());
+        try {
+          OpenLoopGenerator generator = new OpenLoopGenerator(client, url, trace, qps, maxOutstanding);
+          if (warmup > 0) {
+            generator.run("warmup", warmup, drain, TimeUnit.SECONDS);
+          }
+          SoakReport report = generator.run(name.toString(), duration, drain, TimeUnit.SECONDS);
+          report.print(System.out);
+          reports.add(report);
+        } finally {
+          client.closeConnectionPool();
+        }
+      }
+    }
+
+    if (reports.size() > 1) {
+      System.out.println("== summary");
+      for (SoakReport report : reports) {
+        System.out.printf(Locale.ROOT, "%-60s %10.1f/s p99 %8.2f ms errors %d%n", report.getName(), report.getThroughput(),
+            report.getLatency().getValueAtPercentile(99) / 1e6,
+            report.getErrors().values().stream().mapToLong(Long::longValue).sum());
+      }
+    }
+  }
+
+  /**
+   * The comma separated values of an option, or a single empty value to keep the default.
+   */
+  private static List<String> values(String option) {
+    List<String> values = option == null ? new ArrayList<>() : LIST.splitToList(option);
+    return values.isEmpty() ? Collections.singletonList("") : values;
+  }
+}
@@ -0,0 +1,129 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import org.asynchttpclient.Response;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * Caps the number of requests in flight and the number waiting for a slot, so an overload degrades predictably
+ * instead of opening thousands of connections.
+ * <p>
+ * Requests beyond {@code maxInFlight} wait in a FIFO queue of at most {@code maxQueued} entries. When the queue is
+ * full the {@link OverflowPolicy} decides what happens to the new request. Rejected requests fail with a
+ * {@link RejectedExecutionException}. The time requests spend queued is recorded in {@link #getQueueWait()}.
+ */
+public class AdmissionControlledAsyncHttpExecutor extends QueueingAsyncHttpExecutor {
+
+  public enum OverflowPolicy {
+    /**
+     * The calling thread waits until the request can be queued. Don't use it when requests are sent from the http
+     * client's own threads, such as from completion callbacks, as they would wait for themselves.
+     */
+    BLOCK,
+    /** The new request is rejected right away. */
+    FAIL_FAST,
+    /**
+     * The oldest queued soft purge is rejected to make room, whatever key or url it targets, as soft purges are
+     * the cheapest requests to delay. Nothing supersedes it, so its caller must retry it or that content stays
+     * stale. The new request is rejected when no soft purge is queued.
+     */
+    DROP_OLDEST_SOFT_PURGE
+  }
+
+  private final int _maxQueued;
+  private final OverflowPolicy _policy;
+  private final Condition _notFull = _lock.newCondition();
+  private final ArrayDeque<Pending> _queue = new ArrayDeque<>();
+  private final LatencyHistogram _queueWait = new LatencyHistogram();
+
+  public AdmissionControlledAsyncHttpExecutor(AsyncHttpExecutor delegate, int maxInFlight, int maxQueued,
+      OverflowPolicy policy) {
+    super(delegate, maxInFlight);
+    Preconditions.checkArgument(maxQueued >= 0, "maxQueued cannot be negative");
+    _maxQueued = maxQueued;
+    _policy = Preconditions.checkNotNull(policy, "policy cannot be null!");
+  }
+
+  @Override
+  protected CompletableFuture<Response> intercept(Call call) {
+    Pending pending = new Pending(call);
+    Pending dropped = null;
+    _lock.lock();
+    try {
+      while (isFull()) {
+        if (_policy == OverflowPolicy.BLOCK) {
+          _notFull.awaitUninterruptibly();
+          continue;
+        }
+        if (_policy == OverflowPolicy.DROP_OLDEST_SOFT_PURGE) {
+          dropped = removeOldestSoftPurge();
+        }
+        if (dropped == null) {
+          return FastlyApiClient.failedFuture(rejection(_maxQueued));
+        }
+        break;
+      }
+      _queue.add(pending);
+    } finally {
+      _lock.unlock();
+    }
+
+    if (dropped != null) {
+      dropped._future.completeExceptionally(rejection(_maxQueued));
+    }
+    drain();
+    return pending._future;
+  }
+
+  public int getQueued() {
+    _lock.lock();
+    try {
+      return _queue.size();
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Nanoseconds requests waited for a slot, including the ones that got it right away.
+   */
+  public LatencyHistogram getQueueWait() {
+    return _queueWait;
+  }
+
+  @Override
+  protected Pending dequeue() {
+    Pending next = _queue.poll();
+    if (next != null) {
+      _notFull.signal();
+      _queueWait.record(System.nanoTime() - next._enqueuedAt);
+    }
+    return next;
+  }
+
+  @Override
+  protected void onRelease() {
+    _notFull.signal();
+  }
+
+  private boolean isFull() {
+    return isSaturated() && _queue.size() >= _maxQueued;
+  }
+
+  private Pending removeOldestSoftPurge() {
+    for (Iterator<Pending> it = _queue.iterator(); it.hasNext(); ) {
+      Pending queued = it.next();
+      if ("1".equals(queued._call.getHeaders().get("Fastly-Soft-Purge"))) {
+        it.remove();
+        return queued;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,161 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import io.split.fastly.client.FastlyApiClient.ExtendedAsyncHttpClient;
+import io.split.fastly.client.FastlyApiClient.Method;
+import org.asynchttpclient.AsyncHttpClientConfig;
+import org.asynchttpclient.BoundRequestBuilder;
+import org.asynchttpclient.DefaultAsyncHttpClientConfig;
+import org.asynchttpclient.ListenableFuture;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Entity Responsible for executing the requesting against the remote endpoint.
+ */
+public class AsyncHttpExecutorImpl implements AsyncHttpExecutor {
+
+  private final ExtendedAsyncHttpClient client;
+  private final RequestTracer tracer;
+  private final double sampleRate;
+
+  private final AsyncHttpClientConfig defaultConfig = new DefaultAsyncHttpClientConfig.Builder()
+      .setMaxRequestRetry(3)
+      .setMaxConnections(20000)
+      .build();
+
+  public AsyncHttpExecutorImpl() {
+    this(null);
+  }
+
+  public AsyncHttpExecutorImpl(AsyncHttpClientConfig config) {
+    this(config, RequestTracer.NOOP, 0);
+  }
+
+  /**
+   * Traces a random share of the requests: their lifecycle events are timestamped, handed to the tracer and attached
+   * to the response, see {@link RequestTimings#of}. Requests not sampled go through the default handler and cost
+   * nothing more, so keep the rate low at high purge rates.
+   *
+   * @param sampleRate share of the requests traced, from 0 for none to 1 for all.
+   */
+  public AsyncHttpExecutorImpl(AsyncHttpClientConfig config, RequestTracer tracer, double sampleRate) {
+    Preconditions.checkNotNull(tracer, "tracer cannot be null!");
+    Preconditions.checkArgument(sampleRate >= 0 && sampleRate <= 1, "sampleRate must be between 0 and 1");
+    client = config != null ? new ExtendedAsyncHttpClient(config) : new ExtendedAsyncHttpClient(defaultConfig);
+    this.tracer = tracer;
+    this.sampleRate = sampleRate;
+  }
+
+  public void close() throws IOException {
+
+    client.close();
+  }
+
+  public Future<Response> execute(String apiUrl,
+      Method method,
+      Map<String, String> headers,
+      Map<String, String> parameters) {
+
+    BoundRequestBuilder request = getRequestForMethod(apiUrl, method);
+
+    build(request, method, headers, parameters);
+
+    return send(request, apiUrl, method);
+  }
+
+  @Override
+  public CompletableFuture<Response> executeAsync(String apiUrl,
+      Method method,
+      Map<String, String> headers,
+      Map<String, String> parameters) {
+
+    BoundRequestBuilder request = getRequestForMethod(apiUrl, method);
+
+    build(request, method, headers, parameters);
+
+    return send(request, apiUrl, method).toCompletableFuture();
+  }
+
+  @Override
+  public CompletableFuture<Response> executeStreamAsync(String apiUrl,
+      Method method,
+      Map<String, String> headers,
+      BodyGenerator body) {
+
+    BoundRequestBuilder request = getRequestForMethod(apiUrl, method);
+
+    build(request, method, headers, Collections.emptyMap());
+    request.setBody(body);
+
+    return send(request, apiUrl, method).toCompletableFuture();
+  }
+
+  private ListenableFuture<Response> send(BoundRequestBuilder request, String apiUrl, Method method) {
+    if (sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+      return request.execute(new TracingAsyncHandler(tracer, apiUrl, method));
+    }
+    return request.execute();
+  }
+
+  private BoundRequestBuilder getRequestForMethod(String apiURL, Method method) {
+
+    if (method == Method.PURGE) {
+      return client.preparePurge(apiURL);
+    }
+
+    if (method == Method.POST) {
+      return client.preparePost(apiURL);
+    }
+
+    if (method == Method.PUT) {
+      return client.preparePut(apiURL);
+    }
+
+    if (method == Method.DELETE) {
+      return client.prepareDelete(apiURL);
+    }
+
+    if (method == Method.GET) {
+      return client.prepareGet(apiURL);
+    }
+
+    if (method == Method.PATCH) {
+      return client.preparePatch(apiURL);
+    }
+
+    return null;
+  }
+
+  private void build(BoundRequestBuilder request, Method method, Map<String, String> headers,
+      Map<String, String> parameters) {
+
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      request.addHeader(header.getKey(), header.getValue());
+    }
+
+    if (!parameters.isEmpty()) {
+      for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+        if (method == Method.GET) {
+          request.addQueryParam(parameter.getKey(), parameter.getValue());
+        } else {
+          request.addFormParam(parameter.getKey(), parameter.getValue());
+        }
+      }
+    }
+
+    String host = headers.get("Host");
+    if (host != null) {
+      request.setVirtualHost(host);
+    }
+  }
+
+}
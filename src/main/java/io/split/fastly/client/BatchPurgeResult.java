@@ -0,0 +1,45 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Response to a purge of several surrogate keys, which maps every key to its purge id.
+ */
+public class BatchPurgeResult extends FastlyResult {
+
+  public BatchPurgeResult(Response response) {
+    super(response);
+  }
+
+  /**
+   * The purge id of the given key, null if the key is not in the response. Only this entry is decoded.
+   */
+  public String getPurgeId(String key) {
+    return isSuccessful() ? field(key) : null;
+  }
+
+  /**
+   * Purge ids by surrogate key, in the order of the response, decoded into a new map on every call.
+   */
+  public Map<String, String> getPurgeIds() {
+    Map<String, String> ids = new LinkedHashMap<>();
+    if (!isSuccessful()) {
+      return ids;
+    }
+    JsonScanner scanner = new JsonScanner(body());
+    if (scanner.enterObject()) {
+      while (scanner.nextMember()) {
+        ids.put(scanner.name(), scanner.value());
+      }
+    }
+    return ids;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchPurgeResult{status=" + getStatusCode() + '}';
+  }
+}
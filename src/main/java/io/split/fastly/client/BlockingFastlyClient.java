@@ -0,0 +1,100 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Blocking facade over a {@link FastlyApiClient}, for code that runs on virtual threads, or that simply doesn't want
+ * to deal with futures.
+ * <p>
+ * Every method sends the request through the client's executor and parks the calling thread until the response
+ * arrives. Waiting goes through {@link CompletableFuture#get()}, and nothing on the way holds a monitor, so a
+ * virtual thread unmounts from its carrier while it waits and hundreds of thousands of them can purge concurrently.
+ * Failures are rethrown as they happened: {@link IOException}s and runtime exceptions unchanged, any other checked
+ * exception wrapped in an {@link IOException}. Responses with an error status are returned, not thrown, as typed
+ * results decoded lazily from the response bytes.
+ */
+public class BlockingFastlyClient {
+
+  private final FastlyApiClient _client;
+
+  public BlockingFastlyClient(FastlyApiClient client) {
+    _client = Preconditions.checkNotNull(client, "client cannot be null!");
+  }
+
+  public FastlyApiClient getClient() {
+    return _client;
+  }
+
+  public PurgeResult purgeKey(String key) throws IOException, InterruptedException {
+    return new PurgeResult(await(_client.purgeKeyAsync(key)));
+  }
+
+  public PurgeResult softPurgeKey(String key) throws IOException, InterruptedException {
+    return new PurgeResult(await(_client.softPurgeKeyAsync(key)));
+  }
+
+  public BatchPurgeResult purgeKeys(List<String> keys) throws IOException, InterruptedException {
+    return new BatchPurgeResult(await(_client.purgeKeysAsync(keys)));
+  }
+
+  public BatchPurgeResult softPurgeKeys(List<String> keys) throws IOException, InterruptedException {
+    return new BatchPurgeResult(await(_client.softPurgeKeysAsync(keys)));
+  }
+
+  public PurgeResult purgeAll() throws IOException, InterruptedException {
+    return new PurgeResult(await(_client.purgeAllAsync()));
+  }
+
+  public PurgeResult purgeUrl(String url) throws IOException, InterruptedException {
+    return new PurgeResult(await(_client.purgeUrlAsync(url)));
+  }
+
+  public PurgeResult softPurgeUrl(String url) throws IOException, InterruptedException {
+    return new PurgeResult(await(_client.softPurgeUrlAsync(url)));
+  }
+
+  /**
+   * See {@link FastlyApiClient#purgeUrlsAsync(Collection, java.util.Map, int)}. Failed urls are reported in the
+   * result rather than thrown.
+   */
+  public UrlPurgeResult purgeUrls(Collection<String> urls) throws IOException, InterruptedException {
+    return await(_client.purgeUrlsAsync(urls));
+  }
+
+  public UrlPurgeResult softPurgeUrls(Collection<String> urls) throws IOException, InterruptedException {
+    return await(_client.softPurgeUrlsAsync(urls));
+  }
+
+  public VclResult vclUpload(int version, Path vcl, String id, String name) throws IOException, InterruptedException {
+    return new VclResult(await(_client.vclUploadAsync(version, vcl, id, name)));
+  }
+
+  public VclResult vclUpdate(int version, String name, Path vcl) throws IOException, InterruptedException {
+    return new VclResult(await(_client.vclUpdateAsync(version, name, vcl)));
+  }
+
+  private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -0,0 +1,431 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.asynchttpclient.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Purges every surrogate key listed in a file, one per line, in batches sent concurrently, with memory use that
+ * doesn't depend on the size of the file.
+ * <p>
+ * Keys are read through a {@link SurrogateKeyFileReader} and packed into batches of at most 256 keys whose
+ * <code>Surrogate-Key</code> header stays under {@code maxHeaderBytes}. At most {@code concurrency} batches are in
+ * flight; each response sends the next batch.
+ * <p>
+ * Progress is saved to the checkpoint file, at most once per second and when the job ends, as the offset in the key
+ * file up to which every batch succeeded. A job started with an existing checkpoint resumes from there, so an
+ * interrupted or failed job can simply be started again: only the batches in flight when it stopped are sent twice.
+ * Delete the checkpoint to purge the whole file again. The first failed batch stops the job, see
+ * {@link BulkPurgeResult}; put a retrying executor in front of the client to ride out transient errors.
+ * <p>
+ * Checkpoints are written by a thread of the job, so disk latency never holds up the http client's I/O threads.
+ */
+public class BulkPurgeJob {
+
+  public static final int DEFAULT_CONCURRENCY = 8;
+  public static final int DEFAULT_MAX_HEADER_BYTES = 8 * 1024;
+
+  /* package private */ static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final Logger _log = LoggerFactory.getLogger(BulkPurgeJob.class);
+  private static final Splitter CHECKPOINT_SPLITTER = Splitter.on(' ').trimResults().omitEmptyStrings();
+
+  private final FastlyApiClient _client;
+  private final Path _keys;
+  private final Path _checkpoint;
+  private final int _concurrency;
+  private final int _maxHeaderBytes;
+  private final Map<String, String> _extraHeaders;
+  private final String _fastlyUrl;
+  private final int _windowSize;
+  private final AtomicBoolean _started = new AtomicBoolean();
+  private final AtomicInteger _draining = new AtomicInteger();
+  private final ReentrantLock _lock = new ReentrantLock();
+  private final CompletableFuture<BulkPurgeResult> _result = new CompletableFuture<>();
+  private final TreeMap<Long, SurrogateKeyFileReader.Batch> _doneOutOfOrder = new TreeMap<>();
+  private final ExecutorService _writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("fastly-bulk-purge-%d")
+      .build());
+
+  private SurrogateKeyFileReader _reader;
+  private long _startedAt;
+  private long _resumedKeys;
+  private long _keysPurged;
+  private long _batches;
+  private long _nextSequence;
+  private long _nextToCheckpoint;
+  private long _checkpointOffset;
+  private long _lastCheckpointAt;
+  private long _checkpointVersion;
+  private long _writtenVersion = -1;
+  private int _inFlight;
+  private boolean _exhausted;
+  private boolean _stopped;
+  private boolean _finished;
+  private Response _failedResponse;
+  private Throwable _error;
+
+  public BulkPurgeJob(FastlyApiClient client, Path keys, Path checkpoint) {
+    this(client, keys, checkpoint, DEFAULT_CONCURRENCY, DEFAULT_MAX_HEADER_BYTES, ImmutableMap.of(),
+        FastlyApiClient.FASTLY_URL);
+  }
+
+  /**
+   * @param checkpoint file where progress is saved, created if needed.
+   * @param extraHeaders sent with every batch, such as <code>Fastly-Soft-Purge: 1</code>.
+   */
+  public BulkPurgeJob(FastlyApiClient client, Path keys, Path checkpoint, int concurrency, int maxHeaderBytes,
+      Map<String, String> extraHeaders, String fastlyUrl) {
+    this(client, keys, checkpoint, concurrency, maxHeaderBytes, extraHeaders, fastlyUrl,
+        SurrogateKeyFileReader.DEFAULT_WINDOW_SIZE);
+  }
+
+  /* package private */ BulkPurgeJob(FastlyApiClient client, Path keys, Path checkpoint, int concurrency,
+      int maxHeaderBytes, Map<String, String> extraHeaders, String fastlyUrl, int windowSize) {
+    Preconditions.checkArgument(concurrency > 0, "concurrency must be positive");
+    Preconditions.checkArgument(maxHeaderBytes > 0, "maxHeaderBytes must be positive");
+    _client = Preconditions.checkNotNull(client, "client cannot be null!");
+    _keys = Preconditions.checkNotNull(keys, "keys cannot be null!");
+    _checkpoint = Preconditions.checkNotNull(checkpoint, "checkpoint cannot be null!");
+    _extraHeaders = Preconditions.checkNotNull(extraHeaders, "extraHeaders cannot be null!");
+    _fastlyUrl = Preconditions.checkNotNull(fastlyUrl, "fastlyUrl cannot be null!");
+    _concurrency = concurrency;
+    _maxHeaderBytes = maxHeaderBytes;
+    _windowSize = windowSize;
+  }
+
+  /**
+   * Starts purging, from the checkpoint if there is one. A job can only be started once; create a new one to resume.
+   *
+   * @return completes once every key was purged, the job was stopped or a batch failed. It doesn't fail.
+   */
+  public CompletableFuture<BulkPurgeResult> start() {
+    Preconditions.checkState(_started.compareAndSet(false, true), "job was already started");
+    _lock.lock();
+    try {
+      _startedAt = System.nanoTime();
+      _lastCheckpointAt = _startedAt;
+      long offset = readCheckpoint();
+      _checkpointOffset = offset;
+      _reader = new SurrogateKeyFileReader(_keys, offset, PurgeCoalescer.MAX_BATCH_SIZE, _maxHeaderBytes,
+          _windowSize);
+    } catch (IOException | RuntimeException e) {
+      _error = e;
+      _stopped = true;
+    } finally {
+      _lock.unlock();
+    }
+    drain();
+    finishIfDone();
+    return _result;
+  }
+
+  /**
+   * Stops sending batches. The result completes, and the checkpoint is saved, once the ones in flight are answered.
+   */
+  public void stop() {
+    _lock.lock();
+    try {
+      _stopped = true;
+    } finally {
+      _lock.unlock();
+    }
+    finishIfDone();
+  }
+
+  /**
+   * Keys purged so far, including the ones of resumed runs.
+   */
+  public long getKeysPurged() {
+    _lock.lock();
+    try {
+      return _keysPurged;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Keys purged per second since this run started.
+   */
+  public double getKeysPerSecond() {
+    _lock.lock();
+    try {
+      long elapsed = System.nanoTime() - _startedAt;
+      return !_started.get() || elapsed <= 0 ? 0 : (_keysPurged - _resumedKeys) * 1e9 / elapsed;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Sends batches while there are free slots, see {@link AdmissionControlledAsyncHttpExecutor}.
+   */
+  private void drain() {
+    if (_draining.getAndIncrement() != 0) {
+      return;
+    }
+    do {
+      Pending next;
+      while ((next = poll()) != null) {
+        send(next);
+      }
+    } while (_draining.decrementAndGet() != 0);
+  }
+
+  private Pending poll() {
+    _lock.lock();
+    try {
+      if (_stopped || _exhausted || _inFlight >= _concurrency) {
+        return null;
+      }
+      SurrogateKeyFileReader.Batch batch = _reader.next();
+      if (batch == null) {
+        _exhausted = true;
+        return null;
+      }
+      _inFlight++;
+      return new Pending(_nextSequence++, batch);
+    } catch (IOException | RuntimeException e) {
+      _error = e;
+      _stopped = true;
+      return null;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  private void send(Pending pending) {
+    CompletableFuture<Response> response;
+    try {
+      response = _client.purgeJoinedKeysAsync(pending._batch.getSurrogateKeys(), _extraHeaders, _fastlyUrl);
+    } catch (RuntimeException e) {
+      response = FastlyApiClient.failedFuture(e);
+    }
+    response.whenComplete((r, t) -> {
+      Checkpoint checkpoint = onResponse(pending, r, t);
+      if (checkpoint != null) {
+        saveLater(checkpoint);
+      }
+      drain();
+      finishIfDone();
+    });
+  }
+
+  /**
+   * @return the checkpoint to save, if it's time to.
+   */
+  private Checkpoint onResponse(Pending pending, Response response, Throwable t) {
+    _lock.lock();
+    try {
+      _inFlight--;
+      if (t == null && response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+        _keysPurged += pending._batch.getCount();
+        _batches++;
+        _doneOutOfOrder.put(pending._sequence, pending._batch);
+        return advanceCheckpoint();
+      }
+      if (_error == null && _failedResponse == null) {
+        _error = t == null ? null : FastlyApiClient.unwrap(t);
+        _failedResponse = response;
+      }
+      _stopped = true;
+      return null;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Moves the checkpoint past the batches done without a gap, and returns it if it wasn't saved for a while.
+   */
+  private Checkpoint advanceCheckpoint() {
+    while (!_doneOutOfOrder.isEmpty() && _doneOutOfOrder.firstKey() == _nextToCheckpoint) {
+      _checkpointOffset = _doneOutOfOrder.pollFirstEntry().getValue().getEnd();
+      _nextToCheckpoint++;
+    }
+    long now = System.nanoTime();
+    if (now - _lastCheckpointAt < CHECKPOINT_INTERVAL_NANOS) {
+      return null;
+    }
+    _lastCheckpointAt = now;
+    return checkpoint();
+  }
+
+  /**
+   * Captures the progress to save. Called under the lock.
+   */
+  private Checkpoint checkpoint() {
+    return new Checkpoint(_checkpointVersion++, _checkpointOffset, checkpointedKeys());
+  }
+
+  private void saveLater(Checkpoint checkpoint) {
+    try {
+      _writer.execute(() -> {
+        try {
+          writeCheckpoint(checkpoint);
+        } catch (IOException e) {
+          _log.warn("Failed to save bulk purge checkpoint to " + _checkpoint, e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // the job finished meanwhile, and its final checkpoint is newer
+    }
+  }
+
+  private void finishIfDone() {
+    boolean complete;
+    Checkpoint checkpoint;
+    SurrogateKeyFileReader reader;
+    long offset;
+    long keysPurged;
+    long batches;
+    long elapsed;
+    Response failedResponse;
+    Throwable error;
+    _lock.lock();
+    try {
+      if (_finished || _inFlight > 0 || !(_stopped || _exhausted)) {
+        return;
+      }
+      _finished = true;
+      complete = _exhausted && _error == null && _failedResponse == null;
+      checkpoint = _reader != null ? checkpoint() : null;
+      reader = _reader;
+      offset = _checkpointOffset;
+      keysPurged = _keysPurged;
+      batches = _batches;
+      elapsed = System.nanoTime() - _startedAt;
+      failedResponse = _failedResponse;
+      error = _error;
+    } finally {
+      _lock.unlock();
+    }
+
+    _writer.execute(() -> {
+      boolean saved = true;
+      Throwable failure = error;
+      if (checkpoint != null) {
+        try {
+          writeCheckpoint(checkpoint);
+        } catch (IOException e) {
+          _log.warn("Failed to save bulk purge checkpoint to " + _checkpoint, e);
+          saved = false;
+          failure = failure == null ? e : failure;
+        }
+        try {
+          reader.close();
+        } catch (IOException e) {
+          _log.debug("Failed to close " + _keys, e);
+        }
+      }
+      _writer.shutdown();
+      _result.complete(new BulkPurgeResult(complete && saved, keysPurged, keysPurged - _resumedKeys, batches,
+          elapsed, offset, failedResponse, failure));
+    });
+  }
+
+  /**
+   * @return the offset to resume from, 0 without a checkpoint.
+   */
+  private long readCheckpoint() throws IOException {
+    if (!Files.exists(_checkpoint)) {
+      return 0;
+    }
+    List<String> fields = CHECKPOINT_SPLITTER.splitToList(
+        new String(Files.readAllBytes(_checkpoint), StandardCharsets.US_ASCII));
+    if (fields.size() != 2) {
+      throw new IOException("Malformed checkpoint " + _checkpoint);
+    }
+    try {
+      _resumedKeys = Long.parseLong(fields.get(1));
+      _keysPurged = _resumedKeys;
+      return Long.parseLong(fields.get(0));
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed checkpoint " + _checkpoint, e);
+    }
+  }
+
+  /**
+   * Writes the checkpoint to a temporary file, forced to disk before it atomically replaces the previous one, so
+   * a crash leaves either checkpoint but never a truncated one. Called on the writer thread only, which skips
+   * checkpoints older than the one already saved.
+   */
+  private void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+    if (checkpoint._version <= _writtenVersion) {
+      return;
+    }
+    Path temporary = _checkpoint.resolveSibling(_checkpoint.getFileName() + ".tmp");
+    ByteBuffer content = ByteBuffer.wrap((checkpoint._offset + " " + checkpoint._keys + "\n")
+        .getBytes(StandardCharsets.US_ASCII));
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, _checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    _writtenVersion = checkpoint._version;
+  }
+
+  /**
+   * Keys up to the checkpoint offset: the ones purged minus those of batches done past a gap.
+   */
+  private long checkpointedKeys() {
+    long keys = _keysPurged;
+    for (SurrogateKeyFileReader.Batch batch : _doneOutOfOrder.values()) {
+      keys -= batch.getCount();
+    }
+    return keys;
+  }
+
+  private static final class Checkpoint {
+
+    private final long _version;
+    private final long _offset;
+    private final long _keys;
+
+    Checkpoint(long version, long offset, long keys) {
+      _version = version;
+      _offset = offset;
+      _keys = keys;
+    }
+  }
+
+  private static final class Pending {
+
+    private final long _sequence;
+    private final SurrogateKeyFileReader.Batch _batch;
+
+    Pending(long sequence, SurrogateKeyFileReader.Batch batch) {
+      _sequence = sequence;
+      _batch = batch;
+    }
+  }
+}
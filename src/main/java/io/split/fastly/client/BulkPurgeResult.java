@@ -0,0 +1,88 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link BulkPurgeJob}. Counts include the keys purged by earlier runs of the job that were resumed.
+ */
+public class BulkPurgeResult {
+
+  private final boolean _complete;
+  private final long _keysPurged;
+  private final long _keysPurgedThisRun;
+  private final long _batches;
+  private final long _elapsedNanos;
+  private final long _checkpoint;
+  private final Response _failedResponse;
+  private final Throwable _error;
+
+  /* package private */ BulkPurgeResult(boolean complete, long keysPurged, long keysPurgedThisRun, long batches,
+      long elapsedNanos, long checkpoint, Response failedResponse, Throwable error) {
+    _complete = complete;
+    _keysPurged = keysPurged;
+    _keysPurgedThisRun = keysPurgedThisRun;
+    _batches = batches;
+    _elapsedNanos = elapsedNanos;
+    _checkpoint = checkpoint;
+    _failedResponse = failedResponse;
+    _error = error;
+  }
+
+  /**
+   * Whether every key of the file was purged. False when the job was stopped or a batch failed.
+   */
+  public boolean isComplete() {
+    return _complete;
+  }
+
+  public long getKeysPurged() {
+    return _keysPurged;
+  }
+
+  /**
+   * Batches sent successfully by this run.
+   */
+  public long getBatches() {
+    return _batches;
+  }
+
+  public long getElapsed(TimeUnit unit) {
+    return unit.convert(_elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Keys purged per second by this run.
+   */
+  public double getKeysPerSecond() {
+    return _elapsedNanos <= 0 ? 0 : _keysPurgedThisRun * 1e9 / _elapsedNanos;
+  }
+
+  /**
+   * Offset in the file up to which every key was purged, where the job resumes.
+   */
+  public long getCheckpoint() {
+    return _checkpoint;
+  }
+
+  /**
+   * The error response of the batch that stopped the job, if any.
+   */
+  public Response getFailedResponse() {
+    return _failedResponse;
+  }
+
+  /**
+   * The exception that stopped the job, if any: a failed request, or a problem reading the file.
+   */
+  public Throwable getError() {
+    return _error;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkPurgeResult{complete=" + _complete + ", keysPurged=" + _keysPurged + ", checkpoint=" + _checkpoint
+        + ", keysPerSecond=" + getKeysPerSecond() + '}';
+  }
+}
@@ -0,0 +1,301 @@
+package io.split.fastly.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import io.split.fastly.client.FastlyApiClient.Method;
+import org.asynchttpclient.Response;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fails requests fast while their endpoint is degraded, instead of letting each of them wait for its timeout.
+ * <p>
+ * A breaker is kept per base url (scheme, host and port) and, for url purges, per target host, honouring a
+ * <code>Host</code> header. It looks at the outcome of the last {@code windowSize} requests: once at least
+ * {@code minimumCalls} were seen and the share of failures (exceptions and 5xx responses) or of slow requests reaches
+ * its threshold, the breaker opens and requests fail with a {@link CircuitBreakerOpenException}. After
+ * {@code openDuration} it lets {@code halfOpenProbes} requests through; the breaker closes if all of them succeed
+ * and opens again otherwise.
+ */
+public class CircuitBreakerAsyncHttpExecutor extends ForwardingAsyncHttpExecutor {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final Settings _settings;
+  private final Ticker _ticker;
+  private final ConcurrentMap<String, Breaker> _breakers = new ConcurrentHashMap<>();
+
+  public CircuitBreakerAsyncHttpExecutor(AsyncHttpExecutor delegate) {
+    this(delegate, new Settings());
+  }
+
+  public CircuitBreakerAsyncHttpExecutor(AsyncHttpExecutor delegate, Settings settings) {
+    this(delegate, settings, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  CircuitBreakerAsyncHttpExecutor(AsyncHttpExecutor delegate, Settings settings, Ticker ticker) {
+    super(delegate);
+    _settings = settings.copy();
+    _ticker = ticker;
+  }
+
+  /**
+   * State of the breaker of the given endpoint, as returned by {@link CircuitBreakerOpenException#getEndpoint()},
+   * if a request was sent to it.
+   */
+  public Optional<State> getState(String endpoint) {
+    Breaker breaker = _breakers.get(endpoint);
+    return breaker == null ? Optional.empty() : Optional.of(breaker.state(_ticker.read()));
+  }
+
+  @Override
+  protected CompletableFuture<Response> intercept(Call call) {
+    String endpoint = endpoint(call);
+    Breaker breaker = _breakers.computeIfAbsent(endpoint, k -> new Breaker(_settings));
+
+    long start = _ticker.read();
+    long permit = breaker.acquire(start);
+    if (permit < 0) {
+      return FastlyApiClient.failedFuture(new CircuitBreakerOpenException(endpoint,
+          TimeUnit.NANOSECONDS.toMillis(breaker.remainingOpenNanos(start))));
+    }
+
+    CompletableFuture<Response> response = call.proceed();
+    response.whenComplete((r, t) -> {
+      long now = _ticker.read();
+      boolean failed = t != null || r.getStatusCode() >= 500;
+      breaker.record(permit, failed, now - start >= _settings._slowCallNanos, now);
+    });
+    return response;
+  }
+
+  /**
+   * The host targeted by url purges, the base url of the API otherwise.
+   */
+  /* package private */ static String endpoint(Call call) {
+    String url = call.getApiUrl();
+    int schemeEnd = url.indexOf("://");
+    int authorityStart = schemeEnd < 0 ? 0 : schemeEnd + 3;
+    int authorityEnd = url.indexOf('/', authorityStart);
+    if (authorityEnd < 0) {
+      authorityEnd = url.length();
+    }
+    if (call.getMethod() == Method.PURGE) {
+      String host = call.getHeaders().get("Host");
+      return host != null ? host : url.substring(authorityStart, authorityEnd);
+    }
+    return url.substring(0, authorityEnd);
+  }
+
+  /**
+   * Thresholds of the breakers. Every setter returns this settings object.
+   */
+  public static class Settings {
+
+    private double _failureRateThreshold = 0.5;
+    private double _slowCallRateThreshold = 1.0;
+    private long _slowCallNanos = TimeUnit.SECONDS.toNanos(10);
+    private int _windowSize = 50;
+    private int _minimumCalls = 10;
+    private long _openNanos = TimeUnit.SECONDS.toNanos(30);
+    private int _halfOpenProbes = 3;
+
+    /**
+     * Share of failed requests, between 0 and 1, that opens the breaker. Defaults to 0.5.
+     */
+    public Settings withFailureRateThreshold(double threshold) {
+      Preconditions.checkArgument(threshold > 0 && threshold <= 1, "threshold must be in (0, 1]");
+      _failureRateThreshold = threshold;
+      return this;
+    }
+
+    /**
+     * Share of requests slower than {@code slowCall} that opens the breaker. Defaults to 1, so only an endpoint
+     * where every request is slow trips it, after 10 seconds each.
+     */
+    public Settings withSlowCallRateThreshold(double threshold, long slowCall, TimeUnit unit) {
+      Preconditions.checkArgument(threshold > 0 && threshold <= 1, "threshold must be in (0, 1]");
+      Preconditions.checkArgument(slowCall > 0, "slowCall must be positive");
+      _slowCallRateThreshold = threshold;
+      _slowCallNanos = unit.toNanos(slowCall);
+      return this;
+    }
+
+    /**
+     * Number of recent requests the rates are computed over, and how many must be seen before the breaker can
+     * open. Defaults to 50 and 10.
+     */
+    public Settings withWindow(int windowSize, int minimumCalls) {
+      Preconditions.checkArgument(windowSize > 0, "windowSize must be positive");
+      Preconditions.checkArgument(minimumCalls > 0 && minimumCalls <= windowSize,
+          "minimumCalls must be between 1 and windowSize");
+      _windowSize = windowSize;
+      _minimumCalls = minimumCalls;
+      return this;
+    }
+
+    /**
+     * How long the breaker stays open before probing, and how many probes it lets through. Defaults to 30 seconds
+     * and 3 probes.
+     */
+    public Settings withOpenDuration(long duration, TimeUnit unit, int halfOpenProbes) {
+      Preconditions.checkArgument(duration > 0, "duration must be positive");
+      Preconditions.checkArgument(halfOpenProbes > 0, "halfOpenProbes must be positive");
+      _openNanos = unit.toNanos(duration);
+      _halfOpenProbes = halfOpenProbes;
+      return this;
+    }
+
+    private Settings copy() {
+      Settings copy = new Settings();
+      copy._failureRateThreshold = _failureRateThreshold;
+      copy._slowCallRateThreshold = _slowCallRateThreshold;
+      copy._slowCallNanos = _slowCallNanos;
+      copy._windowSize = _windowSize;
+      copy._minimumCalls = _minimumCalls;
+      copy._openNanos = _openNanos;
+      copy._halfOpenProbes = _halfOpenProbes;
+      return copy;
+    }
+  }
+
+  /**
+   * Breaker of one endpoint. Every state change starts a new generation, so requests that were let through under
+   * a previous one don't count towards the current one.
+   */
+  private static final class Breaker {
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final Settings _settings;
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final byte[] _outcomes;
+    private State _state = State.CLOSED;
+    private long _generation;
+    private long _openedAt;
+    private int _next;
+    private int _calls;
+    private int _failures;
+    private int _slowCalls;
+    private int _probesSent;
+    private int _probesSucceeded;
+
+    Breaker(Settings settings) {
+      _settings = settings;
+      _outcomes = new byte[settings._windowSize];
+    }
+
+    /**
+     * @return the generation the request belongs to, or -1 if it must not be sent.
+     */
+    long acquire(long now) {
+      _lock.lock();
+      try {
+        advance(now);
+        if (_state == State.CLOSED) {
+          return _generation;
+        }
+        if (_state == State.HALF_OPEN && _probesSent < _settings._halfOpenProbes) {
+          _probesSent++;
+          return _generation;
+        }
+        return -1;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    void record(long generation, boolean failed, boolean slow, long now) {
+      _lock.lock();
+      try {
+        if (generation != _generation) {
+          return;
+        }
+        if (_state == State.HALF_OPEN) {
+          if (failed || slow) {
+            transition(State.OPEN, now);
+          } else if (++_probesSucceeded >= _settings._halfOpenProbes) {
+            transition(State.CLOSED, now);
+          }
+          return;
+        }
+        if (_state != State.CLOSED) {
+          return;
+        }
+
+        byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        if (_calls == _outcomes.length) {
+          byte evicted = _outcomes[_next];
+          _failures -= evicted & FAILED;
+          _slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+          _calls++;
+        }
+        _outcomes[_next] = outcome;
+        _next = (_next + 1) % _outcomes.length;
+        _failures += outcome & FAILED;
+        _slowCalls += (outcome & SLOW) >> 1;
+
+        if (_calls >= _settings._minimumCalls
+            && (_failures >= _settings._failureRateThreshold * _calls
+            || _slowCalls >= _settings._slowCallRateThreshold * _calls)) {
+          transition(State.OPEN, now);
+        }
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    State state(long now) {
+      _lock.lock();
+      try {
+        advance(now);
+        return _state;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    long remainingOpenNanos(long now) {
+      _lock.lock();
+      try {
+        return _state == State.OPEN ? Math.max(0, openNanosLeft(now)) : 0;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    private long openNanosLeft(long now) {
+      return _settings._openNanos - (now - _openedAt);
+    }
+
+    private void advance(long now) {
+      if (_state == State.OPEN && openNanosLeft(now) <= 0) {
+        transition(State.HALF_OPEN, now);
+      }
+    }
+
+    private void transition(State state, long now) {
+      _state = state;
+      _generation++;
+      _openedAt = now;
+      _next = 0;
+      _calls = 0;
+      _failures = 0;
+      _slowCalls = 0;
+      _probesSent = 0;
+      _probesSucceeded = 0;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package io.split.fastly.client;
+
+/**
+ * Thrown, through the returned future, when a request is not sent because the circuit breaker of its endpoint is
+ * open. See {@link CircuitBreakerAsyncHttpExecutor}.
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String _endpoint;
+  private final long _retryAfterMillis;
+
+  public CircuitBreakerOpenException(String endpoint, long retryAfterMillis) {
+    super(String.format("Circuit breaker for %s is open, retry in %d ms", endpoint, retryAfterMillis));
+    _endpoint = endpoint;
+    _retryAfterMillis = retryAfterMillis;
+  }
+
+  /**
+   * The base url, or host for url purges, whose breaker is open.
+   */
+  public String getEndpoint() {
+    return _endpoint;
+  }
+
+  /**
+   * Time until the breaker lets probe requests through. Zero when it already does but all probes are taken.
+   */
+  public long getRetryAfterMillis() {
+    return _retryAfterMillis;
+  }
+}
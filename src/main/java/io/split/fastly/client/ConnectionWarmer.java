@@ -0,0 +1,127 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import io.split.fastly.client.FastlyApiClient.Method;
+import org.asynchttpclient.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens keep-alive connections ahead of the first purge and keeps them from going idle, so the DNS lookup, TCP
+ * connect and TLS handshake are not paid by the first requests after a start.
+ * <p>
+ * For every base url, {@code connections} concurrent GET requests to {@link #PING_PATH} are sent, which makes the
+ * executor open as many pooled connections. The same pings are sent again every {@code pingInterval}, reusing those
+ * connections before the pool closes them as idle: keep the interval below the
+ * {@code pooledConnectionIdleTimeout} of the http client, 60 seconds by default. Any response counts as a warm
+ * connection, including errors from base urls that don't serve that path. The pings don't carry the API key, as
+ * that path needs none.
+ * <p>
+ * Create one through {@link FastlyApiClient#warmUp}, and close it to stop the pings.
+ */
+public class ConnectionWarmer implements Closeable {
+
+  /**
+   * Fastly's public list of address ranges, small and requiring no permission.
+   */
+  public static final String PING_PATH = "/public-ip-list";
+
+  public static final long DEFAULT_PING_INTERVAL_SECONDS = 30;
+
+  private static final Logger _log = LoggerFactory.getLogger(ConnectionWarmer.class);
+
+  private final AsyncHttpExecutor _executor;
+  private final Map<String, String> _headers;
+  private final List<String> _fastlyUrls;
+  private final int _connections;
+  private final ScheduledExecutorService _scheduler;
+  private final CompletableFuture<Void> _ready;
+
+  /* package private */ ConnectionWarmer(AsyncHttpExecutor executor, Map<String, String> headers,
+      List<String> fastlyUrls, int connections, long pingInterval, TimeUnit unit) {
+    Preconditions.checkArgument(!fastlyUrls.isEmpty(), "fastlyUrls cannot be empty");
+    Preconditions.checkArgument(connections > 0, "connections must be positive");
+    Preconditions.checkArgument(pingInterval > 0, "pingInterval must be positive");
+    _executor = executor;
+    _headers = headers;
+    _fastlyUrls = ImmutableList.copyOf(fastlyUrls);
+    _connections = connections;
+    _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("fastly-connection-warmer-%d")
+        .build());
+    _ready = ping();
+    _scheduler.scheduleWithFixedDelay(this::keepAlive, pingInterval, pingInterval, unit);
+  }
+
+  /**
+   * Completes once every base url answered the first round of pings, or fails as soon as one of them fails, without
+   * waiting for the others. Requests can be sent before, they just may have to open their own connection.
+   */
+  public CompletableFuture<Void> ready() {
+    return _ready;
+  }
+
+  public boolean isReady() {
+    return _ready.isDone() && !_ready.isCompletedExceptionally();
+  }
+
+  public List<String> getFastlyUrls() {
+    return _fastlyUrls;
+  }
+
+  /**
+   * Stops the pings. Connections already open stay in the pool until they go idle.
+   */
+  @Override
+  public void close() {
+    _scheduler.shutdownNow();
+  }
+
+  private void keepAlive() {
+    ping().whenComplete((v, t) -> {
+      if (t != null) {
+        _log.debug("Fastly keep-alive ping failed", t);
+      }
+    });
+  }
+
+  private CompletableFuture<Void> ping() {
+    List<CompletableFuture<Response>> pings = new ArrayList<>(_fastlyUrls.size() * _connections);
+    for (String fastlyUrl : _fastlyUrls) {
+      for (int i = 0; i < _connections; i++) {
+        try {
+          pings.add(_executor.executeAsync(fastlyUrl + PING_PATH, Method.GET, _headers, Collections.emptyMap()));
+        } catch (RuntimeException e) {
+          pings.add(FastlyApiClient.failedFuture(e));
+        }
+      }
+    }
+    CompletableFuture<Void> round = new CompletableFuture<>();
+    AtomicInteger answered = new AtomicInteger();
+    for (CompletableFuture<Response> ping : pings) {
+      ping.whenComplete((r, t) -> {
+        if (t != null) {
+          round.completeExceptionally(t);
+        } else if (answered.incrementAndGet() == pings.size()) {
+          round.complete(null);
+        }
+      });
+    }
+    return round;
+  }
+}
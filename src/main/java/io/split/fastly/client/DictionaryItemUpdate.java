@@ -0,0 +1,69 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * One change to an item of an edge dictionary, sent in a batch by
+ * {@link FastlyApiClient#updateDictionaryItemsAsync(String, java.util.List)}.
+ */
+public final class DictionaryItemUpdate {
+
+  public enum Op {
+    UPSERT("upsert"),
+    DELETE("delete");
+
+    private final String _value;
+
+    Op(String value) {
+      _value = value;
+    }
+
+    /**
+     * Value of the <code>op</code> field in Fastly's batch payload.
+     */
+    public String getValue() {
+      return _value;
+    }
+  }
+
+  private final Op _op;
+  private final String _key;
+  private final String _value;
+
+  private DictionaryItemUpdate(Op op, String key, String value) {
+    _op = op;
+    _key = Preconditions.checkNotNull(key, "key cannot be null!");
+    _value = value;
+  }
+
+  /**
+   * Creates the item, or replaces its value if it exists.
+   */
+  public static DictionaryItemUpdate upsert(String key, String value) {
+    return new DictionaryItemUpdate(Op.UPSERT, key, Preconditions.checkNotNull(value, "value cannot be null!"));
+  }
+
+  public static DictionaryItemUpdate delete(String key) {
+    return new DictionaryItemUpdate(Op.DELETE, key, null);
+  }
+
+  public Op getOp() {
+    return _op;
+  }
+
+  public String getKey() {
+    return _key;
+  }
+
+  /**
+   * Null for deletes.
+   */
+  public String getValue() {
+    return _value;
+  }
+
+  @Override
+  public String toString() {
+    return _op.getValue() + " " + _key;
+  }
+}
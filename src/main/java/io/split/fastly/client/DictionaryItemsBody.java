@@ -0,0 +1,142 @@
+package io.split.fastly.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * <code>application/json</code> body of a batch of dictionary item updates, in the format of Fastly's
+ * <code>PATCH /service/{id}/dictionary/{id}/items</code> endpoint.
+ * <p>
+ * Every attempt encodes the items straight into a buffer of Netty's pooled allocator, released once the body is
+ * sent, so no intermediate String or byte array is built and the body can be retried.
+ */
+/* package private */ final class DictionaryItemsBody implements BodyGenerator {
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HEAD = "{\"items\":[".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] OP = "{\"op\":\"".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] KEY = "\",\"item_key\":".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] VALUE = ",\"item_value\":".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] TAIL = "]}".getBytes(StandardCharsets.US_ASCII);
+  /**
+   * Bytes per item besides its key and value, enough for the initial capacity not to be grown for ASCII content.
+   */
+  private static final int ITEM_OVERHEAD = 64;
+
+  private final List<DictionaryItemUpdate> _items;
+
+  DictionaryItemsBody(List<DictionaryItemUpdate> items) {
+    _items = items;
+  }
+
+  @Override
+  public Body createBody() {
+    return new BufferBody(encode());
+  }
+
+  /* package private */ ByteBuf encode() {
+    int capacity = HEAD.length + TAIL.length;
+    for (DictionaryItemUpdate item : _items) {
+      capacity += ITEM_OVERHEAD + item.getKey().length() + (item.getValue() == null ? 0 : item.getValue().length());
+    }
+    ByteBuf buffer = PooledByteBufAllocator.DEFAULT.buffer(capacity);
+    try {
+      buffer.writeBytes(HEAD);
+      for (int i = 0; i < _items.size(); i++) {
+        DictionaryItemUpdate item = _items.get(i);
+        if (i > 0) {
+          buffer.writeByte(',');
+        }
+        buffer.writeBytes(OP);
+        buffer.writeCharSequence(item.getOp().getValue(), StandardCharsets.US_ASCII);
+        buffer.writeBytes(KEY);
+        writeString(buffer, item.getKey());
+        if (item.getValue() != null) {
+          buffer.writeBytes(VALUE);
+          writeString(buffer, item.getValue());
+        }
+        buffer.writeByte('}');
+      }
+      buffer.writeBytes(TAIL);
+      return buffer;
+    } catch (RuntimeException e) {
+      buffer.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes a quoted JSON string, copying the runs that need no escaping as UTF-8 in one go.
+   */
+  private static void writeString(ByteBuf buffer, String value) {
+    buffer.writeByte('"');
+    int run = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') {
+        continue;
+      }
+      ByteBufUtil.writeUtf8(buffer, value, run, i);
+      buffer.writeByte('\\');
+      switch (c) {
+        case '"':
+        case '\\':
+          buffer.writeByte(c);
+          break;
+        case '\n':
+          buffer.writeByte('n');
+          break;
+        case '\r':
+          buffer.writeByte('r');
+          break;
+        case '\t':
+          buffer.writeByte('t');
+          break;
+        default:
+          buffer.writeByte('u');
+          buffer.writeByte('0');
+          buffer.writeByte('0');
+          buffer.writeByte(HEX[c >>> 4]);
+          buffer.writeByte(HEX[c & 0xf]);
+      }
+      run = i + 1;
+    }
+    ByteBufUtil.writeUtf8(buffer, value, run, value.length());
+    buffer.writeByte('"');
+  }
+
+  private static final class BufferBody implements Body {
+
+    private final ByteBuf _buffer;
+    private final long _contentLength;
+
+    BufferBody(ByteBuf buffer) {
+      _buffer = buffer;
+      _contentLength = buffer.readableBytes();
+    }
+
+    @Override
+    public long getContentLength() {
+      return _contentLength;
+    }
+
+    @Override
+    public BodyState transferTo(ByteBuf target) {
+      target.writeBytes(_buffer, Math.min(_buffer.readableBytes(), target.writableBytes()));
+      return _buffer.isReadable() ? BodyState.CONTINUE : BodyState.STOP;
+    }
+
+    @Override
+    public void close() {
+      if (_buffer.refCnt() > 0) {
+        _buffer.release();
+      }
+    }
+  }
+}
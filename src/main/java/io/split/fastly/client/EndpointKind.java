@@ -0,0 +1,53 @@
+package io.split.fastly.client;
+
+import io.split.fastly.client.FastlyApiClient.Method;
+
+/**
+ * Kind of Fastly endpoint a request targets, used to tag metrics and route requests.
+ */
+public enum EndpointKind {
+  PURGE_KEY,
+  PURGE_BATCH,
+  PURGE_ALL,
+  PURGE_URL,
+  VCL,
+  OTHER;
+
+  private static final String SERVICE = "/service/";
+
+  /**
+   * Classifies a request sent by {@link FastlyApiClient}, from the path following <code>/service/{id}/</code>, so
+   * purging a key named <code>purge_all</code> is still a {@link #PURGE_KEY}.
+   */
+  public static EndpointKind classify(String apiUrl, Method method) {
+    if (method == Method.PURGE) {
+      return PURGE_URL;
+    }
+    int service = apiUrl.indexOf(SERVICE);
+    if (service < 0) {
+      return OTHER;
+    }
+    int id = apiUrl.indexOf('/', service + SERVICE.length());
+    if (id < 0) {
+      return OTHER;
+    }
+    String path = apiUrl.substring(id + 1);
+    if (path.equals("purge_all")) {
+      return PURGE_ALL;
+    }
+    if (path.equals("purge")) {
+      return PURGE_BATCH;
+    }
+    if (path.startsWith("purge/")) {
+      return PURGE_KEY;
+    }
+    if (path.startsWith("version/")) {
+      int version = path.indexOf('/', "version/".length());
+      String versioned = version < 0 ? "" : path.substring(version + 1);
+      if (versioned.equals("vcl") || versioned.startsWith("vcl/")) {
+        return VCL;
+      }
+    }
+    return OTHER;
+  }
+}
@@ -0,0 +1,357 @@
+package io.split.fastly.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import org.asynchttpclient.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Spreads API requests over several equivalent base urls, such as regional egress proxies in front of
+ * <code>https://api.fastly.com</code>, sending each one to the endpoint that currently performs best.
+ * <p>
+ * Requests whose url starts with one of the base urls, or with the default Fastly url, are sent to the endpoint with
+ * the lowest score: the moving average (EWMA) of its latency plus a penalty proportional to the moving average of
+ * its error rate, where errors are exceptions and 5xx responses. Endpoints with no recent sample are tried again by
+ * the next purge, which fails over if they are still down, so a recovered endpoint gets back into rotation. Other
+ * requests always go to the best endpoint. Url purges, which target content hosts, are not redirected.
+ * <p>
+ * Purges are idempotent, so a key, batch or purge all request that fails is sent again to the next best endpoint,
+ * and one still pending after {@code hedgeAfter} is also sent there, the first successful response winning. When both
+ * attempts fail, an error response is preferred over an exception. Other requests, such as VCL updates, are sent
+ * once.
+ */
+public class EndpointSelectingAsyncHttpExecutor extends ForwardingAsyncHttpExecutor {
+
+  private static final double ALPHA = 0.2;
+  private static final int ERROR_PENALTY = 10;
+  private static final long PROBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final List<Endpoint> _endpoints;
+  private final long _hedgeAfterNanos;
+  private final Ticker _ticker;
+  private final ScheduledExecutorService _scheduler;
+  private final LongAdder _hedged = new LongAdder();
+  private final LongAdder _failedOver = new LongAdder();
+
+  public EndpointSelectingAsyncHttpExecutor(AsyncHttpExecutor delegate, List<String> fastlyUrls, long hedgeAfter,
+      TimeUnit unit) {
+    this(delegate, fastlyUrls, unit.toNanos(hedgeAfter), Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  EndpointSelectingAsyncHttpExecutor(AsyncHttpExecutor delegate, List<String> fastlyUrls, long hedgeAfterNanos,
+      Ticker ticker) {
+    super(delegate);
+    Preconditions.checkNotNull(fastlyUrls, "fastlyUrls cannot be null!");
+    Preconditions.checkArgument(!fastlyUrls.isEmpty(), "fastlyUrls cannot be empty");
+    Preconditions.checkArgument(hedgeAfterNanos > 0, "hedgeAfter must be positive");
+    ImmutableList.Builder<Endpoint> endpoints = ImmutableList.builder();
+    for (String fastlyUrl : fastlyUrls) {
+      endpoints.add(new Endpoint(fastlyUrl));
+    }
+    _endpoints = endpoints.build();
+    _hedgeAfterNanos = hedgeAfterNanos;
+    _ticker = ticker;
+    _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("fastly-endpoint-hedging-%d")
+        .build());
+  }
+
+  /**
+   * Moving average of the latency of the endpoint, in nanoseconds.
+   */
+  public double getLatency(String fastlyUrl) {
+    return endpoint(fastlyUrl).snapshot()[0];
+  }
+
+  /**
+   * Moving average of the share of requests to the endpoint that failed, between 0 and 1.
+   */
+  public double getErrorRate(String fastlyUrl) {
+    return endpoint(fastlyUrl).snapshot()[1];
+  }
+
+  /**
+   * Requests also sent to a second endpoint because the first one was slow.
+   */
+  public long getHedged() {
+    return _hedged.sum();
+  }
+
+  /**
+   * Requests sent again to another endpoint because the first one failed.
+   */
+  public long getFailedOver() {
+    return _failedOver.sum();
+  }
+
+  @Override
+  public void close() throws IOException {
+    _scheduler.shutdownNow();
+    super.close();
+  }
+
+  @Override
+  protected CompletableFuture<Response> intercept(Call call) {
+    String path = path(call);
+    if (path == null) {
+      return call.proceed();
+    }
+
+    EndpointKind kind = EndpointKind.classify(call.getApiUrl(), call.getMethod());
+    boolean idempotent = call.getBody() == null && _endpoints.size() > 1
+        && (kind == EndpointKind.PURGE_KEY || kind == EndpointKind.PURGE_BATCH || kind == EndpointKind.PURGE_ALL);
+    List<Endpoint> ranked = rank(idempotent);
+    if (!idempotent) {
+      return send(call, ranked.get(0), path);
+    }
+    return new Hedge(call, path, ranked.get(0), ranked.get(1)).start();
+  }
+
+  /**
+   * The part of the url after a known base url, or null if the request doesn't target the API.
+   */
+  private String path(Call call) {
+    if (call.getMethod() == FastlyApiClient.Method.PURGE) {
+      return null;
+    }
+    String url = call.getApiUrl();
+    if (url.startsWith(FastlyApiClient.FASTLY_URL + "/")) {
+      return url.substring(FastlyApiClient.FASTLY_URL.length());
+    }
+    for (Endpoint endpoint : _endpoints) {
+      if (url.startsWith(endpoint._url + "/")) {
+        return url.substring(endpoint._url.length());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Endpoints from best to worst. Another endpoint not sampled for a while is put first, once, to refresh its
+   * score.
+   */
+  private List<Endpoint> rank(boolean probe) {
+    long now = _ticker.read();
+    List<Endpoint> ranked = new ArrayList<>(_endpoints);
+    ranked.sort((a, b) -> Double.compare(a.score(_hedgeAfterNanos), b.score(_hedgeAfterNanos)));
+    for (int i = 1; probe && i < ranked.size(); i++) {
+      if (ranked.get(i).claimProbe(now)) {
+        ranked.add(0, ranked.remove(i));
+        break;
+      }
+    }
+    return ranked;
+  }
+
+  private Endpoint endpoint(String fastlyUrl) {
+    for (Endpoint endpoint : _endpoints) {
+      if (endpoint._url.equals(fastlyUrl)) {
+        return endpoint;
+      }
+    }
+    throw new IllegalArgumentException("unknown endpoint " + fastlyUrl);
+  }
+
+  private CompletableFuture<Response> send(Call call, Endpoint endpoint, String path) {
+    long start = _ticker.read();
+    CompletableFuture<Response> response = call.proceed(endpoint._url + path);
+    response.whenComplete((r, t) -> {
+      long now = _ticker.read();
+      endpoint.record(now - start, failed(r, t), now);
+    });
+    return response;
+  }
+
+  private static boolean failed(Response response, Throwable t) {
+    return t != null || response.getStatusCode() >= 500;
+  }
+
+  /**
+   * One idempotent request sent to a primary endpoint, and to a secondary one when the primary fails or is slow.
+   */
+  private final class Hedge {
+
+    private final Call _call;
+    private final String _path;
+    private final Endpoint _primary;
+    private final Endpoint _secondary;
+    private final CompletableFuture<Response> _result = new CompletableFuture<>();
+    private final AtomicBoolean _secondarySent = new AtomicBoolean();
+    private final ReentrantLock _lock = new ReentrantLock();
+    private int _pending = 1;
+    private Response _failedResponse;
+    private ScheduledFuture<?> _timer;
+
+    Hedge(Call call, String path, Endpoint primary, Endpoint secondary) {
+      _call = call;
+      _path = path;
+      _primary = primary;
+      _secondary = secondary;
+    }
+
+    CompletableFuture<Response> start() {
+      send(_call, _primary, _path).whenComplete(this::onAttempt);
+      if (!_result.isDone()) {
+        _lock.lock();
+        try {
+          if (!_secondarySent.get()) {
+            _timer = _scheduler.schedule(this::hedge, _hedgeAfterNanos, TimeUnit.NANOSECONDS);
+          }
+        } finally {
+          _lock.unlock();
+        }
+      }
+      return _result;
+    }
+
+    private void hedge() {
+      if (!_result.isDone()) {
+        sendSecondary(_hedged);
+      }
+    }
+
+    private boolean sendSecondary(LongAdder reason) {
+      _lock.lock();
+      try {
+        if (!_secondarySent.compareAndSet(false, true)) {
+          return false;
+        }
+        _pending++;
+      } finally {
+        _lock.unlock();
+      }
+      reason.increment();
+      send(_call, _secondary, _path).whenComplete(this::onAttempt);
+      return true;
+    }
+
+    private void onAttempt(Response response, Throwable t) {
+      if (!failed(response, t)) {
+        cancelTimer();
+        _result.complete(response);
+        return;
+      }
+      if (!_result.isDone() && sendSecondary(_failedOver)) {
+        cancelTimer();
+      }
+      boolean last;
+      Response failedResponse;
+      _lock.lock();
+      try {
+        if (response != null) {
+          _failedResponse = response;
+        }
+        failedResponse = _failedResponse;
+        last = --_pending == 0;
+      } finally {
+        _lock.unlock();
+      }
+      if (!last) {
+        return;
+      }
+      if (failedResponse != null) {
+        _result.complete(failedResponse);
+      } else {
+        _result.completeExceptionally(FastlyApiClient.unwrap(t));
+      }
+    }
+
+    private void cancelTimer() {
+      _lock.lock();
+      try {
+        _secondarySent.compareAndSet(false, true);
+        if (_timer != null) {
+          _timer.cancel(false);
+        }
+      } finally {
+        _lock.unlock();
+      }
+    }
+  }
+
+  private static final class Endpoint {
+
+    private final String _url;
+    private final ReentrantLock _lock = new ReentrantLock();
+    private double _latency;
+    private double _errorRate;
+    private boolean _sampled;
+    private long _lastSample;
+
+    Endpoint(String url) {
+      _url = url;
+    }
+
+    void record(long latency, boolean failed, long now) {
+      _lock.lock();
+      try {
+        double error = failed ? 1 : 0;
+        if (_sampled) {
+          _latency += ALPHA * (latency - _latency);
+          _errorRate += ALPHA * (error - _errorRate);
+        } else {
+          _latency = latency;
+          _errorRate = error;
+          _sampled = true;
+        }
+        _lastSample = now;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    /**
+     * Unsampled endpoints score 0 so they are tried first.
+     */
+    double score(long penaltyNanos) {
+      _lock.lock();
+      try {
+        return _latency + _errorRate * ERROR_PENALTY * penaltyNanos;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    /**
+     * @return whether the caller should probe this endpoint, which it has not heard from for a while.
+     */
+    boolean claimProbe(long now) {
+      _lock.lock();
+      try {
+        if (!_sampled || now - _lastSample < PROBE_INTERVAL_NANOS) {
+          return false;
+        }
+        _lastSample = now;
+        return true;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    double[] snapshot() {
+      _lock.lock();
+      try {
+        return new double[]{_latency, _errorRate};
+      } finally {
+        _lock.unlock();
+      }
+    }
+  }
+}
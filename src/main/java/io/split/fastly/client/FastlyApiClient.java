@@ -1,23 +1,42 @@
 package io.split.fastly.client;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.JdkFutureAdapters;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.asynchttpclient.AsyncHttpClientConfig;
 import org.asynchttpclient.BoundRequestBuilder;
 import org.asynchttpclient.DefaultAsyncHttpClient;
-import org.asynchttpclient.DefaultAsyncHttpClientConfig;
+import org.asynchttpclient.ListenableFuture;
 import org.asynchttpclient.Response;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
 
+import static io.split.fastly.client.FastlyApiClient.Method.PATCH;
 import static io.split.fastly.client.FastlyApiClient.Method.POST;
 import static io.split.fastly.client.FastlyApiClient.Method.PURGE;
 import static io.split.fastly.client.FastlyApiClient.Method.PUT;
@@ -30,11 +49,23 @@ import static java.util.stream.Collectors.toList;
  */
 public class FastlyApiClient {
 
+  public static final int DEFAULT_MAX_PURGES_PER_HOST = 16;
+  /**
+   * Most items Fastly accepts in one batch dictionary update.
+   */
+  public static final int MAX_DICTIONARY_ITEMS_PER_BATCH = 1000;
+  public static final int DEFAULT_MAX_DICTIONARY_BATCHES_IN_FLIGHT = 4;
+
   /* package private */ static final String FASTLY_URL = "https://api.fastly.com";
   /* package private */ static final Joiner SURROGATE_KEY_JOINER = Joiner.on(" ");
+  private static final Map<String, String> SOFT_PURGE_HEADER = ImmutableMap.of("Fastly-Soft-Purge", "1");
 
   private final Map<String, String> _commonHeaders;
-  private final AsyncHttpClientConfig _config;
+  private final Map<String, String> _softPurgeHeaders;
+  private final Map<String, String> _formHeaders;
+  private final Map<String, String> _jsonHeaders;
+  private final ServiceUrls _defaultUrls;
+  private final ConcurrentMap<String, ServiceUrls> _customUrls = new ConcurrentHashMap<>();
   private final AsyncHttpExecutor _asyncHttpExecutor;
   private final String _serviceId;
   private final String _apiKey;
@@ -47,17 +78,28 @@ public class FastlyApiClient {
     this(apiKey, serviceId, config, null);
   }
 
-  /* package private */
-  @VisibleForTesting
-  FastlyApiClient(final String apiKey, final String serviceId, AsyncHttpClientConfig config, AsyncHttpExecutor executor) {
+  /**
+   * @param config used to create the default executor. Ignored when an executor is given.
+   * @param executor sends every request. The default {@link AsyncHttpExecutorImpl} is used when null.
+   */
+  public FastlyApiClient(final String apiKey, final String serviceId, AsyncHttpClientConfig config, AsyncHttpExecutor executor) {
     _commonHeaders = ImmutableMap.of(
         "Fastly-Key", apiKey,
         "Accept", "application/json",
         "User-Agent", "fastly-api-java-v" + VersionResolver.instance().getVersion());
-    _config = config;
+    _softPurgeHeaders = ImmutableMap.<String, String>builder().putAll(_commonHeaders).putAll(SOFT_PURGE_HEADER).build();
+    _formHeaders = ImmutableMap.<String, String>builder()
+        .putAll(_commonHeaders)
+        .put("Content-Type", "application/x-www-form-urlencoded")
+        .build();
+    _jsonHeaders = ImmutableMap.<String, String>builder()
+        .putAll(_commonHeaders)
+        .put("Content-Type", "application/json")
+        .build();
     _apiKey = apiKey;
     _serviceId = serviceId;
-    _asyncHttpExecutor = (Objects.isNull(executor)) ? new AsyncHttpExecutorImpl() : executor;
+    _defaultUrls = new ServiceUrls(FASTLY_URL, serviceId);
+    _asyncHttpExecutor = (Objects.isNull(executor)) ? new AsyncHttpExecutorImpl(config) : executor;
   }
 
   public Future<Response> vclUpload(int version, String vcl, String id, String name) {
@@ -65,15 +107,59 @@ public class FastlyApiClient {
   }
 
   public Future<Response> vclUpload(int version, String vcl, String id, String name, String fastlyUrl) {
-    String apiUrl = String.format("%s/service/%s/version/%d/vcl", fastlyUrl, _serviceId, version);
-    return _asyncHttpExecutor.execute(
-        apiUrl,
-        POST,
-        ImmutableMap.<String, String>builder()
-            .putAll(_commonHeaders)
-            .put("Content-Type", "application/x-www-form-urlencoded")
-            .build(),
-        ImmutableMap.<String, String>builder().put("content", vcl).put("name", name).put("id", id).build());
+    return _asyncHttpExecutor.execute(vclUrl(fastlyUrl, version), POST, formHeaders(), vclUploadParameters(vcl, id, name));
+  }
+
+  public CompletableFuture<Response> vclUploadAsync(int version, String vcl, String id, String name) {
+    return vclUploadAsync(version, vcl, id, name, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> vclUploadAsync(int version, String vcl, String id, String name, String fastlyUrl) {
+    return _asyncHttpExecutor.executeAsync(vclUrl(fastlyUrl, version), POST, formHeaders(), vclUploadParameters(vcl, id, name));
+  }
+
+  /**
+   * Creates a VCL in the version with only its name and content, unlike {@code vclUpload}, which also sends an
+   * {@code id}.
+   */
+  public CompletableFuture<Response> vclCreateAsync(int version, String name, String vcl) {
+    return vclCreateAsync(version, name, vcl, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> vclCreateAsync(int version, String name, String vcl, String fastlyUrl) {
+    return _asyncHttpExecutor.executeAsync(vclUrl(fastlyUrl, version), POST, formHeaders(),
+        vclUpdateParameters(name, vcl));
+  }
+
+  /**
+   * Uploads a VCL read from a file, encoding it while it is sent instead of loading it in memory. Use
+   * {@link java.nio.channels.Channels#newInputStream} to upload from a channel.
+   */
+  public CompletableFuture<Response> vclUploadAsync(int version, Path vcl, String id, String name) {
+    return vclUploadAsync(version, vcl, id, name, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> vclUploadAsync(int version, Path vcl, String id, String name, String fastlyUrl) {
+    StreamingFormBody body;
+    try {
+      body = StreamingFormBody.of(vclUploadHeadParameters(id, name), "content", vcl);
+    } catch (UncheckedIOException e) {
+      return failedFuture(e.getCause());
+    }
+    return _asyncHttpExecutor.executeStreamAsync(vclUrl(fastlyUrl, version), POST, formHeaders(), body);
+  }
+
+  /**
+   * Uploads a VCL read from the stream, which is closed once sent. The body is sent chunked and can't be retried.
+   */
+  public CompletableFuture<Response> vclUploadAsync(int version, InputStream vcl, String id, String name) {
+    return vclUploadAsync(version, vcl, id, name, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> vclUploadAsync(int version, InputStream vcl, String id, String name,
+      String fastlyUrl) {
+    return _asyncHttpExecutor.executeStreamAsync(vclUrl(fastlyUrl, version), POST, formHeaders(),
+        StreamingFormBody.of(vclUploadHeadParameters(id, name), "content", vcl));
   }
 
   public List<Future<Response>> vclUpdate(int version, Map<String, String> vcl) {
@@ -81,18 +167,58 @@ public class FastlyApiClient {
   }
 
   public List<Future<Response>> vclUpdate(int version, Map<String, String> vcl, String fastlyUrl) {
-    return vcl.entrySet().stream().map(e -> {
-      String apiUrl = String.format("%s/service/%s/version/$d/vcl/%s", fastlyUrl, _serviceId, version, e.getKey());
-      return _asyncHttpExecutor.execute(
-          apiUrl,
-          PUT,
-          ImmutableMap.<String, String>builder()
-              .putAll(_commonHeaders)
-              .put("Content-Type", "application/x-www-form-urlencoded")
-              .build(),
-          ImmutableMap.<String, String>builder().put("content", e.getValue()).put("name", e.getKey()).build());
+    return vcl.entrySet().stream()
+        .map(e -> _asyncHttpExecutor.execute(
+            vclUrl(fastlyUrl, version, e.getKey()),
+            PUT,
+            formHeaders(),
+            vclUpdateParameters(e.getKey(), e.getValue())))
+        .collect(toList());
+  }
+
+  /**
+   * Updates every VCL in the map and completes once all of them got a response, in the iteration order of the map.
+   */
+  public CompletableFuture<List<Response>> vclUpdateAsync(int version, Map<String, String> vcl) {
+    return vclUpdateAsync(version, vcl, FASTLY_URL);
+  }
+
+  public CompletableFuture<List<Response>> vclUpdateAsync(int version, Map<String, String> vcl, String fastlyUrl) {
+    List<CompletableFuture<Response>> futures = vcl.entrySet().stream()
+        .map(e -> vclUpdateAsync(version, e.getKey(), e.getValue(), fastlyUrl))
+        .collect(toList());
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(toList()));
+  }
 
-    }).collect(toList());
+  public CompletableFuture<Response> vclUpdateAsync(int version, String name, String vcl, String fastlyUrl) {
+    return _asyncHttpExecutor.executeAsync(vclUrl(fastlyUrl, version, name), PUT, formHeaders(),
+        vclUpdateParameters(name, vcl));
+  }
+
+  /**
+   * Updates a VCL read from a file, encoding it while it is sent instead of loading it in memory.
+   */
+  public CompletableFuture<Response> vclUpdateAsync(int version, String name, Path vcl) {
+    return vclUpdateAsync(version, name, vcl, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> vclUpdateAsync(int version, String name, Path vcl, String fastlyUrl) {
+    StreamingFormBody body;
+    try {
+      body = StreamingFormBody.of(ImmutableMap.of("name", name), "content", vcl);
+    } catch (UncheckedIOException e) {
+      return failedFuture(e.getCause());
+    }
+    return _asyncHttpExecutor.executeStreamAsync(vclUrl(fastlyUrl, version, name), PUT, formHeaders(), body);
+  }
+
+  /**
+   * Updates a VCL read from the stream, which is closed once sent. The body is sent chunked and can't be retried.
+   */
+  public CompletableFuture<Response> vclUpdateAsync(int version, String name, InputStream vcl, String fastlyUrl) {
+    return _asyncHttpExecutor.executeStreamAsync(vclUrl(fastlyUrl, version, name), PUT, formHeaders(),
+        StreamingFormBody.of(ImmutableMap.of("name", name), "content", vcl));
   }
 
   public Future<Response> purgeUrl(final String url) {
@@ -108,11 +234,76 @@ public class FastlyApiClient {
   }
 
   public Future<Response> purgeUrl(final String url, Map<String, String> extraHeaders) {
-    return _asyncHttpExecutor.execute(
-        url,
-        PURGE,
-        ImmutableMap.<String, String>builder().putAll(_commonHeaders).putAll(extraHeaders).build(),
-        Collections.emptyMap());
+    return _asyncHttpExecutor.execute(url, PURGE, withCommonHeaders(extraHeaders), Collections.emptyMap());
+  }
+
+  public CompletableFuture<Response> purgeUrlAsync(final String url) {
+    return purgeUrlAsync(url, Collections.emptyMap());
+  }
+
+  public CompletableFuture<Response> softPurgeUrlAsync(final String url) {
+    return softPurgeUrlAsync(url, Collections.emptyMap());
+  }
+
+  public CompletableFuture<Response> softPurgeUrlAsync(final String url, Map<String, String> extraHeaders) {
+    return purgeUrlAsync(url, buildHeaderForSoftPurge(extraHeaders));
+  }
+
+  public CompletableFuture<Response> purgeUrlAsync(final String url, Map<String, String> extraHeaders) {
+    return _asyncHttpExecutor.executeAsync(url, PURGE, withCommonHeaders(extraHeaders), Collections.emptyMap());
+  }
+
+  public Future<UrlPurgeResult> purgeUrls(Collection<String> urls) {
+    return purgeUrlsAsync(urls);
+  }
+
+  public Future<UrlPurgeResult> softPurgeUrls(Collection<String> urls) {
+    return softPurgeUrlsAsync(urls);
+  }
+
+  public CompletableFuture<UrlPurgeResult> purgeUrlsAsync(Collection<String> urls) {
+    return purgeUrlsAsync(urls, Collections.emptyMap(), DEFAULT_MAX_PURGES_PER_HOST);
+  }
+
+  public CompletableFuture<UrlPurgeResult> softPurgeUrlsAsync(Collection<String> urls) {
+    return purgeUrlsAsync(urls, SOFT_PURGE_HEADER, DEFAULT_MAX_PURGES_PER_HOST);
+  }
+
+  /**
+   * Purges many urls, sending at most {@code maxPerHost} requests to each host at a time. Urls are grouped by their
+   * host, or all under the <code>Host</code> header when one is given. Each completed purge starts the next one for
+   * its host, which picks up the keep-alive connection just released instead of opening a new one.
+   * <p>
+   * The returned future does not fail: failed purges are reported in the result.
+   */
+  public CompletableFuture<UrlPurgeResult> purgeUrlsAsync(Collection<String> urls, Map<String, String> extraHeaders,
+      int maxPerHost) {
+    Preconditions.checkNotNull(urls, "urls cannot be null!");
+    Preconditions.checkArgument(maxPerHost > 0, "maxPerHost must be positive");
+
+    Map<String, String> headers = withCommonHeaders(extraHeaders);
+    String virtualHost = extraHeaders.get("Host");
+    List<String> ordered = new ArrayList<>(urls);
+    Map<String, List<Integer>> byHost = new LinkedHashMap<>();
+    for (int i = 0; i < ordered.size(); i++) {
+      String host = virtualHost != null ? virtualHost : host(ordered.get(i));
+      byHost.computeIfAbsent(host, k -> new ArrayList<>()).add(i);
+    }
+
+    UrlPurgeResult.Entry[] entries = new UrlPurgeResult.Entry[ordered.size()];
+    CompletableFuture<?>[] hosts = byHost.entrySet().stream()
+        .map(e -> ParallelRunner.run(e.getValue(), maxPerHost, i -> {
+          String url = ordered.get(i);
+          CompletableFuture<Response> response;
+          try {
+            response = _asyncHttpExecutor.executeAsync(url, PURGE, headers, Collections.emptyMap());
+          } catch (RuntimeException ex) {
+            response = failedFuture(ex);
+          }
+          return response.handle((r, t) -> entries[i] = new UrlPurgeResult.Entry(url, e.getKey(), r, unwrap(t)));
+        }))
+        .toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(hosts).thenApply(v -> new UrlPurgeResult(Arrays.asList(entries)));
   }
 
   public Future<Response> purgeKey(String key) {
@@ -132,14 +323,33 @@ public class FastlyApiClient {
   }
 
   public Future<Response> purgeKey(String key, Map<String, String> extraHeaders, String fastlyUrl) {
-    String apiUrl = String.format("%s/service/%s/purge/%s", fastlyUrl, _serviceId, key);
-    return _asyncHttpExecutor.execute(
-        apiUrl,
-        POST,
-        ImmutableMap.<String, String>builder()
-            .putAll(_commonHeaders)
-            .putAll(extraHeaders)
-            .build(),
+    return _asyncHttpExecutor.execute(purgeKeyUrl(fastlyUrl, key), POST, withCommonHeaders(extraHeaders),
+        Collections.emptyMap());
+  }
+
+  public CompletableFuture<Response> purgeKeyAsync(String key) {
+    return purgeKeyAsync(key, Collections.emptyMap());
+  }
+
+  public CompletableFuture<Response> softPurgeKeyAsync(String key) {
+    return softPurgeKeyAsync(key, Collections.emptyMap());
+  }
+
+  public CompletableFuture<Response> softPurgeKeyAsync(String key, Map<String, String> extraHeaders) {
+    return purgeKeyAsync(key, buildHeaderForSoftPurge(extraHeaders));
+  }
+
+  public CompletableFuture<Response> softPurgeKeyAsync(String key, Map<String, String> extraHeaders,
+      String fastlyUrl) {
+    return purgeKeyAsync(key, buildHeaderForSoftPurge(extraHeaders), fastlyUrl);
+  }
+
+  public CompletableFuture<Response> purgeKeyAsync(String key, Map<String, String> extraHeaders) {
+    return purgeKeyAsync(key, extraHeaders, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> purgeKeyAsync(String key, Map<String, String> extraHeaders, String fastlyUrl) {
+    return _asyncHttpExecutor.executeAsync(purgeKeyUrl(fastlyUrl, key), POST, withCommonHeaders(extraHeaders),
         Collections.emptyMap());
   }
 
@@ -164,161 +374,372 @@ public class FastlyApiClient {
   }
 
   public Future<Response> purgeKeys(List<String> keys, Map<String, String> extraHeaders, String fastlyUrl) {
-    Preconditions.checkNotNull(keys, "keys cannot be null!");
-    Preconditions.checkArgument(keys.size() <= 256, "Fastly can't purge batches of more than 256 keys");
+    return _asyncHttpExecutor.execute(purgeKeysUrl(fastlyUrl), POST, purgeKeysHeaders(keys, extraHeaders),
+        Collections.emptyMap());
+  }
 
-    String apiUrl = String.format("%s/service/%s/purge", fastlyUrl, _serviceId);
-    return _asyncHttpExecutor.execute(
-        apiUrl,
-        POST,
-        ImmutableMap.<String, String>builder()
-            .putAll(_commonHeaders)
-            .putAll(extraHeaders)
-            .put("Surrogate-Key", SURROGATE_KEY_JOINER.join(keys))
-            .build(),
+  public CompletableFuture<Response> purgeKeysAsync(List<String> keys) {
+    return purgeKeysAsync(keys, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> purgeKeysAsync(List<String> keys, String fastlyUrl) {
+    return purgeKeysAsync(keys, Collections.emptyMap(), fastlyUrl);
+  }
+
+  public CompletableFuture<Response> softPurgeKeysAsync(List<String> keys) {
+    return softPurgeKeysAsync(keys, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> softPurgeKeysAsync(List<String> keys, String fastlyUrl) {
+    return purgeKeysAsync(keys, buildHeaderForSoftPurge(Collections.emptyMap()), fastlyUrl);
+  }
+
+  public CompletableFuture<Response> purgeKeysAsync(List<String> keys, Map<String, String> extraHeaders) {
+    return purgeKeysAsync(keys, extraHeaders, FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> purgeKeysAsync(List<String> keys, Map<String, String> extraHeaders,
+      String fastlyUrl) {
+    return _asyncHttpExecutor.executeAsync(purgeKeysUrl(fastlyUrl), POST, purgeKeysHeaders(keys, extraHeaders),
         Collections.emptyMap());
   }
 
+  /**
+   * Batch purge of keys already joined by spaces, as sent in the <code>Surrogate-Key</code> header, for callers
+   * that build the header without a String per key.
+   */
+  /* package private */ CompletableFuture<Response> purgeJoinedKeysAsync(String surrogateKeys,
+      Map<String, String> extraHeaders, String fastlyUrl) {
+    return _asyncHttpExecutor.executeAsync(purgeKeysUrl(fastlyUrl), POST,
+        purgeKeysHeaders(surrogateKeys, extraHeaders), Collections.emptyMap());
+  }
+
   public Future<Response> purgeAll() {
     return purgeAll(FASTLY_URL);
   }
 
   public Future<Response> purgeAll(String fastlyURL) {
-    String apiUrl = String.format("%s/service/%s/purge_all", fastlyURL, _serviceId);
-    return _asyncHttpExecutor.execute(
-        apiUrl,
-        POST,
-        _commonHeaders,
-        Collections.emptyMap());
+    return _asyncHttpExecutor.execute(purgeAllUrl(fastlyURL), POST, _commonHeaders, Collections.emptyMap());
   }
 
-  private Map<String, String> buildHeaderForSoftPurge(Map<String, String> extraHeaders) {
-    return ImmutableMap.<String, String>builder().put("Fastly-Soft-Purge", "1").putAll(extraHeaders).build();
+  public CompletableFuture<Response> purgeAllAsync() {
+    return purgeAllAsync(FASTLY_URL);
   }
 
-  public void closeConnectionPool() throws IOException {
-    _asyncHttpExecutor.close();
+  public CompletableFuture<Response> purgeAllAsync(String fastlyURL) {
+    return _asyncHttpExecutor.executeAsync(purgeAllUrl(fastlyURL), POST, _commonHeaders, Collections.emptyMap());
   }
 
   /**
-   * Supports PURGE operations.
+   * Applies the updates to an edge dictionary in batches of {@link #MAX_DICTIONARY_ITEMS_PER_BATCH}, sending
+   * {@link #DEFAULT_MAX_DICTIONARY_BATCHES_IN_FLIGHT} of them at a time.
    */
-  static class ExtendedAsyncHttpClient extends DefaultAsyncHttpClient {
+  public CompletableFuture<List<Response>> updateDictionaryItemsAsync(String dictionaryId,
+      List<DictionaryItemUpdate> updates) {
+    return updateDictionaryItemsAsync(dictionaryId, updates, DEFAULT_MAX_DICTIONARY_BATCHES_IN_FLIGHT, FASTLY_URL);
+  }
 
-    public ExtendedAsyncHttpClient(AsyncHttpClientConfig config) {
-      super(config);
+  /**
+   * Applies the updates to an edge dictionary with one PATCH request per batch of at most
+   * {@link #MAX_DICTIONARY_ITEMS_PER_BATCH} items, in order, with at most {@code maxInFlight} batches sent at a time.
+   * Batches are independent, so the order in which they are applied is not guaranteed when {@code maxInFlight} is
+   * more than one: don't update the same key twice in one call.
+   *
+   * @return the response of every batch, in order. Fails if any request fails, once all of them are done.
+   */
+  public CompletableFuture<List<Response>> updateDictionaryItemsAsync(String dictionaryId,
+      List<DictionaryItemUpdate> updates, int maxInFlight, String fastlyUrl) {
+    Preconditions.checkNotNull(dictionaryId, "dictionaryId cannot be null!");
+    Preconditions.checkNotNull(updates, "updates cannot be null!");
+    String url = dictionaryItemsUrl(fastlyUrl, dictionaryId);
+    return ParallelRunner.run(Lists.partition(updates, MAX_DICTIONARY_ITEMS_PER_BATCH), maxInFlight,
+        batch -> _asyncHttpExecutor.executeStreamAsync(url, PATCH, _jsonHeaders, new DictionaryItemsBody(batch)));
+  }
+
+  /**
+   * Host and port of a url, lower cased.
+   */
+  private static String host(String url) {
+    int start = url.indexOf("://");
+    start = start < 0 ? 0 : start + 3;
+    int end = start;
+    while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+      end++;
     }
+    return url.substring(start, end).toLowerCase(Locale.ROOT);
+  }
 
-    /**
-     * Prepare an HTTP client PURGE request.
-     *
-     * @param url A well formed URL.
-     * @return {@link BoundRequestBuilder}
-     */
-    public BoundRequestBuilder preparePurge(String url) {
-      return requestBuilder("PURGE", url);
+  /* package private */ static Throwable unwrap(Throwable t) {
+    return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+  }
+
+  private String vclUrl(String fastlyUrl, int version) {
+    return String.format("%s/service/%s/version/%d/vcl", fastlyUrl, _serviceId, version);
+  }
+
+  private String vclUrl(String fastlyUrl, int version, String name) {
+    return String.format("%s/service/%s/version/%d/vcl/%s", fastlyUrl, _serviceId, version, name);
+  }
+
+  private String dictionaryItemsUrl(String fastlyUrl, String dictionaryId) {
+    return String.format("%s/service/%s/dictionary/%s/items", fastlyUrl, _serviceId, dictionaryId);
+  }
+
+  private String purgeKeyUrl(String fastlyUrl, String key) {
+    return urls(fastlyUrl).purgeKeyPrefix.concat(key);
+  }
+
+  private String purgeKeysUrl(String fastlyUrl) {
+    return urls(fastlyUrl).purge;
+  }
+
+  private String purgeAllUrl(String fastlyUrl) {
+    return urls(fastlyUrl).purgeAll;
+  }
+
+  private ServiceUrls urls(String fastlyUrl) {
+    if (FASTLY_URL.equals(fastlyUrl)) {
+      return _defaultUrls;
     }
+    ServiceUrls urls = _customUrls.get(fastlyUrl);
+    if (urls == null) {
+      urls = new ServiceUrls(fastlyUrl, _serviceId);
+      ServiceUrls existing = _customUrls.putIfAbsent(fastlyUrl, urls);
+      if (existing != null) {
+        urls = existing;
+      }
+    }
+    return urls;
   }
 
+  private Map<String, String> formHeaders() {
+    return _formHeaders;
+  }
 
-  /* package private */
-  @VisibleForTesting
-  interface AsyncHttpExecutor {
+  private Map<String, String> withCommonHeaders(Map<String, String> extraHeaders) {
+    if (extraHeaders.isEmpty()) {
+      return _commonHeaders;
+    }
+    if (extraHeaders == SOFT_PURGE_HEADER) {
+      return _softPurgeHeaders;
+    }
+    return ImmutableMap.<String, String>builderWithExpectedSize(_commonHeaders.size() + extraHeaders.size())
+        .putAll(_commonHeaders)
+        .putAll(extraHeaders)
+        .build();
+  }
 
-    Future<Response> execute(String apiUrl, Method method, Map<String, String> headers, Map<String, String> parameters);
+  private Map<String, String> purgeKeysHeaders(List<String> keys, Map<String, String> extraHeaders) {
+    Preconditions.checkNotNull(keys, "keys cannot be null!");
+    Preconditions.checkArgument(keys.size() <= 256, "Fastly can't purge batches of more than 256 keys");
+    return purgeKeysHeaders(joinSurrogateKeys(keys), extraHeaders);
+  }
 
-    public void close() throws IOException;
+  private Map<String, String> purgeKeysHeaders(String surrogateKeys, Map<String, String> extraHeaders) {
+    Map<String, String> base = withCommonHeaders(extraHeaders);
+    return ImmutableMap.<String, String>builderWithExpectedSize(base.size() + 1)
+        .putAll(base)
+        .put("Surrogate-Key", surrogateKeys)
+        .build();
   }
 
   /**
-   * Entity Responsible for executing the requesting against the remote endpoint.
+   * Same output as {@link #SURROGATE_KEY_JOINER}, sizing the buffer up front so it is never grown.
    */
-  private class AsyncHttpExecutorImpl implements AsyncHttpExecutor {
+  private static String joinSurrogateKeys(List<String> keys) {
+    int size = keys.size();
+    if (size == 1) {
+      return keys.get(0);
+    }
+    int length = Math.max(size - 1, 0);
+    for (int i = 0; i < size; i++) {
+      length += keys.get(i).length();
+    }
+    StringBuilder joined = new StringBuilder(length);
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        joined.append(' ');
+      }
+      joined.append(keys.get(i));
+    }
+    return joined.toString();
+  }
 
-    private ExtendedAsyncHttpClient client;
+  private static Map<String, String> vclUploadParameters(String vcl, String id, String name) {
+    return ImmutableMap.<String, String>builder().put("content", vcl).put("name", name).put("id", id).build();
+  }
 
-    private AsyncHttpClientConfig defaultConfig = new DefaultAsyncHttpClientConfig.Builder()
-        .setMaxConnections(50)
-        .setMaxRequestRetry(3)
-        .setMaxConnections(20000)
-        .build();
+  private static Map<String, String> vclUploadHeadParameters(String id, String name) {
+    return ImmutableMap.<String, String>builder().put("name", name).put("id", id).build();
+  }
 
-    public AsyncHttpExecutorImpl() {
-      client = _config != null ? new ExtendedAsyncHttpClient(_config) : new ExtendedAsyncHttpClient(defaultConfig);
+  private static Map<String, String> vclUpdateParameters(String name, String vcl) {
+    return ImmutableMap.<String, String>builder().put("content", vcl).put("name", name).build();
+  }
+
+  private Map<String, String> buildHeaderForSoftPurge(Map<String, String> extraHeaders) {
+    if (extraHeaders.isEmpty()) {
+      return SOFT_PURGE_HEADER;
     }
+    return ImmutableMap.<String, String>builder().putAll(SOFT_PURGE_HEADER).putAll(extraHeaders).build();
+  }
+
+  /**
+   * Urls of a service under one Fastly base url, computed once so the purge methods only append the key.
+   */
+  private static final class ServiceUrls {
 
-    public void close() throws IOException {
+    private final String purge;
+    private final String purgeKeyPrefix;
+    private final String purgeAll;
 
-      client.close();
+    ServiceUrls(String fastlyUrl, String serviceId) {
+      String service = fastlyUrl + "/service/" + serviceId;
+      purge = service + "/purge";
+      purgeKeyPrefix = purge + "/";
+      purgeAll = service + "/purge_all";
     }
+  }
 
-    public Future<Response> execute(String apiUrl,
-        Method method,
-        Map<String, String> headers,
-        Map<String, String> parameters) {
+  /**
+   * Opens {@code connections} keep-alive connections to https://api.fastly.com and keeps them open, see
+   * {@link ConnectionWarmer}. Wait for {@link ConnectionWarmer#ready()} before the first latency sensitive purge.
+   */
+  public ConnectionWarmer warmUp(int connections) {
+    return warmUp(connections, Collections.singletonList(FASTLY_URL), ConnectionWarmer.DEFAULT_PING_INTERVAL_SECONDS,
+        TimeUnit.SECONDS);
+  }
 
-      BoundRequestBuilder request = getRequestForMethod(apiUrl, method);
+  /**
+   * Opens {@code connections} keep-alive connections to each of the given base urls and pings them every
+   * {@code pingInterval} until the returned warmer is closed.
+   */
+  public ConnectionWarmer warmUp(int connections, List<String> fastlyUrls, long pingInterval, TimeUnit unit) {
+    Preconditions.checkNotNull(fastlyUrls, "fastlyUrls cannot be null!");
+    Map<String, String> headers = ImmutableMap.copyOf(Maps.filterKeys(_commonHeaders, h -> !h.equals("Fastly-Key")));
+    return new ConnectionWarmer(_asyncHttpExecutor, headers, fastlyUrls, connections, pingInterval, unit);
+  }
 
-      build(request, headers, parameters);
+  public String getServiceId() {
+    return _serviceId;
+  }
 
-      return request.execute();
-    }
+  public void closeConnectionPool() throws IOException {
+    _asyncHttpExecutor.close();
+  }
 
-    private BoundRequestBuilder getRequestForMethod(String apiURL, Method method) {
+  /**
+   * Supports PURGE operations.
+   */
+  static class ExtendedAsyncHttpClient extends DefaultAsyncHttpClient {
 
-      if (method == Method.PURGE) {
-        return client.preparePurge(apiURL);
-      }
+    public ExtendedAsyncHttpClient(AsyncHttpClientConfig config) {
+      super(config);
+    }
 
-      if (method == Method.POST) {
-        return client.preparePost(apiURL);
-      }
+    /**
+     * Prepare an HTTP client PURGE request.
+     *
+     * @param url A well formed URL.
+     * @return {@link BoundRequestBuilder}
+     */
+    public BoundRequestBuilder preparePurge(String url) {
+      return requestBuilder("PURGE", url);
+    }
+  }
 
-      if (method == Method.PUT) {
-        return client.preparePut(apiURL);
-      }
 
-      if (method == Method.DELETE) {
-        return client.prepareDelete(apiURL);
-      }
+  /**
+   * Sends the requests built by {@link FastlyApiClient}. Implementations can decorate another executor to add
+   * behaviour to every call, see {@link ForwardingAsyncHttpExecutor}.
+   */
+  public interface AsyncHttpExecutor {
 
-      if (method == Method.GET) {
-        return client.prepareGet(apiURL);
-      }
+    Future<Response> execute(String apiUrl, Method method, Map<String, String> headers, Map<String, String> parameters);
 
-      return null;
+    /**
+     * Same as {@link #execute(String, Method, Map, Map)} but completes without parking any thread on the result.
+     */
+    default CompletableFuture<Response> executeAsync(String apiUrl,
+        Method method,
+        Map<String, String> headers,
+        Map<String, String> parameters) {
+      return toCompletableFuture(execute(apiUrl, method, headers, parameters));
     }
 
-    private void build(BoundRequestBuilder request, Map<String, String> headers, Map<String, String> parameters) {
-
-      Map<String,List<String>> fluentCaseInsensitiveStringsMap = new HashMap<>();
-      headers.forEach((k, v) -> fluentCaseInsensitiveStringsMap.put(k, Collections.singletonList(v)));
+    /**
+     * Sends a request whose body is produced by the given generator, such as a {@link StreamingFormBody}. Used by
+     * the streamed VCL uploads and by {@link FastlyApiClient#updateDictionaryItemsAsync}.
+     */
+    CompletableFuture<Response> executeStreamAsync(String apiUrl,
+        Method method,
+        Map<String, String> headers,
+        BodyGenerator body);
 
-      request.setHeaders(fluentCaseInsensitiveStringsMap);
+    public void close() throws IOException;
+  }
 
-      Map<String, List<String>> fluentStringsMap = new HashMap<>();
-      parameters.forEach((k, v) -> fluentStringsMap.put(k, Collections.singletonList(v)));
+  /* package private */
+  static <T> CompletableFuture<T> failedFuture(Throwable t) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(t);
+    return future;
+  }
 
-      if (request.build().getMethod().equals("GET")) {
-        request.setQueryParams(fluentStringsMap);
+  /**
+   * A future completed with the outcome of the given one, so a caller sharing a result can't cancel or complete it
+   * for everyone else. Cancelling the returned future leaves the given one untouched.
+   */
+  /* package private */
+  static <T> CompletableFuture<T> dependent(CompletableFuture<T> future) {
+    CompletableFuture<T> dependent = new CompletableFuture<>();
+    future.whenComplete((r, t) -> {
+      if (t != null) {
+        dependent.completeExceptionally(t);
       } else {
-        request.setFormParams(fluentStringsMap);
+        dependent.complete(r);
       }
+    });
+    return dependent;
+  }
 
-      String host = headers.get("Host");
-      if (host != null) {
-        request.setVirtualHost(host);
-      }
+  /**
+   * Adapts whatever {@link Future} an executor returned. Only futures that can't notify completion end up
+   * blocking a pool thread.
+   */
+  /* package private */
+  @SuppressWarnings("unchecked")
+  static CompletableFuture<Response> toCompletableFuture(Future<Response> future) {
+    if (future instanceof CompletableFuture) {
+      return (CompletableFuture<Response>) future;
+    }
+    if (future instanceof ListenableFuture) {
+      return ((ListenableFuture<Response>) future).toCompletableFuture();
     }
 
+    com.google.common.util.concurrent.ListenableFuture<Response> listenable = JdkFutureAdapters.listenInPoolThread(future);
+    CompletableFuture<Response> result = new CompletableFuture<>();
+    Futures.addCallback(listenable, new FutureCallback<Response>() {
+      @Override
+      public void onSuccess(Response response) {
+        result.complete(response);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.completeExceptionally(t);
+      }
+    }, MoreExecutors.directExecutor());
+    return result;
   }
 
-  enum Method {
+  public enum Method {
     POST,
     PURGE,
     PUT,
     GET,
-    DELETE;
+    DELETE,
+    PATCH;
   }
 
 }
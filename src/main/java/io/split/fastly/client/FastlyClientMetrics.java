@@ -0,0 +1,45 @@
+package io.split.fastly.client;
+
+import io.split.fastly.client.FastlyApiClient.Method;
+
+/**
+ * Listener notified of every request sent through a {@link MetricsAsyncHttpExecutor}.
+ * <p>
+ * Callbacks run on the caller thread when a request starts and on the I/O thread when it completes, so
+ * implementations must be thread safe and must not block.
+ */
+public interface FastlyClientMetrics {
+
+  /**
+   * Discards everything. A {@link MetricsAsyncHttpExecutor} using it adds no work to the requests.
+   */
+  FastlyClientMetrics NOOP = new FastlyClientMetrics() {
+    @Override
+    public void onRequestStarted(EndpointKind kind, Method method, long requestBytes) {
+    }
+
+    @Override
+    public void onRequestCompleted(EndpointKind kind, Method method, int statusCode, long latencyNanos,
+        long responseBytes) {
+    }
+
+    @Override
+    public void onRequestFailed(EndpointKind kind, Method method, Throwable error, long latencyNanos) {
+    }
+  };
+
+  /**
+   * @param requestBytes approximate size of the request line, headers and parameters.
+   */
+  void onRequestStarted(EndpointKind kind, Method method, long requestBytes);
+
+  /**
+   * @param responseBytes the <code>Content-Length</code> of the response, or -1 when Fastly didn't send one.
+   */
+  void onRequestCompleted(EndpointKind kind, Method method, int statusCode, long latencyNanos, long responseBytes);
+
+  /**
+   * Called instead of {@link #onRequestCompleted} when no response was received.
+   */
+  void onRequestFailed(EndpointKind kind, Method method, Throwable error, long latencyNanos);
+}
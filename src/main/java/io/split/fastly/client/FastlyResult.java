@@ -0,0 +1,57 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import org.asynchttpclient.Response;
+
+/**
+ * Base of the typed results, reading fields straight from the bytes of a JSON response body.
+ * <p>
+ * The body is copied out of the response the first time a field is read, and each field is scanned for and
+ * decoded when its getter is called, so a result whose fields are never read costs nothing but the wrapper.
+ * Getters decode again on every call: keep the value when reading it repeatedly. Malformed bodies throw an
+ * {@link IllegalArgumentException} from the getter.
+ */
+public abstract class FastlyResult {
+
+  private final Response _response;
+  private volatile byte[] _body;
+
+  protected FastlyResult(Response response) {
+    _response = Preconditions.checkNotNull(response, "response cannot be null!");
+  }
+
+  public Response getResponse() {
+    return _response;
+  }
+
+  public int getStatusCode() {
+    return _response.getStatusCode();
+  }
+
+  public boolean isSuccessful() {
+    return _response.getStatusCode() / 100 == 2;
+  }
+
+  /**
+   * The <code>msg</code> Fastly sends along an error status, null if there is none.
+   */
+  public String getErrorMessage() {
+    return isSuccessful() ? null : field("msg");
+  }
+
+  /**
+   * A top level field of the body, null when it's absent, null, or the body is not a JSON object.
+   */
+  protected String field(String name) {
+    return JsonScanner.field(body(), name);
+  }
+
+  /* package private */ byte[] body() {
+    byte[] body = _body;
+    if (body == null) {
+      body = _response.getResponseBodyAsBytes();
+      _body = body;
+    }
+    return body;
+  }
+}
@@ -0,0 +1,98 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import org.asynchttpclient.AsyncHttpClientConfig;
+import org.asynchttpclient.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands out {@link FastlyApiClient}s for many services that all share one {@link AsyncHttpExecutor}, and with it one
+ * connection pool and one set of event loop threads.
+ * <p>
+ * Clients are cached per api key and service id and are cheap: they only hold their precomputed headers and urls.
+ * Calling {@link FastlyApiClient#closeConnectionPool()} on one of them has no effect, the shared executor is closed
+ * with the registry.
+ */
+public class FastlyServiceRegistry implements Closeable {
+
+  private final String _apiKey;
+  private final AsyncHttpExecutor _executor;
+  private final AsyncHttpExecutor _shared;
+  private final ConcurrentMap<List<String>, FastlyApiClient> _clients = new ConcurrentHashMap<>();
+  private final AtomicBoolean _closed = new AtomicBoolean();
+
+  public FastlyServiceRegistry(String apiKey) {
+    this(apiKey, (AsyncHttpClientConfig) null);
+  }
+
+  public FastlyServiceRegistry(String apiKey, AsyncHttpClientConfig config) {
+    this(apiKey, new AsyncHttpExecutorImpl(config));
+  }
+
+  /**
+   * @param executor sends the requests of every service. It is closed when the registry is closed.
+   */
+  public FastlyServiceRegistry(String apiKey, AsyncHttpExecutor executor) {
+    _apiKey = Preconditions.checkNotNull(apiKey, "apiKey cannot be null!");
+    _executor = Preconditions.checkNotNull(executor, "executor cannot be null!");
+    _shared = new NonClosingAsyncHttpExecutor(executor);
+  }
+
+  /**
+   * Returns the client for the service, using the registry's api key.
+   */
+  public FastlyApiClient forService(String serviceId) {
+    return forService(_apiKey, serviceId);
+  }
+
+  /**
+   * Returns the client for the service, for services that need their own api key.
+   */
+  public FastlyApiClient forService(String apiKey, String serviceId) {
+    Preconditions.checkNotNull(apiKey, "apiKey cannot be null!");
+    Preconditions.checkNotNull(serviceId, "serviceId cannot be null!");
+    Preconditions.checkState(!_closed.get(), "FastlyServiceRegistry is closed");
+    return _clients.computeIfAbsent(Arrays.asList(apiKey, serviceId),
+        k -> new FastlyApiClient(apiKey, serviceId, null, _shared));
+  }
+
+  /* package private */ int size() {
+    return _clients.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (_closed.compareAndSet(false, true)) {
+      _clients.clear();
+      _executor.close();
+    }
+  }
+
+  /**
+   * Keeps the clients handed out by the registry from closing the shared executor.
+   */
+  private static final class NonClosingAsyncHttpExecutor extends ForwardingAsyncHttpExecutor {
+
+    NonClosingAsyncHttpExecutor(AsyncHttpExecutor delegate) {
+      super(delegate);
+    }
+
+    @Override
+    protected CompletableFuture<Response> intercept(Call call) {
+      return call.proceed();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import io.split.fastly.client.FastlyApiClient.Method;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Base class for executors that decorate another {@link AsyncHttpExecutor}.
+ * <p>
+ * Every request, blocking or not, goes through {@link #intercept(Call)}, which decides when and how the call
+ * reaches the delegate by invoking {@link Call#proceed()}.
+ */
+public abstract class ForwardingAsyncHttpExecutor implements AsyncHttpExecutor {
+
+  private final AsyncHttpExecutor _delegate;
+
+  protected ForwardingAsyncHttpExecutor(AsyncHttpExecutor delegate) {
+    _delegate = Preconditions.checkNotNull(delegate, "delegate cannot be null!");
+  }
+
+  protected AsyncHttpExecutor delegate() {
+    return _delegate;
+  }
+
+  /**
+   * Sends the call to the delegate, possibly delaying, rejecting or observing it.
+   */
+  protected abstract CompletableFuture<Response> intercept(Call call);
+
+  @Override
+  public Future<Response> execute(String apiUrl, Method method, Map<String, String> headers,
+      Map<String, String> parameters) {
+    return executeAsync(apiUrl, method, headers, parameters);
+  }
+
+  @Override
+  public CompletableFuture<Response> executeAsync(String apiUrl, Method method, Map<String, String> headers,
+      Map<String, String> parameters) {
+    return intercept(new Call(_delegate, apiUrl, method, headers, parameters, null));
+  }
+
+  @Override
+  public CompletableFuture<Response> executeStreamAsync(String apiUrl, Method method, Map<String, String> headers,
+      BodyGenerator body) {
+    return intercept(new Call(_delegate, apiUrl, method, headers, Collections.emptyMap(), body));
+  }
+
+  @Override
+  public void close() throws IOException {
+    _delegate.close();
+  }
+
+  /**
+   * A request on its way to the delegate executor.
+   */
+  public static final class Call {
+
+    private final AsyncHttpExecutor _executor;
+    private final String _apiUrl;
+    private final Method _method;
+    private final Map<String, String> _headers;
+    private final Map<String, String> _parameters;
+    private final BodyGenerator _body;
+
+    Call(AsyncHttpExecutor executor, String apiUrl, Method method, Map<String, String> headers,
+        Map<String, String> parameters, BodyGenerator body) {
+      _executor = executor;
+      _apiUrl = apiUrl;
+      _method = method;
+      _headers = headers;
+      _parameters = parameters;
+      _body = body;
+    }
+
+    public String getApiUrl() {
+      return _apiUrl;
+    }
+
+    public Method getMethod() {
+      return _method;
+    }
+
+    public Map<String, String> getHeaders() {
+      return _headers;
+    }
+
+    public Map<String, String> getParameters() {
+      return _parameters;
+    }
+
+    /**
+     * The streamed body of the request, or null when it is made of {@link #getParameters()}.
+     */
+    public BodyGenerator getBody() {
+      return _body;
+    }
+
+    /**
+     * Hands the call to the delegate executor.
+     */
+    public CompletableFuture<Response> proceed() {
+      return proceed(_apiUrl);
+    }
+
+    /**
+     * Hands the call to the delegate executor, targeting a different url.
+     */
+    public CompletableFuture<Response> proceed(String apiUrl) {
+      try {
+        return _body != null
+            ? _executor.executeStreamAsync(apiUrl, _method, _headers, _body)
+            : _executor.executeAsync(apiUrl, _method, _headers, _parameters);
+      } catch (RuntimeException e) {
+        return FastlyApiClient.failedFuture(e);
+      }
+    }
+  }
+}
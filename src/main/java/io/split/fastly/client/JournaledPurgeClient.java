@@ -0,0 +1,154 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import org.asynchttpclient.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends surrogate key purges through a {@link FastlyApiClient}, recording them in a {@link PurgeJournal} first so
+ * purges that were never confirmed by Fastly can be sent again after a restart.
+ * <p>
+ * A purge is acknowledged in the journal only when Fastly answers with a 2xx. Failed purges stay in the journal and
+ * are replayed by the next process that opens it, through {@link #replay()}.
+ * <p>
+ * Entries are recorded with the service id of the client, so clients of several services can share a journal: each
+ * one only replays the entries of its own service.
+ */
+public class JournaledPurgeClient {
+
+  private final FastlyApiClient _client;
+  private final PurgeJournal _journal;
+
+  public JournaledPurgeClient(FastlyApiClient client, PurgeJournal journal) {
+    _client = Preconditions.checkNotNull(client, "client cannot be null!");
+    _journal = Preconditions.checkNotNull(journal, "journal cannot be null!");
+  }
+
+  public CompletableFuture<Response> purgeKey(String key) {
+    return purgeKeys(Collections.singletonList(key), false, FastlyApiClient.FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> softPurgeKey(String key) {
+    return purgeKeys(Collections.singletonList(key), true, FastlyApiClient.FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> purgeKeys(List<String> keys) {
+    return purgeKeys(keys, false, FastlyApiClient.FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> softPurgeKeys(List<String> keys) {
+    return purgeKeys(keys, true, FastlyApiClient.FASTLY_URL);
+  }
+
+  public CompletableFuture<Response> purgeKeys(List<String> keys, boolean soft, String fastlyUrl) {
+    Preconditions.checkNotNull(keys, "keys cannot be null!");
+    Preconditions.checkArgument(keys.size() <= PurgeCoalescer.MAX_BATCH_SIZE,
+        "Fastly can't purge batches of more than 256 keys");
+    return send(Collections.singletonList(_journal.append(_client.getServiceId(), fastlyUrl, soft, keys)));
+  }
+
+  /**
+   * Sends again every purge of this client's service that was pending when the journal was opened, packing them in
+   * batches of up to 256 keys. Entries of other services are left pending. Completes with the number of entries
+   * Fastly confirmed.
+   */
+  public CompletableFuture<Integer> replay() {
+    Map<BatchKey, List<PurgeJournal.Entry>> groups = new LinkedHashMap<>();
+    for (PurgeJournal.Entry entry : _journal.getRecovered()) {
+      if (!entry.isAcknowledged() && entry.getServiceId().equals(_client.getServiceId())) {
+        groups.computeIfAbsent(new BatchKey(entry.getFastlyUrl(), entry.isSoft()), k -> new ArrayList<>()).add(entry);
+      }
+    }
+
+    List<CompletableFuture<Integer>> batches = new ArrayList<>();
+    for (List<PurgeJournal.Entry> entries : groups.values()) {
+      List<PurgeJournal.Entry> batch = new ArrayList<>();
+      Set<String> keys = new LinkedHashSet<>();
+      for (PurgeJournal.Entry entry : entries) {
+        Set<String> merged = new LinkedHashSet<>(keys);
+        merged.addAll(entry.getKeys());
+        if (merged.size() > PurgeCoalescer.MAX_BATCH_SIZE && !batch.isEmpty()) {
+          batches.add(replayBatch(batch));
+          batch = new ArrayList<>();
+          merged = new LinkedHashSet<>(entry.getKeys());
+        }
+        batch.add(entry);
+        keys = merged;
+      }
+      batches.add(replayBatch(batch));
+    }
+
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+        .thenApply(v -> batches.stream().mapToInt(CompletableFuture::join).sum());
+  }
+
+  private CompletableFuture<Integer> replayBatch(List<PurgeJournal.Entry> batch) {
+    return send(batch).handle((r, t) -> t == null && isSuccess(r) ? batch.size() : 0);
+  }
+
+  private CompletableFuture<Response> send(List<PurgeJournal.Entry> entries) {
+    PurgeJournal.Entry first = entries.get(0);
+    List<String> keys;
+    if (entries.size() == 1) {
+      keys = first.getKeys();
+    } else {
+      Set<String> unique = new LinkedHashSet<>();
+      entries.forEach(e -> unique.addAll(e.getKeys()));
+      keys = new ArrayList<>(unique);
+    }
+
+    CompletableFuture<Response> response = first.isSoft()
+        ? _client.softPurgeKeysAsync(keys, first.getFastlyUrl())
+        : _client.purgeKeysAsync(keys, first.getFastlyUrl());
+    return response.thenApply(r -> {
+      if (isSuccess(r)) {
+        entries.forEach(_journal::acknowledge);
+      }
+      return r;
+    });
+  }
+
+  private static boolean isSuccess(Response response) {
+    return response.getStatusCode() >= 200 && response.getStatusCode() < 300;
+  }
+
+  /**
+   * Entries can only share a request when they target the same url with the same purge kind.
+   */
+  private static final class BatchKey {
+
+    private final String _fastlyUrl;
+    private final boolean _soft;
+
+    BatchKey(String fastlyUrl, boolean soft) {
+      _fastlyUrl = fastlyUrl;
+      _soft = soft;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof BatchKey)) {
+        return false;
+      }
+      BatchKey other = (BatchKey) o;
+      return _soft == other._soft && _fastlyUrl.equals(other._fastlyUrl);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(_fastlyUrl, _soft);
+    }
+  }
+}
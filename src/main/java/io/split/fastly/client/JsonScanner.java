@@ -0,0 +1,251 @@
+package io.split.fastly.client;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull scanner over the members of a JSON object held as UTF-8 bytes.
+ * <p>
+ * Only the top level object is walked: nested objects and arrays are skipped without being decoded, member names
+ * are compared byte by byte, and a value only becomes a String when it is asked for. Quotes and backslashes never
+ * appear inside multi-byte UTF-8 sequences, so strings can be delimited without decoding them.
+ */
+/* package private */ final class JsonScanner {
+
+  private final byte[] _json;
+  private int _pos;
+  private boolean _first = true;
+  private int _nameStart;
+  private int _nameEnd;
+  private boolean _nameEscaped;
+
+  JsonScanner(byte[] json) {
+    _json = json;
+  }
+
+  /**
+   * Value of a top level member, see {@link #value()}. Null when the body is not an object or the member is absent.
+   */
+  static String field(byte[] json, String name) {
+    byte[] wanted = name.getBytes(StandardCharsets.UTF_8);
+    JsonScanner scanner = new JsonScanner(json);
+    if (!scanner.enterObject()) {
+      return null;
+    }
+    while (scanner.nextMember()) {
+      if (scanner.nameEquals(wanted)) {
+        return scanner.value();
+      }
+      scanner.skipValue();
+    }
+    return null;
+  }
+
+  /**
+   * @return false if the body is not a JSON object.
+   */
+  boolean enterObject() {
+    skipWhitespace();
+    if (_pos < _json.length && _json[_pos] == '{') {
+      _pos++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Moves to the next member and past its colon, so its value can be read or skipped.
+   *
+   * @return false once the end of the object is reached.
+   */
+  boolean nextMember() {
+    skipWhitespace();
+    if (peek() == '}') {
+      _pos++;
+      return false;
+    }
+    if (!_first) {
+      expect(',');
+      skipWhitespace();
+    }
+    _first = false;
+    expect('"');
+    _nameStart = _pos;
+    _nameEscaped = skipString();
+    _nameEnd = _pos - 1;
+    skipWhitespace();
+    expect(':');
+    return true;
+  }
+
+  String name() {
+    return decode(_nameStart, _nameEnd, _nameEscaped);
+  }
+
+  boolean nameEquals(byte[] name) {
+    if (_nameEscaped) {
+      return name().equals(new String(name, StandardCharsets.UTF_8));
+    }
+    if (_nameEnd - _nameStart != name.length) {
+      return false;
+    }
+    for (int i = 0; i < name.length; i++) {
+      if (_json[_nameStart + i] != name[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the current value: strings unescaped, numbers and booleans as written, null for null, objects and
+   * arrays.
+   */
+  String value() {
+    skipWhitespace();
+    byte c = peek();
+    if (c == '"') {
+      _pos++;
+      int start = _pos;
+      boolean escaped = skipString();
+      return decode(start, _pos - 1, escaped);
+    }
+    if (c == '{' || c == '[') {
+      skipValue();
+      return null;
+    }
+    int start = _pos;
+    skipLiteral();
+    String literal = new String(_json, start, _pos - start, StandardCharsets.US_ASCII);
+    return "null".equals(literal) ? null : literal;
+  }
+
+  void skipValue() {
+    skipWhitespace();
+    byte c = peek();
+    if (c == '"') {
+      _pos++;
+      skipString();
+    } else if (c == '{' || c == '[') {
+      int depth = 0;
+      do {
+        c = _json[_pos++];
+        if (c == '"') {
+          skipString();
+        } else if (c == '{' || c == '[') {
+          depth++;
+        } else if (c == '}' || c == ']') {
+          depth--;
+        }
+      } while (depth > 0 && _pos < _json.length);
+      if (depth > 0) {
+        throw malformed();
+      }
+    } else {
+      skipLiteral();
+    }
+  }
+
+  /**
+   * Moves past the closing quote of a string whose opening quote was consumed.
+   *
+   * @return whether the string contains escape sequences.
+   */
+  private boolean skipString() {
+    boolean escaped = false;
+    while (_pos < _json.length) {
+      byte c = _json[_pos++];
+      if (c == '"') {
+        return escaped;
+      }
+      if (c == '\\') {
+        escaped = true;
+        _pos++;
+      }
+    }
+    throw malformed();
+  }
+
+  private void skipLiteral() {
+    while (_pos < _json.length) {
+      byte c = _json[_pos];
+      if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+        break;
+      }
+      _pos++;
+    }
+  }
+
+  private String decode(int start, int end, boolean escaped) {
+    if (!escaped) {
+      return new String(_json, start, end - start, StandardCharsets.UTF_8);
+    }
+    StringBuilder decoded = new StringBuilder(end - start);
+    int run = start;
+    int i = start;
+    while (i < end) {
+      if (_json[i] != '\\') {
+        i++;
+        continue;
+      }
+      decoded.append(new String(_json, run, i - run, StandardCharsets.UTF_8));
+      byte c = _json[i + 1];
+      i += 2;
+      switch (c) {
+        case 'b':
+          decoded.append('\b');
+          break;
+        case 'f':
+          decoded.append('\f');
+          break;
+        case 'n':
+          decoded.append('\n');
+          break;
+        case 'r':
+          decoded.append('\r');
+          break;
+        case 't':
+          decoded.append('\t');
+          break;
+        case 'u':
+          if (i + 4 > end) {
+            throw malformed();
+          }
+          decoded.append((char) Integer.parseInt(new String(_json, i, 4, StandardCharsets.US_ASCII), 16));
+          i += 4;
+          break;
+        default:
+          decoded.append((char) c);
+      }
+      run = i;
+    }
+    return decoded.append(new String(_json, run, end - run, StandardCharsets.UTF_8)).toString();
+  }
+
+  private byte peek() {
+    if (_pos >= _json.length) {
+      throw malformed();
+    }
+    return _json[_pos];
+  }
+
+  private void expect(char c) {
+    if (peek() != c) {
+      throw malformed();
+    }
+    _pos++;
+  }
+
+  private void skipWhitespace() {
+    while (_pos < _json.length && isWhitespace(_json[_pos])) {
+      _pos++;
+    }
+  }
+
+  private static boolean isWhitespace(byte c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  private IllegalArgumentException malformed() {
+    return new IllegalArgumentException("Malformed JSON at offset " + _pos);
+  }
+}
@@ -0,0 +1,109 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free log-linear histogram of non negative values, in the spirit of HdrHistogram.
+ * <p>
+ * Values below 64 are counted exactly. Above that, every power of two is split into 32 buckets, so a reported
+ * percentile is at most ~3% above the real one. Recording never allocates.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+  private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder _count = new LongAdder();
+  private final LongAdder _sum = new LongAdder();
+  private final AtomicLong _max = new AtomicLong();
+
+  public void record(long value) {
+    long v = Math.max(value, 0);
+    _counts.incrementAndGet(index(v));
+    _count.increment();
+    _sum.add(v);
+    long max = _max.get();
+    while (v > max && !_max.compareAndSet(max, v)) {
+      max = _max.get();
+    }
+  }
+
+  public long getCount() {
+    return _count.sum();
+  }
+
+  public long getMax() {
+    return _max.get();
+  }
+
+  public double getMean() {
+    long count = _count.sum();
+    return count == 0 ? 0 : (double) _sum.sum() / count;
+  }
+
+  /**
+   * Returns the smallest recorded value such that the given percentage of values are less than or equal to it,
+   * rounded up to its bucket bound.
+   *
+   * @param percentile between 0 and 100.
+   */
+  public long getValueAtPercentile(double percentile) {
+    Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+    long total = 0;
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = _counts.get(i);
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestEquivalentValue(i), _max.get());
+      }
+    }
+    return _max.get();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      _counts.set(i, 0);
+    }
+    _count.reset();
+    _sum.reset();
+    _max.set(0);
+  }
+
+  /* package private */
+  static int index(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  private static long lowestEquivalentValue(int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+    return subBucket << shift;
+  }
+
+  private static long highestEquivalentValue(int index) {
+    return index + 1 >= BUCKETS ? Long.MAX_VALUE : lowestEquivalentValue(index + 1) - 1;
+  }
+}
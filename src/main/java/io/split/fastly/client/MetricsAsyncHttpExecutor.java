@@ -0,0 +1,67 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Longs;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import org.asynchttpclient.Response;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reports every request to a {@link FastlyClientMetrics}, tagged by {@link EndpointKind} and method.
+ */
+public class MetricsAsyncHttpExecutor extends ForwardingAsyncHttpExecutor {
+
+  private final FastlyClientMetrics _metrics;
+
+  public MetricsAsyncHttpExecutor(AsyncHttpExecutor delegate, FastlyClientMetrics metrics) {
+    super(delegate);
+    _metrics = Preconditions.checkNotNull(metrics, "metrics cannot be null!");
+  }
+
+  @Override
+  protected CompletableFuture<Response> intercept(Call call) {
+    if (_metrics == FastlyClientMetrics.NOOP) {
+      return call.proceed();
+    }
+
+    EndpointKind kind = EndpointKind.classify(call.getApiUrl(), call.getMethod());
+    _metrics.onRequestStarted(kind, call.getMethod(), requestBytes(call));
+    long start = System.nanoTime();
+
+    CompletableFuture<Response> response = call.proceed();
+    response.whenComplete((r, t) -> {
+      long latency = System.nanoTime() - start;
+      if (t != null) {
+        _metrics.onRequestFailed(kind, call.getMethod(), t, latency);
+      } else {
+        _metrics.onRequestCompleted(kind, call.getMethod(), r.getStatusCode(), latency, responseBytes(r));
+      }
+    });
+    return response;
+  }
+
+  private static long requestBytes(Call call) {
+    long bytes = call.getMethod().name().length() + call.getApiUrl().length();
+    for (Map.Entry<String, String> header : call.getHeaders().entrySet()) {
+      bytes += header.getKey().length() + header.getValue().length() + 4;
+    }
+    for (Map.Entry<String, String> parameter : call.getParameters().entrySet()) {
+      bytes += parameter.getKey().length() + parameter.getValue().length() + 2;
+    }
+    if (call.getBody() instanceof StreamingFormBody) {
+      bytes += Math.max(((StreamingFormBody) call.getBody()).getContentLength(), 0);
+    }
+    return bytes;
+  }
+
+  /**
+   * The declared size of the response, or -1. The body is not measured, as that would copy it.
+   */
+  private static long responseBytes(Response response) {
+    String contentLength = response.getHeader("Content-Length");
+    Long length = contentLength == null ? null : Longs.tryParse(contentLength);
+    return length != null ? length : -1;
+  }
+}
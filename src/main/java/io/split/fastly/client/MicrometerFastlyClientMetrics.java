@@ -0,0 +1,100 @@
+package io.split.fastly.client;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.split.fastly.client.FastlyApiClient.Method;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes request metrics to a Micrometer {@link MeterRegistry}, which in turn can export to Prometheus, Datadog,
+ * Graphite and most other backends. Micrometer is an optional dependency: it must be on the classpath to use this
+ * class.
+ * <p>
+ * Meters, tagged with <code>endpoint</code> and <code>method</code>:
+ * <ul>
+ * <li><code>fastly.client.requests</code>: timer with percentile histogram, also tagged with <code>status</code>
+ * (the status code, or <code>error</code> when no response was received).</li>
+ * <li><code>fastly.client.requests.in.flight</code>: gauge.</li>
+ * <li><code>fastly.client.bytes.sent</code> and <code>fastly.client.bytes.received</code>: distribution summaries.</li>
+ * </ul>
+ */
+public class MicrometerFastlyClientMetrics implements FastlyClientMetrics {
+
+  private static final String PREFIX = "fastly.client.";
+
+  private final MeterRegistry _registry;
+  private final Map<EndpointKind, ConcurrentMap<Method, Meters>> _meters = new EnumMap<>(EndpointKind.class);
+
+  public MicrometerFastlyClientMetrics(MeterRegistry registry) {
+    _registry = registry;
+    for (EndpointKind kind : EndpointKind.values()) {
+      _meters.put(kind, new ConcurrentHashMap<>());
+    }
+  }
+
+  @Override
+  public void onRequestStarted(EndpointKind kind, Method method, long requestBytes) {
+    Meters meters = meters(kind, method);
+    meters._inFlight.incrementAndGet();
+    meters._bytesSent.record(requestBytes);
+  }
+
+  @Override
+  public void onRequestCompleted(EndpointKind kind, Method method, int statusCode, long latencyNanos,
+      long responseBytes) {
+    Meters meters = meters(kind, method);
+    meters._inFlight.decrementAndGet();
+    if (responseBytes >= 0) {
+      meters._bytesReceived.record(responseBytes);
+    }
+    meters.timer(Integer.toString(statusCode)).record(latencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void onRequestFailed(EndpointKind kind, Method method, Throwable error, long latencyNanos) {
+    Meters meters = meters(kind, method);
+    meters._inFlight.decrementAndGet();
+    meters.timer("error").record(latencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private Meters meters(EndpointKind kind, Method method) {
+    return _meters.get(kind).computeIfAbsent(method, m -> new Meters(kind, m));
+  }
+
+  /**
+   * Meters of one endpoint kind and method, looked up once.
+   */
+  private class Meters {
+
+    private final Tags _tags;
+    private final AtomicLong _inFlight;
+    private final DistributionSummary _bytesSent;
+    private final DistributionSummary _bytesReceived;
+    private final ConcurrentMap<String, Timer> _timers = new ConcurrentHashMap<>();
+
+    Meters(EndpointKind kind, Method method) {
+      _tags = Tags.of("endpoint", kind.name().toLowerCase(), "method", method.name());
+      _inFlight = _registry.gauge(PREFIX + "requests.in.flight", _tags, new AtomicLong());
+      _bytesSent = DistributionSummary.builder(PREFIX + "bytes.sent").baseUnit("bytes").tags(_tags)
+          .register(_registry);
+      _bytesReceived = DistributionSummary.builder(PREFIX + "bytes.received").baseUnit("bytes").tags(_tags)
+          .register(_registry);
+    }
+
+    Timer timer(String status) {
+      return _timers.computeIfAbsent(status, s -> Timer.builder(PREFIX + "requests")
+          .tags(_tags)
+          .tag("status", s)
+          .publishPercentileHistogram()
+          .register(_registry));
+    }
+  }
+}
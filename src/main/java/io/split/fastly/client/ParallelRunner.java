@@ -0,0 +1,116 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Runs asynchronous tasks over a list of items with at most {@code parallelism} of them in flight.
+ * <p>
+ * No thread is blocked: each completed task starts the next pending item from the thread that completed it.
+ */
+/* package private */ final class ParallelRunner {
+
+  private ParallelRunner() {
+  }
+
+  /**
+   * @return the results in the order of the items. A task that throws or fails completes the returned future
+   * exceptionally once every task is done; tasks are expected to turn their own failures into results.
+   */
+  static <T, R> CompletableFuture<List<R>> run(List<T> items, int parallelism,
+      Function<? super T, CompletableFuture<R>> task) {
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+    if (items.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+
+    return new Run<>(items, task).start(Math.min(parallelism, items.size()));
+  }
+
+  private static final class Run<T, R> {
+
+    private final List<T> _items;
+    private final Function<? super T, CompletableFuture<R>> _task;
+    private final AtomicReferenceArray<R> _results;
+    private final AtomicInteger _next = new AtomicInteger();
+    private final AtomicInteger _remaining;
+    private final AtomicReference<Throwable> _error = new AtomicReference<>();
+    private final CompletableFuture<List<R>> _done = new CompletableFuture<>();
+
+    Run(List<T> items, Function<? super T, CompletableFuture<R>> task) {
+      _items = items;
+      _task = task;
+      _results = new AtomicReferenceArray<>(items.size());
+      _remaining = new AtomicInteger(items.size());
+    }
+
+    CompletableFuture<List<R>> start(int workers) {
+      for (int i = 0; i < workers; i++) {
+        work();
+      }
+      return _done;
+    }
+
+    /**
+     * Runs items until one of them completes asynchronously, which picks up the work once done. Looping instead
+     * of recursing keeps tasks that complete right away from growing the stack.
+     */
+    private void work() {
+      int index;
+      while ((index = _next.getAndIncrement()) < _items.size()) {
+        CompletableFuture<R> result;
+        try {
+          result = _task.apply(_items.get(index));
+        } catch (RuntimeException e) {
+          result = FastlyApiClient.failedFuture(e);
+        }
+        if (!result.isDone()) {
+          int pending = index;
+          result.whenComplete((r, t) -> {
+            complete(pending, r, t);
+            work();
+          });
+          return;
+        }
+        R value = null;
+        Throwable error = null;
+        try {
+          value = result.join();
+        } catch (CompletionException | CancellationException e) {
+          error = e.getCause() != null ? e.getCause() : e;
+        }
+        complete(index, value, error);
+      }
+    }
+
+    private void complete(int index, R result, Throwable error) {
+      if (error != null) {
+        _error.compareAndSet(null, error);
+      } else {
+        _results.set(index, result);
+      }
+      if (_remaining.decrementAndGet() > 0) {
+        return;
+      }
+      if (_error.get() != null) {
+        _done.completeExceptionally(_error.get());
+        return;
+      }
+      List<R> ordered = new ArrayList<>(_items.size());
+      for (int i = 0; i < _items.size(); i++) {
+        ordered.add(_results.get(i));
+      }
+      _done.complete(ordered);
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import org.asynchttpclient.Response;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * Caps the requests in flight and, when they queue, lets them through by priority lane rather than in submission
+ * order, so a bulk soft purge doesn't delay an urgent purge all.
+ * <p>
+ * Each request goes to the first {@link Lane} that accepts it, or to the last lane. When a slot frees up, the next
+ * request is taken from the non-empty lanes by smooth weighted round robin: with weights 8 and 1, eight urgent
+ * requests are sent for each bulk one while both lanes have requests waiting, and bulk requests still progress.
+ * The time requests spend queued is recorded per lane, see {@link #getQueueWait(String)}.
+ * <p>
+ * Each lane queues at most {@code maxQueuedPerLane} requests. Requests beyond that fail with a
+ * {@link RejectedExecutionException}, like in {@link AdmissionControlledAsyncHttpExecutor}.
+ */
+public class PriorityAsyncHttpExecutor extends QueueingAsyncHttpExecutor {
+
+  private final int _maxQueuedPerLane;
+  private final List<LaneQueue> _lanes;
+  private final Map<String, LaneQueue> _lanesByName = new LinkedHashMap<>();
+
+  public PriorityAsyncHttpExecutor(AsyncHttpExecutor delegate, int maxInFlight, int maxQueuedPerLane) {
+    this(delegate, maxInFlight, maxQueuedPerLane, defaultLanes());
+  }
+
+  public PriorityAsyncHttpExecutor(AsyncHttpExecutor delegate, int maxInFlight, int maxQueuedPerLane,
+      List<Lane> lanes) {
+    super(delegate, maxInFlight);
+    Preconditions.checkArgument(maxQueuedPerLane >= 0, "maxQueuedPerLane cannot be negative");
+    Preconditions.checkArgument(!lanes.isEmpty(), "lanes cannot be empty");
+    _maxQueuedPerLane = maxQueuedPerLane;
+    ImmutableList.Builder<LaneQueue> queues = ImmutableList.builder();
+    for (Lane lane : lanes) {
+      LaneQueue queue = new LaneQueue(lane);
+      Preconditions.checkArgument(_lanesByName.put(lane.getName(), queue) == null, "duplicated lane %s",
+          lane.getName());
+      queues.add(queue);
+    }
+    _lanes = queues.build();
+  }
+
+  /**
+   * From most to least urgent: purge all, hard key purges, soft key purges, url purges, and everything else
+   * such as VCL requests, weighted 16, 8, 4, 2 and 1.
+   */
+  public static List<Lane> defaultLanes() {
+    Predicate<Call> soft = call -> "1".equals(call.getHeaders().get("Fastly-Soft-Purge"));
+    return ImmutableList.of(
+        new Lane("purge-all", 16, kind(EndpointKind.PURGE_ALL)),
+        new Lane("hard-key", 8, kind(EndpointKind.PURGE_KEY).or(kind(EndpointKind.PURGE_BATCH)).and(soft.negate())),
+        new Lane("soft-key", 4, kind(EndpointKind.PURGE_KEY).or(kind(EndpointKind.PURGE_BATCH))),
+        new Lane("url", 2, kind(EndpointKind.PURGE_URL)),
+        new Lane("other", 1, call -> true));
+  }
+
+  private static Predicate<Call> kind(EndpointKind kind) {
+    return call -> EndpointKind.classify(call.getApiUrl(), call.getMethod()) == kind;
+  }
+
+  @Override
+  protected CompletableFuture<Response> intercept(Call call) {
+    Pending pending = new Pending(call);
+    LaneQueue lane = laneOf(call);
+    _lock.lock();
+    try {
+      if (isSaturated() && lane._queue.size() >= _maxQueuedPerLane) {
+        return FastlyApiClient.failedFuture(rejection(_maxQueuedPerLane));
+      }
+      lane._queue.add(pending);
+    } finally {
+      _lock.unlock();
+    }
+    drain();
+    return pending._future;
+  }
+
+  public int getQueued(String lane) {
+    LaneQueue queue = lane(lane);
+    _lock.lock();
+    try {
+      return queue._queue.size();
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Nanoseconds the requests of the lane waited for a slot, including the ones that got it right away.
+   */
+  public LatencyHistogram getQueueWait(String lane) {
+    return lane(lane)._queueWait;
+  }
+
+  /**
+   * Names of the lanes, from first to last.
+   */
+  public List<String> getLanes() {
+    return ImmutableList.copyOf(_lanesByName.keySet());
+  }
+
+  private LaneQueue lane(String name) {
+    LaneQueue queue = _lanesByName.get(name);
+    Preconditions.checkArgument(queue != null, "unknown lane %s", name);
+    return queue;
+  }
+
+  private LaneQueue laneOf(Call call) {
+    for (LaneQueue lane : _lanes) {
+      if (lane._lane._accepts.test(call)) {
+        return lane;
+      }
+    }
+    return _lanes.get(_lanes.size() - 1);
+  }
+
+  /**
+   * Smooth weighted round robin: every non-empty lane earns its weight, the richest one is served and pays the
+   * total, so lanes are served in proportion to their weights and evenly interleaved.
+   */
+  @Override
+  protected Pending dequeue() {
+    LaneQueue best = null;
+    int total = 0;
+    for (LaneQueue lane : _lanes) {
+      if (lane._queue.isEmpty()) {
+        continue;
+      }
+      lane._current += lane._lane._weight;
+      total += lane._lane._weight;
+      if (best == null || lane._current > best._current) {
+        best = lane;
+      }
+    }
+    if (best == null) {
+      return null;
+    }
+    best._current -= total;
+    Pending next = best._queue.poll();
+    best._queueWait.record(System.nanoTime() - next._enqueuedAt);
+    return next;
+  }
+
+  /**
+   * A named class of requests and its share of the slots.
+   */
+  public static final class Lane {
+
+    private final String _name;
+    private final int _weight;
+    private final Predicate<Call> _accepts;
+
+    /**
+     * @param accepts whether a request belongs to this lane, when no earlier lane took it.
+     */
+    public Lane(String name, int weight, Predicate<Call> accepts) {
+      Preconditions.checkArgument(weight > 0, "weight must be positive");
+      _name = Preconditions.checkNotNull(name, "name cannot be null!");
+      _accepts = Preconditions.checkNotNull(accepts, "accepts cannot be null!");
+      _weight = weight;
+    }
+
+    public String getName() {
+      return _name;
+    }
+
+    public int getWeight() {
+      return _weight;
+    }
+  }
+
+  private static final class LaneQueue {
+
+    private final Lane _lane;
+    private final ArrayDeque<Pending> _queue = new ArrayDeque<>();
+    private final LatencyHistogram _queueWait = new LatencyHistogram();
+    private int _current;
+
+    LaneQueue(Lane lane) {
+      _lane = lane;
+    }
+  }
+}
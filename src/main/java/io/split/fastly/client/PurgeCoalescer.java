@@ -0,0 +1,213 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.asynchttpclient.Response;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects single key purges coming from any number of threads and sends them as batched
+ * {@link FastlyApiClient#purgeKeysAsync(List, String)} calls.
+ * <p>
+ * Keys are flushed once the window elapses or a full batch is collected, whichever happens first. Duplicated keys
+ * within a window share a single slot, while each caller gets its own completion handle, so cancelling one doesn't
+ * affect the others. Hard and soft purges are kept in separate lanes so they are never mixed in the same request.
+ */
+public class PurgeCoalescer implements Closeable {
+
+  /* package private */ static final int MAX_BATCH_SIZE = 256;
+
+  private final FastlyApiClient _client;
+  private final String _fastlyUrl;
+  private final int _maxBatchSize;
+  private final long _windowNanos;
+  private final ScheduledExecutorService _scheduler;
+  private final Lane _hardLane;
+  private final Lane _softLane;
+
+  public PurgeCoalescer(FastlyApiClient client, long window, TimeUnit unit) {
+    this(client, MAX_BATCH_SIZE, window, unit, FastlyApiClient.FASTLY_URL);
+  }
+
+  public PurgeCoalescer(FastlyApiClient client, int maxBatchSize, long window, TimeUnit unit, String fastlyUrl) {
+    Preconditions.checkNotNull(client, "client cannot be null!");
+    Preconditions.checkArgument(maxBatchSize > 0 && maxBatchSize <= MAX_BATCH_SIZE,
+        "maxBatchSize must be between 1 and %s", MAX_BATCH_SIZE);
+    Preconditions.checkArgument(window >= 0, "window cannot be negative");
+    _client = client;
+    _fastlyUrl = Preconditions.checkNotNull(fastlyUrl, "fastlyUrl cannot be null!");
+    _maxBatchSize = maxBatchSize;
+    _windowNanos = unit.toNanos(window);
+    _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("fastly-purge-coalescer-%d")
+        .build());
+    _hardLane = new Lane(false);
+    _softLane = new Lane(true);
+  }
+
+  /**
+   * Queues a hard purge of the given surrogate key.
+   *
+   * @return a handle completed with the response of the batch the key was sent in, or failed with an
+   *     {@link IllegalStateException} if the coalescer is closed.
+   */
+  public CompletableFuture<Response> purgeKey(String key) {
+    return _hardLane.add(key);
+  }
+
+  /**
+   * Queues a soft purge (<code>Fastly-Soft-Purge</code>) of the given surrogate key.
+   *
+   * @return a handle completed with the response of the batch the key was sent in, or failed with an
+   *     {@link IllegalStateException} if the coalescer is closed.
+   */
+  public CompletableFuture<Response> softPurgeKey(String key) {
+    return _softLane.add(key);
+  }
+
+  /**
+   * Sends every pending key right away without waiting for the window to elapse.
+   */
+  public void flush() {
+    _hardLane.flush();
+    _softLane.flush();
+  }
+
+  /**
+   * Flushes pending keys and stops accepting new ones. The underlying client is not closed.
+   */
+  @Override
+  public void close() {
+    _hardLane.close();
+    _softLane.close();
+    flush();
+    _scheduler.shutdown();
+  }
+
+  private CompletableFuture<Response> send(List<String> keys, boolean soft) {
+    return soft ? _client.softPurgeKeysAsync(keys, _fastlyUrl) : _client.purgeKeysAsync(keys, _fastlyUrl);
+  }
+
+  /**
+   * Pending keys of one purge kind, in arrival order.
+   */
+  private class Lane {
+
+    private final boolean _soft;
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Map<String, CompletableFuture<Response>> _pending = new LinkedHashMap<>();
+    private boolean _flushScheduled;
+    private boolean _closed;
+
+    Lane(boolean soft) {
+      _soft = soft;
+    }
+
+    CompletableFuture<Response> add(String key) {
+      Preconditions.checkNotNull(key, "key cannot be null!");
+
+      CompletableFuture<Response> future;
+      boolean full = false;
+      _lock.lock();
+      try {
+        if (_closed) {
+          return FastlyApiClient.failedFuture(new IllegalStateException("PurgeCoalescer is closed"));
+        }
+        future = _pending.get(key);
+        if (future != null) {
+          return FastlyApiClient.dependent(future);
+        }
+        future = new CompletableFuture<>();
+        _pending.put(key, future);
+        if (_pending.size() >= _maxBatchSize) {
+          full = true;
+        } else if (!_flushScheduled) {
+          _flushScheduled = true;
+          _scheduler.schedule(this::flush, _windowNanos, TimeUnit.NANOSECONDS);
+        }
+      } finally {
+        _lock.unlock();
+      }
+
+      if (full) {
+        try {
+          _scheduler.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+          // closed since the key was added, flush here in case close() ran before the key was pending
+          flush();
+        }
+      }
+      return FastlyApiClient.dependent(future);
+    }
+
+    /**
+     * Rejects keys added from now on. Keys already pending are sent by the next flush.
+     */
+    void close() {
+      _lock.lock();
+      try {
+        _closed = true;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    void flush() {
+      while (true) {
+        List<String> keys;
+        List<CompletableFuture<Response>> waiters;
+        _lock.lock();
+        try {
+          if (_pending.isEmpty()) {
+            _flushScheduled = false;
+            return;
+          }
+          int size = Math.min(_maxBatchSize, _pending.size());
+          keys = new ArrayList<>(size);
+          waiters = new ArrayList<>(size);
+          Iterator<Map.Entry<String, CompletableFuture<Response>>> it = _pending.entrySet().iterator();
+          while (keys.size() < size) {
+            Map.Entry<String, CompletableFuture<Response>> entry = it.next();
+            keys.add(entry.getKey());
+            waiters.add(entry.getValue());
+            it.remove();
+          }
+        } finally {
+          _lock.unlock();
+        }
+        dispatch(keys, waiters);
+      }
+    }
+
+    private void dispatch(List<String> keys, List<CompletableFuture<Response>> waiters) {
+      CompletableFuture<Response> response;
+      try {
+        response = send(keys, _soft);
+      } catch (RuntimeException e) {
+        waiters.forEach(w -> w.completeExceptionally(e));
+        return;
+      }
+
+      response.whenComplete((r, t) -> {
+        if (t != null) {
+          waiters.forEach(w -> w.completeExceptionally(t));
+        } else {
+          waiters.forEach(w -> w.complete(r));
+        }
+      });
+    }
+  }
+}
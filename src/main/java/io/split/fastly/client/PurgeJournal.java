@@ -0,0 +1,351 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of purges that were requested but not yet confirmed by Fastly.
+ * <p>
+ * Entries are appended to fixed size segment files before the purge is dispatched and flagged as acknowledged in
+ * place once Fastly answers successfully. A segment is deleted as soon as it is full and all its entries are
+ * acknowledged. Entries left unacknowledged by a previous process are available through {@link #getRecovered()}.
+ * <p>
+ * Appends only copy bytes into the mapped buffer; the OS flushes pages on its own, which is enough to survive a
+ * process crash. Call {@link #force()} to also survive a machine crash.
+ * <p>
+ * Record layout: <code>[int length][int crc][byte state][byte flags][short service id length][service id]
+ * [short url length][url][keys]</code>, where keys are joined by spaces. The length is written last so a torn append
+ * is never read back.
+ */
+public class PurgeJournal implements Closeable {
+
+  private static final Logger _log = LoggerFactory.getLogger(PurgeJournal.class);
+
+  public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  private static final int MAGIC = 0x46504a32;
+  private static final int SEGMENT_HEADER = 4;
+  private static final int RECORD_HEADER = 4 + 4 + 1 + 1;
+  private static final int STATE_OFFSET = 8;
+  private static final byte PENDING = 0;
+  private static final byte ACKNOWLEDGED = 1;
+  private static final byte SOFT = 1;
+  private static final String SEGMENT_PREFIX = "purge-journal-";
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final Splitter KEY_SPLITTER = Splitter.on(' ').omitEmptyStrings();
+
+  private final Path _directory;
+  private final int _segmentSize;
+  private final ReentrantLock _lock = new ReentrantLock();
+  private final List<Entry> _recovered;
+  private Segment _active;
+  private long _nextSequence;
+  private boolean _closed;
+
+  public PurgeJournal(Path directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_SIZE);
+  }
+
+  public PurgeJournal(Path directory, int segmentSize) throws IOException {
+    Preconditions.checkArgument(segmentSize >= 64 * 1024, "segmentSize must be at least 64KB");
+    _directory = Files.createDirectories(directory);
+    _segmentSize = segmentSize;
+    _recovered = Collections.unmodifiableList(recover());
+    _active = newSegment();
+  }
+
+  /**
+   * Entries that were pending when the journal was opened, in append order.
+   */
+  public List<Entry> getRecovered() {
+    return _recovered;
+  }
+
+  /**
+   * Records a purge that is about to be dispatched.
+   *
+   * @throws UncheckedIOException if a new segment could not be created.
+   */
+  public Entry append(String serviceId, String fastlyUrl, boolean soft, List<String> keys) {
+    Preconditions.checkNotNull(serviceId, "serviceId cannot be null!");
+    Preconditions.checkNotNull(fastlyUrl, "fastlyUrl cannot be null!");
+    Preconditions.checkNotNull(keys, "keys cannot be null!");
+    byte[] service = serviceId.getBytes(StandardCharsets.UTF_8);
+    byte[] url = fastlyUrl.getBytes(StandardCharsets.UTF_8);
+    Preconditions.checkArgument(service.length <= 0xFFFF, "serviceId is longer than 65535 bytes");
+    Preconditions.checkArgument(url.length <= 0xFFFF, "fastlyUrl is longer than 65535 bytes");
+    byte[] joined = FastlyApiClient.SURROGATE_KEY_JOINER.join(keys).getBytes(StandardCharsets.UTF_8);
+    int length = 2 + service.length + 2 + url.length + joined.length;
+    Preconditions.checkArgument(SEGMENT_HEADER + RECORD_HEADER + length <= _segmentSize,
+        "purge of %s bytes does not fit in a journal segment", length);
+
+    CRC32 crc = new CRC32();
+    crc.update(soft ? SOFT : 0);
+    crc.update(service.length >>> 8);
+    crc.update(service.length);
+    crc.update(service);
+    crc.update(url.length >>> 8);
+    crc.update(url.length);
+    crc.update(url);
+    crc.update(joined);
+
+    _lock.lock();
+    try {
+      Preconditions.checkState(!_closed, "PurgeJournal is closed");
+      MappedByteBuffer buffer = _active._buffer;
+      if (buffer.remaining() < RECORD_HEADER + length) {
+        roll();
+        buffer = _active._buffer;
+      }
+      int offset = buffer.position();
+      buffer.position(offset + 4);
+      buffer.putInt((int) crc.getValue());
+      buffer.put(PENDING);
+      buffer.put(soft ? SOFT : 0);
+      buffer.putShort((short) service.length);
+      buffer.put(service);
+      buffer.putShort((short) url.length);
+      buffer.put(url);
+      buffer.put(joined);
+      buffer.putInt(offset, length);
+      _active._pending.incrementAndGet();
+      return new Entry(_active, offset, serviceId, fastlyUrl, soft, keys);
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Flags the entry as confirmed by Fastly. Acknowledging an entry more than once has no effect.
+   */
+  public void acknowledge(Entry entry) {
+    if (!entry._acknowledged.compareAndSet(false, true)) {
+      return;
+    }
+    Segment segment = entry._segment;
+    segment._buffer.put(entry._offset + STATE_OFFSET, ACKNOWLEDGED);
+    if (segment._pending.decrementAndGet() == 0 && segment._sealed) {
+      segment.delete();
+    }
+  }
+
+  /**
+   * Flushes the active segment to the storage device.
+   */
+  public void force() {
+    _lock.lock();
+    try {
+      _active._buffer.force();
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Stops accepting new entries. Entries already appended can still be acknowledged.
+   */
+  @Override
+  public void close() throws IOException {
+    _lock.lock();
+    try {
+      _closed = true;
+      _active._buffer.force();
+      _active.seal();
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  private void roll() {
+    Segment full = _active;
+    try {
+      _active = newSegment();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to create purge journal segment", e);
+    }
+    full.seal();
+  }
+
+  private Segment newSegment() throws IOException {
+    Path path = _directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, _nextSequence++, SEGMENT_SUFFIX));
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, _segmentSize);
+      buffer.putInt(MAGIC);
+      return new Segment(path, buffer);
+    }
+  }
+
+  private List<Entry> recover() throws IOException {
+    TreeMap<Long, Path> segments = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(_directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())),
+              file);
+        } catch (NumberFormatException e) {
+          _log.warn("Ignoring unexpected file in purge journal directory: {}", file);
+        }
+      }
+    }
+
+    List<Entry> recovered = new ArrayList<>();
+    for (java.util.Map.Entry<Long, Path> file : segments.entrySet()) {
+      _nextSequence = file.getKey() + 1;
+      Segment segment;
+      try (FileChannel channel = FileChannel.open(file.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        segment = new Segment(file.getValue(), channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+      }
+      int before = recovered.size();
+      scan(segment, recovered);
+      segment._pending.set(recovered.size() - before);
+      segment.seal();
+    }
+    return recovered;
+  }
+
+  private static void scan(Segment segment, List<Entry> recovered) {
+    MappedByteBuffer buffer = segment._buffer;
+    if (buffer.limit() < SEGMENT_HEADER || buffer.getInt(0) != MAGIC) {
+      _log.warn("Ignoring purge journal segment with unexpected header: {}", segment._path);
+      return;
+    }
+
+    int offset = SEGMENT_HEADER;
+    while (offset + RECORD_HEADER <= buffer.limit()) {
+      int length = buffer.getInt(offset);
+      if (length <= 4 || offset + RECORD_HEADER + length > buffer.limit()) {
+        return;
+      }
+      int crc = buffer.getInt(offset + 4);
+      byte state = buffer.get(offset + STATE_OFFSET);
+      byte flags = buffer.get(offset + STATE_OFFSET + 1);
+      byte[] payload = new byte[length];
+      for (int i = 0; i < length; i++) {
+        payload[i] = buffer.get(offset + RECORD_HEADER + i);
+      }
+
+      CRC32 actual = new CRC32();
+      actual.update(flags);
+      actual.update(payload);
+      if ((int) actual.getValue() != crc) {
+        _log.warn("Purge journal segment {} is corrupted at offset {}, ignoring the rest of it", segment._path, offset);
+        return;
+      }
+
+      if (state == PENDING) {
+        int serviceLength = unsignedShort(payload, 0);
+        String service = new String(payload, 2, serviceLength, StandardCharsets.UTF_8);
+        int urlStart = 2 + serviceLength + 2;
+        int urlLength = unsignedShort(payload, urlStart - 2);
+        String url = new String(payload, urlStart, urlLength, StandardCharsets.UTF_8);
+        String keys = new String(payload, urlStart + urlLength, length - urlStart - urlLength, StandardCharsets.UTF_8);
+        recovered.add(new Entry(segment, offset, service, url, flags == SOFT, KEY_SPLITTER.splitToList(keys)));
+      }
+      offset += RECORD_HEADER + length;
+    }
+  }
+
+  private static int unsignedShort(byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+  }
+
+  /**
+   * A purge recorded in the journal.
+   */
+  public static final class Entry {
+
+    private final Segment _segment;
+    private final int _offset;
+    private final String _serviceId;
+    private final String _fastlyUrl;
+    private final boolean _soft;
+    private final List<String> _keys;
+    private final AtomicBoolean _acknowledged = new AtomicBoolean();
+
+    Entry(Segment segment, int offset, String serviceId, String fastlyUrl, boolean soft, List<String> keys) {
+      _segment = segment;
+      _offset = offset;
+      _serviceId = serviceId;
+      _fastlyUrl = fastlyUrl;
+      _soft = soft;
+      _keys = keys;
+    }
+
+    public String getServiceId() {
+      return _serviceId;
+    }
+
+    public String getFastlyUrl() {
+      return _fastlyUrl;
+    }
+
+    public boolean isSoft() {
+      return _soft;
+    }
+
+    public List<String> getKeys() {
+      return _keys;
+    }
+
+    public boolean isAcknowledged() {
+      return _acknowledged.get();
+    }
+  }
+
+  /**
+   * One mapped journal file. Once sealed no more entries are appended, and it is deleted when nothing is pending.
+   */
+  private static final class Segment {
+
+    private final Path _path;
+    private final MappedByteBuffer _buffer;
+    private final AtomicInteger _pending = new AtomicInteger();
+    private final AtomicBoolean _deleted = new AtomicBoolean();
+    private volatile boolean _sealed;
+
+    Segment(Path path, MappedByteBuffer buffer) {
+      _path = path;
+      _buffer = buffer;
+    }
+
+    void seal() {
+      _sealed = true;
+      if (_pending.get() == 0) {
+        delete();
+      }
+    }
+
+    void delete() {
+      if (_deleted.compareAndSet(false, true)) {
+        try {
+          Files.deleteIfExists(_path);
+        } catch (IOException e) {
+          _log.warn("Unable to delete acknowledged purge journal segment {}", _path, e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+import org.asynchttpclient.Response;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.split.fastly.client.PurgeCoalescer.MAX_BATCH_SIZE;
+
+/**
+ * Purges the surrogate keys of a Reactive Streams {@link Publisher} in batches, and publishes the outcome of every
+ * batch, in the order they complete.
+ * <p>
+ * Keys are requested at most one batch ahead and a batch is sent as soon as one of the {@code maxInFlight} slots is
+ * free: a trickle of keys is purged right away, and keys only pile up into batches of up to 256 while every slot is
+ * busy. A slot is released once its result was delivered downstream, so a slow subscriber stops new batches and, in
+ * turn, the requesting of keys. No thread is blocked, and at most one batch of keys and {@code maxInFlight} results
+ * are held.
+ * <p>
+ * Failed batches are published as results rather than terminating the stream. An error from the keys publisher is
+ * signalled downstream once the keys received before it were purged. Every subscriber subscribes to the keys
+ * publisher again.
+ */
+public class PurgeKeysPublisher implements Publisher<PurgeKeysPublisher.Batch> {
+
+  private final FastlyApiClient _client;
+  private final Publisher<String> _keys;
+  private final int _maxInFlight;
+  private final boolean _soft;
+  private final String _fastlyUrl;
+
+  public PurgeKeysPublisher(FastlyApiClient client, Publisher<String> keys, int maxInFlight) {
+    this(client, keys, maxInFlight, false, FastlyApiClient.FASTLY_URL);
+  }
+
+  /**
+   * @param soft whether to send soft purges (<code>Fastly-Soft-Purge</code>).
+   */
+  public PurgeKeysPublisher(FastlyApiClient client, Publisher<String> keys, int maxInFlight, boolean soft,
+      String fastlyUrl) {
+    Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+    _client = Preconditions.checkNotNull(client, "client cannot be null!");
+    _keys = Preconditions.checkNotNull(keys, "keys cannot be null!");
+    _fastlyUrl = Preconditions.checkNotNull(fastlyUrl, "fastlyUrl cannot be null!");
+    _maxInFlight = maxInFlight;
+    _soft = soft;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super Batch> subscriber) {
+    Preconditions.checkNotNull(subscriber, "subscriber cannot be null!");
+    PurgeSubscription subscription = new PurgeSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+    _keys.subscribe(subscription);
+  }
+
+  /**
+   * Outcome of one purge request.
+   */
+  public static class Batch {
+
+    private final List<String> _keys;
+    private final Response _response;
+    private final Throwable _error;
+
+    /* package private */ Batch(List<String> keys, Response response, Throwable error) {
+      _keys = Collections.unmodifiableList(keys);
+      _response = response;
+      _error = error;
+    }
+
+    public List<String> getKeys() {
+      return _keys;
+    }
+
+    /**
+     * The response received, null if the request failed.
+     */
+    public Response getResponse() {
+      return _response;
+    }
+
+    /**
+     * Why the request failed, null if a response was received.
+     */
+    public Throwable getError() {
+      return _error;
+    }
+
+    public boolean isSuccessful() {
+      return _response != null && _response.getStatusCode() / 100 == 2;
+    }
+
+    @Override
+    public String toString() {
+      return _keys.size() + " keys" + (_response != null ? "=" + _response.getStatusCode() : "")
+          + (_error != null ? "=" + _error : "");
+    }
+  }
+
+  /**
+   * Subscribes to the keys on behalf of one downstream subscriber. Signals from either side only queue work and
+   * call {@link #drain()}, where a single thread at a time sends batches, requests keys and signals downstream.
+   */
+  private final class PurgeSubscription implements Subscription, Subscriber<String> {
+
+    private final Subscriber<? super Batch> _downstream;
+    private final ConcurrentLinkedQueue<String> _received = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Batch> _results = new ConcurrentLinkedQueue<>();
+    private final AtomicLong _demand = new AtomicLong();
+    private final AtomicInteger _draining = new AtomicInteger();
+    private volatile Subscription _upstream;
+    private volatile boolean _upstreamDone;
+    private volatile Throwable _upstreamError;
+    private volatile Throwable _invalidRequest;
+    private volatile boolean _cancelled;
+
+    // Only accessed while draining.
+    private int _outstanding;
+    private long _requested;
+    private boolean _terminated;
+    private boolean _upstreamCancelled;
+
+    PurgeSubscription(Subscriber<? super Batch> downstream) {
+      _downstream = downstream;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      Preconditions.checkNotNull(subscription, "subscription cannot be null!");
+      if (_upstream != null) {
+        subscription.cancel();
+        return;
+      }
+      _upstream = subscription;
+      drain();
+    }
+
+    @Override
+    public void onNext(String key) {
+      _received.add(Preconditions.checkNotNull(key, "key cannot be null!"));
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      _upstreamError = Preconditions.checkNotNull(t, "error cannot be null!");
+      _upstreamDone = true;
+      drain();
+    }
+
+    @Override
+    public void onComplete() {
+      _upstreamDone = true;
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        _invalidRequest = new IllegalArgumentException("Requested " + n + " results, must be positive");
+      } else {
+        _demand.getAndUpdate(d -> LongMath.saturatedAdd(d, n));
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      _cancelled = true;
+      drain();
+    }
+
+    private void drain() {
+      if (_draining.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        if (_terminated || _cancelled || _invalidRequest != null) {
+          terminate();
+          continue;
+        }
+
+        Batch result;
+        while (!_cancelled && _demand.get() > 0 && (result = _results.poll()) != null) {
+          _outstanding--;
+          _demand.getAndUpdate(d -> d == Long.MAX_VALUE ? d : d - 1);
+          _downstream.onNext(result);
+        }
+
+        while (!_cancelled && _outstanding < _maxInFlight && !_received.isEmpty()) {
+          List<String> batch = nextBatch();
+          _outstanding++;
+          _requested -= batch.size();
+          send(batch);
+        }
+
+        Subscription upstream = _upstream;
+        if (!_cancelled && upstream != null && !_upstreamDone && _requested < MAX_BATCH_SIZE) {
+          long missing = MAX_BATCH_SIZE - _requested;
+          _requested = MAX_BATCH_SIZE;
+          upstream.request(missing);
+        }
+
+        if (_upstreamDone && _outstanding == 0 && _received.isEmpty() && !_cancelled) {
+          _terminated = true;
+          if (_upstreamError != null) {
+            _downstream.onError(_upstreamError);
+          } else {
+            _downstream.onComplete();
+          }
+        }
+      } while (_draining.decrementAndGet() != 0);
+    }
+
+    /**
+     * Stops for good, cancelling the keys publisher, which may subscribe after the downstream subscriber left.
+     */
+    private void terminate() {
+      if (!_terminated) {
+        _terminated = true;
+        if (!_cancelled) {
+          _downstream.onError(_invalidRequest);
+        }
+      }
+      Subscription upstream = _upstream;
+      if (upstream != null && !_upstreamDone && !_upstreamCancelled) {
+        _upstreamCancelled = true;
+        upstream.cancel();
+      }
+      _received.clear();
+      _results.clear();
+    }
+
+    private List<String> nextBatch() {
+      List<String> batch = new ArrayList<>();
+      String key;
+      while (batch.size() < MAX_BATCH_SIZE && (key = _received.poll()) != null) {
+        batch.add(key);
+      }
+      return batch;
+    }
+
+    private void send(List<String> batch) {
+      CompletableFuture<Response> response;
+      try {
+        response = _soft ? _client.softPurgeKeysAsync(batch, _fastlyUrl) : _client.purgeKeysAsync(batch, _fastlyUrl);
+      } catch (RuntimeException e) {
+        response = FastlyApiClient.failedFuture(e);
+      }
+      response.whenComplete((r, t) -> {
+        _results.add(new Batch(batch, r, FastlyApiClient.unwrap(t)));
+        drain();
+      });
+    }
+  }
+}
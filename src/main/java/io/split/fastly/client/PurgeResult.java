@@ -0,0 +1,29 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+
+/**
+ * Response to a single key, url or purge all request: <code>{"status": "ok", "id": "..."}</code>.
+ */
+public class PurgeResult extends FastlyResult {
+
+  public PurgeResult(Response response) {
+    super(response);
+  }
+
+  public String getStatus() {
+    return field("status");
+  }
+
+  /**
+   * The purge id, which Fastly support asks for when a purge needs investigating. Purge all responses have none.
+   */
+  public String getId() {
+    return field("id");
+  }
+
+  @Override
+  public String toString() {
+    return "PurgeResult{status=" + getStatusCode() + '}';
+  }
+}
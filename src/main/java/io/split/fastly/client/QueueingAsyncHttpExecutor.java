@@ -0,0 +1,144 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import org.asynchttpclient.Response;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Base class for executors that cap the requests in flight and queue the rest, see
+ * {@link AdmissionControlledAsyncHttpExecutor} and {@link PriorityAsyncHttpExecutor}.
+ * <p>
+ * Subclasses queue requests under {@link #_lock}, call {@link #drain()} and decide in {@link #dequeue()} which
+ * request gets the next free slot.
+ */
+/* package private */ abstract class QueueingAsyncHttpExecutor extends ForwardingAsyncHttpExecutor {
+
+  protected final ReentrantLock _lock = new ReentrantLock();
+  private final int _maxInFlight;
+  private final AtomicInteger _draining = new AtomicInteger();
+  private final LongAdder _rejected = new LongAdder();
+  private int _inFlight;
+
+  QueueingAsyncHttpExecutor(AsyncHttpExecutor delegate, int maxInFlight) {
+    super(delegate);
+    Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+    _maxInFlight = maxInFlight;
+  }
+
+  public int getInFlight() {
+    _lock.lock();
+    try {
+      return _inFlight;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Requests rejected or dropped because the queue was full.
+   */
+  public long getRejected() {
+    return _rejected.sum();
+  }
+
+  /**
+   * Removes the request that gets the free slot, or returns null when none is queued. Called under the lock.
+   */
+  protected abstract Pending dequeue();
+
+  /**
+   * Called under the lock when a request completes and frees its slot.
+   */
+  protected void onRelease() {
+  }
+
+  /**
+   * Whether every slot is taken. Called under the lock.
+   */
+  protected boolean isSaturated() {
+    return _inFlight >= _maxInFlight;
+  }
+
+  /**
+   * Counts a rejected request and describes why it was rejected.
+   */
+  protected RejectedExecutionException rejection(int maxQueued) {
+    _rejected.increment();
+    return new RejectedExecutionException(String.format("Too many Fastly requests: %d in flight and %d queued already",
+        _maxInFlight, maxQueued));
+  }
+
+  /**
+   * Dispatches queued requests while there are free slots. Only one thread drains at a time, and requests that
+   * complete synchronously loop here instead of recursing.
+   */
+  protected void drain() {
+    if (_draining.getAndIncrement() != 0) {
+      return;
+    }
+    do {
+      Pending next;
+      while ((next = poll()) != null) {
+        dispatch(next);
+      }
+    } while (_draining.decrementAndGet() != 0);
+  }
+
+  private Pending poll() {
+    _lock.lock();
+    try {
+      if (isSaturated()) {
+        return null;
+      }
+      Pending next = dequeue();
+      if (next != null) {
+        _inFlight++;
+      }
+      return next;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  private void dispatch(Pending pending) {
+    pending._call.proceed().whenComplete((r, t) -> {
+      release();
+      if (t != null) {
+        pending._future.completeExceptionally(t);
+      } else {
+        pending._future.complete(r);
+      }
+    });
+  }
+
+  private void release() {
+    _lock.lock();
+    try {
+      _inFlight--;
+      onRelease();
+    } finally {
+      _lock.unlock();
+    }
+    drain();
+  }
+
+  /**
+   * A queued request and the future handed to its caller.
+   */
+  /* package private */ static final class Pending {
+
+    final Call _call;
+    final long _enqueuedAt = System.nanoTime();
+    final CompletableFuture<Response> _future = new CompletableFuture<>();
+
+    Pending(Call call) {
+      _call = call;
+    }
+  }
+}
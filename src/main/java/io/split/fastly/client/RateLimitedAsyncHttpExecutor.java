@@ -0,0 +1,307 @@
+package io.split.fastly.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.split.fastly.client.FastlyApiClient.AsyncHttpExecutor;
+import org.asynchttpclient.Response;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paces requests so they stay under the rate limit Fastly reports on every response.
+ * <p>
+ * A token bucket is kept per API key and service. Each response carrying <code>Fastly-RateLimit-Remaining</code>
+ * and <code>Fastly-RateLimit-Reset</code> re-computes the refill rate so the remaining budget (minus a small
+ * reserve) is spread evenly until the reset time. Requests that find the bucket empty are delayed instead of being
+ * sent to bounce off a 429. Until Fastly reports a budget, requests are sent right away.
+ */
+public class RateLimitedAsyncHttpExecutor extends ForwardingAsyncHttpExecutor {
+
+  /* package private */ static final String REMAINING_HEADER = "Fastly-RateLimit-Remaining";
+  /* package private */ static final String RESET_HEADER = "Fastly-RateLimit-Reset";
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final long DEFAULT_BACKOFF_MILLIS = 1000;
+
+  private final ConcurrentMap<String, TokenBucket> _buckets = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService _scheduler;
+  private final int _reserve;
+  private final int _maxBurst;
+  private final Clock _clock;
+
+  public RateLimitedAsyncHttpExecutor(AsyncHttpExecutor delegate) {
+    this(delegate, 5, 10);
+  }
+
+  /**
+   * @param reserve requests left unused in every rate limit window, to absorb calls made by other clients.
+   * @param maxBurst requests that can be sent back to back when the bucket is full.
+   */
+  public RateLimitedAsyncHttpExecutor(AsyncHttpExecutor delegate, int reserve, int maxBurst) {
+    this(delegate, reserve, maxBurst, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  RateLimitedAsyncHttpExecutor(AsyncHttpExecutor delegate, int reserve, int maxBurst, Clock clock) {
+    super(delegate);
+    Preconditions.checkArgument(reserve >= 0, "reserve cannot be negative");
+    Preconditions.checkArgument(maxBurst > 0, "maxBurst must be positive");
+    _reserve = reserve;
+    _maxBurst = maxBurst;
+    _clock = clock;
+    _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("fastly-rate-limiter-%d")
+        .build());
+  }
+
+  /**
+   * Returns the last budget Fastly reported for the given API key and service, if any.
+   *
+   * @param serviceId the service id, or null for requests not bound to a service (e.g. url purges).
+   */
+  public Optional<Budget> getBudget(String apiKey, String serviceId) {
+    TokenBucket bucket = _buckets.get(bucketKey(apiKey, serviceId));
+    return bucket == null ? Optional.empty() : bucket.budget(_clock.millis());
+  }
+
+  @Override
+  protected CompletableFuture<Response> intercept(Call call) {
+    String apiKey = call.getHeaders().get("Fastly-Key");
+    TokenBucket bucket = _buckets.computeIfAbsent(bucketKey(apiKey, serviceId(call.getApiUrl())),
+        k -> new TokenBucket(_reserve, _maxBurst));
+
+    long delay = bucket.reserve(_clock.millis());
+    if (delay <= 0) {
+      return send(call, bucket);
+    }
+
+    CompletableFuture<Response> result = new CompletableFuture<>();
+    try {
+      _scheduler.schedule(() -> send(call, bucket).whenComplete((r, t) -> {
+        if (t != null) {
+          result.completeExceptionally(t);
+        } else {
+          result.complete(r);
+        }
+      }), delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      return FastlyApiClient.failedFuture(e);
+    }
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    _scheduler.shutdown();
+    super.close();
+  }
+
+  private CompletableFuture<Response> send(Call call, TokenBucket bucket) {
+    CompletableFuture<Response> response = call.proceed();
+    response.thenAccept(r -> bucket.update(r, _clock.millis()));
+    return response;
+  }
+
+  private static String bucketKey(String apiKey, String serviceId) {
+    return String.valueOf(apiKey) + '/' + String.valueOf(serviceId);
+  }
+
+  /* package private */
+  static String serviceId(String apiUrl) {
+    int start = apiUrl.indexOf("/service/");
+    if (start < 0) {
+      return null;
+    }
+    start += "/service/".length();
+    int end = apiUrl.indexOf('/', start);
+    return end < 0 ? apiUrl.substring(start) : apiUrl.substring(start, end);
+  }
+
+  /**
+   * Rate limit budget reported by Fastly, as seen by this executor.
+   */
+  public static final class Budget {
+
+    private final long _remaining;
+    private final long _resetAtMillis;
+    private final double _availableTokens;
+    private final double _requestsPerSecond;
+
+    Budget(long remaining, long resetAtMillis, double availableTokens, double requestsPerSecond) {
+      _remaining = remaining;
+      _resetAtMillis = resetAtMillis;
+      _availableTokens = availableTokens;
+      _requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * Requests left in the current window, as reported by the last response.
+     */
+    public long getRemaining() {
+      return _remaining;
+    }
+
+    /**
+     * Epoch millis at which Fastly resets the window.
+     */
+    public long getResetAtMillis() {
+      return _resetAtMillis;
+    }
+
+    /**
+     * Requests that can be sent right now without waiting. Negative when requests are already queued.
+     */
+    public double getAvailableTokens() {
+      return _availableTokens;
+    }
+
+    /**
+     * Rate at which requests are currently being let through.
+     */
+    public double getRequestsPerSecond() {
+      return _requestsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+      return "Budget{remaining=" + _remaining + ", resetAtMillis=" + _resetAtMillis
+          + ", availableTokens=" + _availableTokens + ", requestsPerSecond=" + _requestsPerSecond + '}';
+    }
+  }
+
+  /**
+   * Token bucket whose refill rate follows the budget reported by Fastly. Tokens go below zero when requests are
+   * reserved ahead of time, so every caller gets its own slot, spaced by the refill rate even past the reset. When
+   * the budget is exhausted, requests wait for the reset and are then spaced by the last rate seen, or by
+   * {@code maxBurst} per second when there was none.
+   * <p>
+   * Past the reset, requests keep being charged at that rate until a response reports the new window, and the
+   * tokens it grants are reduced by the requests still queued, so new requests never overtake the backlog.
+   */
+  @VisibleForTesting
+  static final class TokenBucket {
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final int _reserve;
+    private final int _maxBurst;
+    private long _remaining = -1;
+    private long _resetAtMillis;
+    private double _tokens;
+    private double _ratePerMilli;
+    private double _lastRatePerMilli;
+    private long _lastRefillMillis;
+
+    TokenBucket(int reserve, int maxBurst) {
+      _reserve = reserve;
+      _maxBurst = maxBurst;
+    }
+
+    /**
+     * Takes a token and returns how many millis the caller has to wait before sending.
+     */
+    long reserve(long now) {
+      _lock.lock();
+      try {
+        if (_remaining < 0) {
+          return 0;
+        }
+        refill(now);
+        _tokens -= 1;
+        if (_tokens >= 0) {
+          return 0;
+        }
+        if (now >= _resetAtMillis) {
+          return (long) Math.ceil(-_tokens / rateAfterReset());
+        }
+        if (_ratePerMilli > 0) {
+          return (long) Math.ceil(-_tokens / _ratePerMilli);
+        }
+        return _resetAtMillis - now + (long) Math.ceil((-_tokens - 1) / rateAfterReset());
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    void update(Response response, long now) {
+      Long remaining = parse(response.getHeader(REMAINING_HEADER));
+      Long reset = parse(response.getHeader(RESET_HEADER));
+      boolean throttled = response.getStatusCode() == TOO_MANY_REQUESTS;
+      if (!throttled && (remaining == null || reset == null)) {
+        return;
+      }
+
+      _lock.lock();
+      try {
+        boolean known = _remaining >= 0 && now < _resetAtMillis;
+        refill(now);
+        _resetAtMillis = reset != null ? TimeUnit.SECONDS.toMillis(reset) : now + DEFAULT_BACKOFF_MILLIS;
+        _remaining = throttled ? 0 : remaining;
+
+        long usable = _remaining - _reserve;
+        long window = _resetAtMillis - now;
+        if (usable <= 0 || window <= 0) {
+          _ratePerMilli = 0;
+          _tokens = Math.min(_tokens, 0);
+        } else {
+          _ratePerMilli = (double) usable / window;
+          _lastRatePerMilli = _ratePerMilli;
+          // a new window grants a burst, less the requests still queued from the previous one
+          _tokens = known ? Math.min(_tokens, usable) : Math.min(_maxBurst, usable) + Math.min(_tokens, 0);
+        }
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    Optional<Budget> budget(long now) {
+      _lock.lock();
+      try {
+        if (_remaining < 0) {
+          return Optional.empty();
+        }
+        refill(now);
+        return Optional.of(new Budget(_remaining, _resetAtMillis, _tokens, _ratePerMilli * 1000));
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    private void refill(long now) {
+      if (now <= _lastRefillMillis) {
+        return;
+      }
+      double tokens;
+      if (now < _resetAtMillis) {
+        tokens = (now - _lastRefillMillis) * _ratePerMilli;
+      } else if (_lastRefillMillis >= _resetAtMillis) {
+        tokens = (now - _lastRefillMillis) * rateAfterReset();
+      } else {
+        // an exhausted window lets the first queued request go at the reset
+        tokens = (_resetAtMillis - _lastRefillMillis) * _ratePerMilli + (_ratePerMilli > 0 ? 0 : 1)
+            + (now - _resetAtMillis) * rateAfterReset();
+      }
+      _tokens = Math.min(_maxBurst, _tokens + tokens);
+      _lastRefillMillis = now;
+    }
+
+    private double rateAfterReset() {
+      return _lastRatePerMilli > 0 ? _lastRatePerMilli : (double) _maxBurst / DEFAULT_BACKOFF_MILLIS;
+    }
+
+    private static Long parse(String value) {
+      return value == null ? null : Longs.tryParse(value.trim());
+    }
+  }
+}
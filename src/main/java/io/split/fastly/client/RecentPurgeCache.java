@@ -0,0 +1,176 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.asynchttpclient.Response;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded memory of the surrogate keys purged recently, keyed by service, key and purge kind. Used by
+ * {@link SuppressingPurgeClient} to send at most one purge per key and window.
+ * <p>
+ * A single cache can be shared by the clients of many services. Least recently used keys are evicted once
+ * {@code maximumSize} is reached; evicting a key only costs an extra purge the next time it is seen, purges that
+ * were already merged are still sent.
+ */
+public class RecentPurgeCache implements Closeable {
+
+  /**
+   * Keeps keys long enough to still know about purges in flight when the window is short.
+   */
+  private static final long MIN_RETENTION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private final long _windowNanos;
+  private final Cache<PurgeKey, KeyState> _keys;
+  private final ScheduledExecutorService _scheduler;
+  private final LongAdder _hits = new LongAdder();
+  private final LongAdder _misses = new LongAdder();
+  private final LongAdder _trailingPurges = new LongAdder();
+
+  public RecentPurgeCache(long window, TimeUnit unit, long maximumSize) {
+    Preconditions.checkArgument(window >= 0, "window cannot be negative");
+    Preconditions.checkArgument(maximumSize > 0, "maximumSize must be positive");
+    _windowNanos = unit.toNanos(window);
+    _keys = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterAccess(Math.max(_windowNanos, MIN_RETENTION_NANOS), TimeUnit.NANOSECONDS)
+        .build();
+    _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("fastly-recent-purges-%d")
+        .build());
+  }
+
+  /**
+   * Purges that did not cause a request of their own because they were merged into a pending one.
+   */
+  public long getHits() {
+    return _hits.sum();
+  }
+
+  /**
+   * Purges that were sent right away.
+   */
+  public long getMisses() {
+    return _misses.sum();
+  }
+
+  /**
+   * Requests sent at the end of a window on behalf of merged purges.
+   */
+  public long getTrailingPurges() {
+    return _trailingPurges.sum();
+  }
+
+  public long size() {
+    return _keys.size();
+  }
+
+  /**
+   * Stops tracking keys. Trailing purges already scheduled are still sent, purges requested afterwards fail with an
+   * {@link IllegalStateException}.
+   */
+  @Override
+  public void close() {
+    _scheduler.shutdown();
+    _keys.invalidateAll();
+  }
+
+  /* package private */ boolean isClosed() {
+    return _scheduler.isShutdown();
+  }
+
+  /* package private */ long windowNanos() {
+    return _windowNanos;
+  }
+
+  /* package private */ KeyState state(String serviceId, String key, boolean soft) {
+    try {
+      return _keys.get(new PurgeKey(serviceId, key, soft), () -> new KeyState(System.nanoTime() - _windowNanos));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * @return false if the cache was closed and the task won't run.
+   */
+  /* package private */ boolean schedule(Runnable task, long delayNanos) {
+    try {
+      _scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  /* package private */ void hit() {
+    _hits.increment();
+  }
+
+  /* package private */ void miss() {
+    _misses.increment();
+  }
+
+  /* package private */ void trailingPurge() {
+    _trailingPurges.increment();
+  }
+
+  /**
+   * Purge state of one key, guarded by its lock.
+   */
+  /* package private */ static final class KeyState {
+
+    final ReentrantLock _lock = new ReentrantLock();
+    long _dispatchedAt;
+    CompletableFuture<Response> _inFlight;
+    CompletableFuture<Response> _trailing;
+
+    KeyState(long dispatchedAt) {
+      _dispatchedAt = dispatchedAt;
+    }
+  }
+
+  private static final class PurgeKey {
+
+    private final String _serviceId;
+    private final String _key;
+    private final boolean _soft;
+
+    PurgeKey(String serviceId, String key, boolean soft) {
+      _serviceId = serviceId;
+      _key = key;
+      _soft = soft;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PurgeKey)) {
+        return false;
+      }
+      PurgeKey other = (PurgeKey) o;
+      return _soft == other._soft && _key.equals(other._key) && Objects.equals(_serviceId, other._serviceId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(_serviceId, _key, _soft);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package io.split.fastly.client;
+
+import io.split.fastly.client.FastlyApiClient.Method;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps latency histograms, status code counters, byte counters and in-flight gauges in memory, per
+ * {@link EndpointKind} and {@link Method}. Meant to be polled by whatever reporting the application uses.
+ */
+public class RecordingFastlyClientMetrics implements FastlyClientMetrics {
+
+  private final Map<EndpointKind, ConcurrentMap<Method, EndpointStats>> _stats = new EnumMap<>(EndpointKind.class);
+
+  public RecordingFastlyClientMetrics() {
+    for (EndpointKind kind : EndpointKind.values()) {
+      _stats.put(kind, new ConcurrentHashMap<>());
+    }
+  }
+
+  public EndpointStats getStats(EndpointKind kind, Method method) {
+    return _stats.get(kind).computeIfAbsent(method, m -> new EndpointStats());
+  }
+
+  @Override
+  public void onRequestStarted(EndpointKind kind, Method method, long requestBytes) {
+    EndpointStats stats = getStats(kind, method);
+    stats._inFlight.incrementAndGet();
+    stats._bytesSent.add(requestBytes);
+  }
+
+  @Override
+  public void onRequestCompleted(EndpointKind kind, Method method, int statusCode, long latencyNanos,
+      long responseBytes) {
+    EndpointStats stats = getStats(kind, method);
+    stats._inFlight.decrementAndGet();
+    stats._latency.record(latencyNanos);
+    if (responseBytes >= 0) {
+      stats._bytesReceived.add(responseBytes);
+    }
+    stats._statusCodes.computeIfAbsent(statusCode, s -> new LongAdder()).increment();
+  }
+
+  @Override
+  public void onRequestFailed(EndpointKind kind, Method method, Throwable error, long latencyNanos) {
+    EndpointStats stats = getStats(kind, method);
+    stats._inFlight.decrementAndGet();
+    stats._latency.record(latencyNanos);
+    stats._failures.increment();
+  }
+
+  /**
+   * Counters of one endpoint kind and method.
+   */
+  public static class EndpointStats {
+
+    private final LatencyHistogram _latency = new LatencyHistogram();
+    private final ConcurrentMap<Integer, LongAdder> _statusCodes = new ConcurrentHashMap<>();
+    private final LongAdder _failures = new LongAdder();
+    private final LongAdder _bytesSent = new LongAdder();
+    private final LongAdder _bytesReceived = new LongAdder();
+    private final AtomicLong _inFlight = new AtomicLong();
+
+    /**
+     * Latency in nanoseconds of every finished request, failed ones included.
+     */
+    public LatencyHistogram getLatency() {
+      return _latency;
+    }
+
+    public Map<Integer, Long> getStatusCodes() {
+      Map<Integer, Long> counts = new TreeMap<>();
+      _statusCodes.forEach((status, count) -> counts.put(status, count.sum()));
+      return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Requests that ended without a response.
+     */
+    public long getFailures() {
+      return _failures.sum();
+    }
+
+    public long getBytesSent() {
+      return _bytesSent.sum();
+    }
+
+    public long getBytesReceived() {
+      return _bytesReceived.sum();
+    }
+
+    public long getInFlight() {
+      return _inFlight.get();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+
+/**
+ * Where the time of one traced request went, in nanoseconds, see {@link AsyncHttpExecutorImpl} and
+ * {@link RequestTracer}. Phases that didn't happen, such as DNS and connect on a pooled connection, are -1. When the
+ * request was retried, phases are the ones of the last attempt.
+ */
+public final class RequestTimings {
+
+  /**
+   * Event time of a phase that didn't happen. {@link System#nanoTime()} can be negative, so -1 can't be used.
+   */
+  /* package private */ static final long UNSET = Long.MIN_VALUE;
+
+  private final long _start;
+  private final long _connectionReady;
+  private final boolean _connectionReused;
+  private final long _dnsStart;
+  private final long _dnsEnd;
+  private final long _connectStart;
+  private final long _connectEnd;
+  private final long _tlsStart;
+  private final long _tlsEnd;
+  private final long _requestSent;
+  private final long _statusReceived;
+  private final long _end;
+  private final int _retries;
+
+  /* package private */ RequestTimings(long start, long connectionReady, boolean connectionReused, long dnsStart,
+      long dnsEnd, long connectStart, long connectEnd, long tlsStart, long tlsEnd, long requestSent,
+      long statusReceived, long end, int retries) {
+    _start = start;
+    _connectionReady = connectionReady;
+    _connectionReused = connectionReused;
+    _dnsStart = dnsStart;
+    _dnsEnd = dnsEnd;
+    _connectStart = connectStart;
+    _connectEnd = connectEnd;
+    _tlsStart = tlsStart;
+    _tlsEnd = tlsEnd;
+    _requestSent = requestSent;
+    _statusReceived = statusReceived;
+    _end = end;
+    _retries = retries;
+  }
+
+  /**
+   * Timings of a response returned by a tracing {@link AsyncHttpExecutorImpl}, or null if the request was not
+   * sampled. Decorators pass responses through, so this works on what {@link FastlyApiClient} returns.
+   */
+  public static RequestTimings of(Response response) {
+    return response instanceof TracedResponse ? ((TracedResponse) response).getTimings() : null;
+  }
+
+  /**
+   * Value of {@link System#nanoTime()} when the request was handed to the http client.
+   */
+  public long getStartNanoTime() {
+    return _start;
+  }
+
+  /**
+   * Whether a keep-alive connection was taken from the pool, instead of opening a new one.
+   */
+  public boolean isConnectionReused() {
+    return _connectionReused;
+  }
+
+  /**
+   * From the start until a pooled connection was picked or a new one started opening, including the wait for a
+   * free connection when the pool is full.
+   */
+  public long getQueueNanos() {
+    return between(_start, _connectionReady);
+  }
+
+  public long getDnsNanos() {
+    return between(_dnsStart, _dnsEnd);
+  }
+
+  /**
+   * TCP connect, not including the DNS lookup nor the TLS handshake.
+   */
+  public long getConnectNanos() {
+    return between(_connectStart, _connectEnd);
+  }
+
+  public long getTlsNanos() {
+    return between(_tlsStart, _tlsEnd);
+  }
+
+  /**
+   * From the request being written until the status line of the response arrived, mostly Fastly's processing and
+   * the round trip.
+   */
+  public long getTimeToFirstByteNanos() {
+    return between(_requestSent, _statusReceived);
+  }
+
+  /**
+   * From the status line until the whole response was received.
+   */
+  public long getBodyNanos() {
+    return between(_statusReceived, _end);
+  }
+
+  public long getTotalNanos() {
+    return between(_start, _end);
+  }
+
+  public int getRetries() {
+    return _retries;
+  }
+
+  private static long between(long start, long end) {
+    return start == UNSET || end == UNSET ? -1 : end - start;
+  }
+
+  @Override
+  public String toString() {
+    return "RequestTimings{reused=" + _connectionReused + ", queue=" + getQueueNanos() + ", dns=" + getDnsNanos()
+        + ", connect=" + getConnectNanos() + ", tls=" + getTlsNanos() + ", ttfb=" + getTimeToFirstByteNanos()
+        + ", body=" + getBodyNanos() + ", total=" + getTotalNanos() + ", retries=" + _retries + '}';
+  }
+}
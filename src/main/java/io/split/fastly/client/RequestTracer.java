@@ -0,0 +1,28 @@
+package io.split.fastly.client;
+
+import io.split.fastly.client.FastlyApiClient.Method;
+import org.asynchttpclient.Response;
+
+/**
+ * Receives the {@link RequestTimings} of the requests sampled by a tracing {@link AsyncHttpExecutorImpl}, for
+ * instance to record an OpenTelemetry span starting at {@link RequestTimings#getStartNanoTime()} with one event per
+ * phase.
+ * <p>
+ * Called on the I/O thread that completed the request, so implementations must be thread safe and must not block.
+ * Exceptions thrown are logged and ignored.
+ */
+public interface RequestTracer {
+
+  RequestTracer NOOP = new RequestTracer() {
+    @Override
+    public void onRequestTraced(String apiUrl, Method method, RequestTimings timings, Response response,
+        Throwable error) {
+    }
+  };
+
+  /**
+   * @param response null when the request failed.
+   * @param error null when a response was received, whatever its status.
+   */
+  void onRequestTraced(String apiUrl, Method method, RequestTimings timings, Response response, Throwable error);
+}
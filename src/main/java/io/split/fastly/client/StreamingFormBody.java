@@ -0,0 +1,222 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import io.netty.buffer.ByteBuf;
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <code>application/x-www-form-urlencoded</code> request body whose last parameter is streamed from a file or an
+ * {@link InputStream} and encoded on the fly, so memory use does not depend on its size.
+ * <p>
+ * Bodies read from a {@link Path} map the file once, measure the encoded length from that mapping and send it on
+ * every attempt, so the declared length always matches the bytes sent and they can be retried. Bodies read from an
+ * {@link InputStream} are sent chunked and only once.
+ */
+public class StreamingFormBody implements BodyGenerator {
+
+  private static final int READ_BUFFER_SIZE = 8 * 1024;
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+  private static final boolean[] UNRESERVED = new boolean[256];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = 'A'; c <= 'Z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c : "-_.*".toCharArray()) {
+      UNRESERVED[c] = true;
+    }
+  }
+
+  private final byte[] _prefix;
+  private final ByteBuffer _file;
+  private final InputStream _stream;
+  private final long _contentLength;
+  private final AtomicBoolean _consumed = new AtomicBoolean();
+
+  private StreamingFormBody(byte[] prefix, ByteBuffer file, InputStream stream, long contentLength) {
+    _prefix = prefix;
+    _file = file;
+    _stream = stream;
+    _contentLength = contentLength;
+  }
+
+  /**
+   * @param parameters sent before the streamed one.
+   * @param name of the streamed parameter.
+   * @throws UncheckedIOException if the file can't be mapped.
+   */
+  public static StreamingFormBody of(Map<String, String> parameters, String name, Path file) {
+    Preconditions.checkNotNull(file, "file cannot be null!");
+    byte[] prefix = prefix(parameters, name);
+    MappedByteBuffer mapped;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      Preconditions.checkArgument(size <= Integer.MAX_VALUE, "file is larger than 2GB: %s", file);
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    long length = prefix.length;
+    for (int i = 0; i < mapped.limit(); i++) {
+      length += encodedLength(mapped.get(i));
+    }
+    return new StreamingFormBody(prefix, mapped, null, length);
+  }
+
+  /**
+   * @param parameters sent before the streamed one.
+   * @param name of the streamed parameter.
+   * @param stream read once and closed when the body is.
+   */
+  public static StreamingFormBody of(Map<String, String> parameters, String name, InputStream stream) {
+    Preconditions.checkNotNull(stream, "stream cannot be null!");
+    return new StreamingFormBody(prefix(parameters, name), null, stream, -1);
+  }
+
+  /**
+   * Length of the encoded body, or -1 when it is streamed from an {@link InputStream}.
+   */
+  public long getContentLength() {
+    return _contentLength;
+  }
+
+  @Override
+  public Body createBody() {
+    if (_file != null) {
+      return new EncodingBody(_prefix, _file.duplicate(), null, _contentLength);
+    }
+    Preconditions.checkState(_consumed.compareAndSet(false, true), "InputStream body was already sent");
+    return new EncodingBody(_prefix, null, _stream, _contentLength);
+  }
+
+  private static byte[] prefix(Map<String, String> parameters, String name) {
+    Preconditions.checkNotNull(parameters, "parameters cannot be null!");
+    Preconditions.checkNotNull(name, "name cannot be null!");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+      encode(parameter.getKey(), out);
+      out.write('=');
+      encode(parameter.getValue(), out);
+      out.write('&');
+    }
+    encode(name, out);
+    out.write('=');
+    return out.toByteArray();
+  }
+
+  private static void encode(String value, ByteArrayOutputStream out) {
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      int c = b & 0xff;
+      if (UNRESERVED[c]) {
+        out.write(c);
+      } else if (c == ' ') {
+        out.write('+');
+      } else {
+        out.write('%');
+        out.write(HEX[c >>> 4]);
+        out.write(HEX[c & 0xf]);
+      }
+    }
+  }
+
+  private static int encodedLength(byte b) {
+    int c = b & 0xff;
+    return UNRESERVED[c] || c == ' ' ? 1 : 3;
+  }
+
+  /**
+   * Writes the prefix, then encodes the mapped file or the stream straight into the buffers handed by the http
+   * client.
+   */
+  private static final class EncodingBody implements Body {
+
+    private final byte[] _prefix;
+    private final ByteBuffer _file;
+    private final InputStream _in;
+    private final long _contentLength;
+    private final byte[] _buffer;
+    private int _prefixPosition;
+    private int _position;
+    private int _limit;
+
+    EncodingBody(byte[] prefix, ByteBuffer file, InputStream in, long contentLength) {
+      _prefix = prefix;
+      _file = file;
+      _in = in;
+      _buffer = in == null ? null : new byte[READ_BUFFER_SIZE];
+      _contentLength = contentLength;
+    }
+
+    @Override
+    public long getContentLength() {
+      return _contentLength;
+    }
+
+    @Override
+    public BodyState transferTo(ByteBuf target) throws IOException {
+      if (_prefixPosition < _prefix.length) {
+        int length = Math.min(target.writableBytes(), _prefix.length - _prefixPosition);
+        target.writeBytes(_prefix, _prefixPosition, length);
+        _prefixPosition += length;
+      }
+      while (target.writableBytes() >= 3) {
+        int c = read();
+        if (c == -1) {
+          return BodyState.STOP;
+        }
+        if (UNRESERVED[c]) {
+          target.writeByte(c);
+        } else if (c == ' ') {
+          target.writeByte('+');
+        } else {
+          target.writeByte('%');
+          target.writeByte(HEX[c >>> 4]);
+          target.writeByte(HEX[c & 0xf]);
+        }
+      }
+      return BodyState.CONTINUE;
+    }
+
+    private int read() throws IOException {
+      if (_file != null) {
+        return _file.hasRemaining() ? _file.get() & 0xff : -1;
+      }
+      if (_position == _limit) {
+        _limit = _in.read(_buffer);
+        _position = 0;
+        if (_limit == -1) {
+          _limit = 0;
+          return -1;
+        }
+      }
+      return _buffer[_position++] & 0xff;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (_in != null) {
+        _in.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import io.split.fastly.client.RecentPurgeCache.KeyState;
+import org.asynchttpclient.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Sends surrogate key purges through a {@link FastlyApiClient}, sending at most one purge per key and window of the
+ * given {@link RecentPurgeCache}.
+ * <p>
+ * The first purge of a key goes out right away. Repeats that arrive within the window, or while that purge is still
+ * in flight, are merged into a single trailing purge sent once the window elapsed and the previous purge completed.
+ * Every write is therefore followed by a purge that started after it, while a hot key costs one request per window.
+ */
+public class SuppressingPurgeClient {
+
+  private final FastlyApiClient _client;
+  private final RecentPurgeCache _cache;
+  private final String _fastlyUrl;
+
+  public SuppressingPurgeClient(FastlyApiClient client, RecentPurgeCache cache) {
+    this(client, cache, FastlyApiClient.FASTLY_URL);
+  }
+
+  public SuppressingPurgeClient(FastlyApiClient client, RecentPurgeCache cache, String fastlyUrl) {
+    _client = Preconditions.checkNotNull(client, "client cannot be null!");
+    _cache = Preconditions.checkNotNull(cache, "cache cannot be null!");
+    _fastlyUrl = Preconditions.checkNotNull(fastlyUrl, "fastlyUrl cannot be null!");
+  }
+
+  public CompletableFuture<Response> purgeKey(String key) {
+    return purgeKeys(Collections.singletonList(key), false).thenApply(r -> r.get(0));
+  }
+
+  public CompletableFuture<Response> softPurgeKey(String key) {
+    return purgeKeys(Collections.singletonList(key), true).thenApply(r -> r.get(0));
+  }
+
+  /**
+   * @return the distinct responses of the requests that covered the keys.
+   */
+  public CompletableFuture<List<Response>> purgeKeys(List<String> keys) {
+    return purgeKeys(keys, false);
+  }
+
+  /**
+   * @return the distinct responses of the requests that covered the keys.
+   */
+  public CompletableFuture<List<Response>> softPurgeKeys(List<String> keys) {
+    return purgeKeys(keys, true);
+  }
+
+  private CompletableFuture<List<Response>> purgeKeys(List<String> keys, boolean soft) {
+    Preconditions.checkNotNull(keys, "keys cannot be null!");
+    Preconditions.checkArgument(keys.size() <= PurgeCoalescer.MAX_BATCH_SIZE,
+        "Fastly can't purge batches of more than 256 keys");
+
+    CompletableFuture<Response> batch = new CompletableFuture<>();
+    List<String> immediate = new ArrayList<>();
+    List<KeyState> immediateStates = new ArrayList<>();
+    Set<CompletableFuture<Response>> merged = new LinkedHashSet<>();
+    for (String key : new LinkedHashSet<>(keys)) {
+      KeyState state = _cache.state(_client.getServiceId(), key, soft);
+      CompletableFuture<Response> pending = acquire(state, key, soft, batch);
+      if (pending == null) {
+        immediate.add(key);
+        immediateStates.add(state);
+      } else {
+        merged.add(pending);
+      }
+    }
+
+    List<CompletableFuture<Response>> futures = new ArrayList<>(merged.size() + 1);
+    if (!immediate.isEmpty()) {
+      send(immediate, soft).whenComplete((r, t) -> {
+        immediateStates.forEach(s -> release(s, batch, r, t));
+        complete(batch, r, t);
+      });
+      futures.add(batch);
+    }
+    // merged purges are shared by every caller of the key, each caller gets its own handle
+    merged.forEach(m -> futures.add(FastlyApiClient.dependent(m)));
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(toList()));
+  }
+
+  /**
+   * Claims the key for the given request, or returns the trailing purge the key was merged into.
+   */
+  private CompletableFuture<Response> acquire(KeyState state, String key, boolean soft,
+      CompletableFuture<Response> request) {
+    state._lock.lock();
+    try {
+      if (_cache.isClosed()) {
+        return FastlyApiClient.failedFuture(new IllegalStateException("RecentPurgeCache is closed"));
+      }
+      if (state._trailing != null) {
+        _cache.hit();
+        return state._trailing;
+      }
+      long elapsed = System.nanoTime() - state._dispatchedAt;
+      if (!isInFlight(state) && elapsed >= _cache.windowNanos()) {
+        _cache.miss();
+        state._dispatchedAt = System.nanoTime();
+        state._inFlight = request;
+        return null;
+      }
+      if (!_cache.schedule(() -> fire(state, key, soft), Math.max(0, _cache.windowNanos() - elapsed))) {
+        return FastlyApiClient.failedFuture(new IllegalStateException("RecentPurgeCache is closed"));
+      }
+      _cache.hit();
+      state._trailing = new CompletableFuture<>();
+      return state._trailing;
+    } finally {
+      state._lock.unlock();
+    }
+  }
+
+  /**
+   * Sends the trailing purge of the key once its window elapsed and the previous purge completed. If the cache was
+   * closed in the meantime, the purge is sent without waiting for the rest of the window.
+   */
+  private void fire(KeyState state, String key, boolean soft) {
+    CompletableFuture<Response> trailing;
+    CompletableFuture<Response> previous = null;
+    state._lock.lock();
+    try {
+      trailing = state._trailing;
+      if (trailing == null) {
+        return;
+      }
+      if (isInFlight(state)) {
+        previous = state._inFlight;
+      } else {
+        long remaining = _cache.windowNanos() - (System.nanoTime() - state._dispatchedAt);
+        if (remaining > 0 && _cache.schedule(() -> fire(state, key, soft), remaining)) {
+          return;
+        }
+        state._trailing = null;
+        state._inFlight = trailing;
+        state._dispatchedAt = System.nanoTime();
+      }
+    } finally {
+      state._lock.unlock();
+    }
+
+    if (previous != null) {
+      // registered outside of the lock, as it runs right away if the previous purge completed meanwhile
+      previous.whenComplete((r, t) -> fire(state, key, soft));
+      return;
+    }
+
+    _cache.trailingPurge();
+    send(Collections.singletonList(key), soft).whenComplete((r, t) -> {
+      release(state, trailing, r, t);
+      complete(trailing, r, t);
+    });
+  }
+
+  /**
+   * Marks the request as completed. Failed purges don't open a window, so the next purge of the key goes right away.
+   */
+  private void release(KeyState state, CompletableFuture<Response> request, Response response, Throwable error) {
+    state._lock.lock();
+    try {
+      if (state._inFlight == request) {
+        state._inFlight = null;
+        if (error != null || response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+          state._dispatchedAt = System.nanoTime() - _cache.windowNanos();
+        }
+      }
+    } finally {
+      state._lock.unlock();
+    }
+  }
+
+  private CompletableFuture<Response> send(List<String> keys, boolean soft) {
+    try {
+      if (keys.size() == 1) {
+        return soft ? _client.softPurgeKeyAsync(keys.get(0), Collections.emptyMap(), _fastlyUrl)
+            : _client.purgeKeyAsync(keys.get(0), Collections.emptyMap(), _fastlyUrl);
+      }
+      return soft ? _client.softPurgeKeysAsync(keys, _fastlyUrl) : _client.purgeKeysAsync(keys, _fastlyUrl);
+    } catch (RuntimeException e) {
+      return FastlyApiClient.failedFuture(e);
+    }
+  }
+
+  private static boolean isInFlight(KeyState state) {
+    return state._inFlight != null && !state._inFlight.isDone();
+  }
+
+  private static void complete(CompletableFuture<Response> future, Response response, Throwable error) {
+    if (error != null) {
+      future.completeExceptionally(error);
+    } else {
+      future.complete(response);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file of surrogate keys and packs them into <code>Surrogate-Key</code> header values.
+ * <p>
+ * Keys are separated by any whitespace, usually one per line, and a line with spaces in it holds several keys, each
+ * one counted against the limit of keys per batch. A batch can end in the middle of such a line.
+ * <p>
+ * The file is memory-mapped a window at a time and keys are copied byte by byte into the header being built, so the
+ * only String created is the header itself, one per batch.
+ */
+/* package private */ final class SurrogateKeyFileReader implements Closeable {
+
+  /* package private */ static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final FileChannel _channel;
+  private final long _size;
+  private final int _maxKeys;
+  private final byte[] _header;
+  private final int _windowSize;
+  private MappedByteBuffer _window;
+  private long _windowStart;
+  private long _position;
+
+  SurrogateKeyFileReader(Path file, long offset, int maxKeys, int maxHeaderBytes, int windowSize) throws IOException {
+    Preconditions.checkArgument(maxKeys > 0, "maxKeys must be positive");
+    Preconditions.checkArgument(maxHeaderBytes > 0, "maxHeaderBytes must be positive");
+    Preconditions.checkArgument(windowSize >= maxHeaderBytes, "windowSize must hold a key of maxHeaderBytes");
+    _channel = FileChannel.open(file, StandardOpenOption.READ);
+    _size = _channel.size();
+    if (offset < 0 || offset > _size) {
+      _channel.close();
+      throw new IllegalArgumentException("offset " + offset + " is outside of " + file);
+    }
+    _maxKeys = maxKeys;
+    _header = new byte[maxHeaderBytes];
+    _windowSize = windowSize;
+    _position = offset;
+  }
+
+  /**
+   * Offset of the first byte not consumed yet.
+   */
+  long getPosition() {
+    return _position;
+  }
+
+  long getSize() {
+    return _size;
+  }
+
+  /**
+   * @return the next batch, or null at the end of the file.
+   * @throws IllegalArgumentException if a key doesn't fit in the header on its own.
+   */
+  Batch next() throws IOException {
+    int length = 0;
+    int count = 0;
+    _position = skipSeparators(_position);
+    while (count < _maxKeys && _position < _size) {
+      long keyEnd = _position;
+      while (keyEnd < _size && !isSeparator(byteAt(keyEnd))) {
+        if (keyEnd - _position == _header.length) {
+          throw new IllegalArgumentException("key at offset " + _position + " is longer than " + _header.length
+              + " bytes");
+        }
+        keyEnd++;
+      }
+      int needed = (int) (keyEnd - _position) + (count > 0 ? 1 : 0);
+      if (length + needed > _header.length) {
+        break;
+      }
+      if (count > 0) {
+        _header[length++] = ' ';
+      }
+      for (long i = _position; i < keyEnd; i++) {
+        _header[length++] = byteAt(i);
+      }
+      count++;
+      _position = skipSeparators(keyEnd);
+    }
+    return count == 0 ? null : new Batch(new String(_header, 0, length, StandardCharsets.UTF_8), count, _position);
+  }
+
+  /**
+   * Offset of the first byte from {@code offset} on that is not whitespace, or the size of the file.
+   */
+  private long skipSeparators(long offset) throws IOException {
+    while (offset < _size && isSeparator(byteAt(offset))) {
+      offset++;
+    }
+    return offset;
+  }
+
+  /**
+   * Reads a byte, mapping the window that starts at it first when it's outside of the current one.
+   */
+  private byte byteAt(long offset) throws IOException {
+    if (_window == null || offset < _windowStart || offset >= _windowStart + _window.limit()) {
+      _windowStart = offset;
+      _window = _channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(_windowSize, _size - offset));
+    }
+    return _window.get((int) (offset - _windowStart));
+  }
+
+  private static boolean isSeparator(byte b) {
+    return b == '\n' || b == '\r' || b == ' ' || b == '\t';
+  }
+
+  @Override
+  public void close() throws IOException {
+    _channel.close();
+  }
+
+  /* package private */ static final class Batch {
+
+    private final String _surrogateKeys;
+    private final int _count;
+    private final long _end;
+
+    Batch(String surrogateKeys, int count, long end) {
+      _surrogateKeys = surrogateKeys;
+      _count = count;
+      _end = end;
+    }
+
+    /**
+     * The keys joined by spaces.
+     */
+    String getSurrogateKeys() {
+      return _surrogateKeys;
+    }
+
+    int getCount() {
+      return _count;
+    }
+
+    /**
+     * Offset right after the last key of the batch, where a resumed job starts once this batch is done.
+     */
+    long getEnd() {
+      return _end;
+    }
+  }
+}
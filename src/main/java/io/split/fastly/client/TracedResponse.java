@@ -0,0 +1,136 @@
+package io.split.fastly.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.cookie.Cookie;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.uri.Uri;
+
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Response of a sampled request, carrying its {@link RequestTimings}. Everything else is forwarded.
+ */
+/* package private */ final class TracedResponse implements Response {
+
+  private final Response _delegate;
+  private final RequestTimings _timings;
+
+  TracedResponse(Response delegate, RequestTimings timings) {
+    _delegate = delegate;
+    _timings = timings;
+  }
+
+  RequestTimings getTimings() {
+    return _timings;
+  }
+
+  @Override
+  public int getStatusCode() {
+    return _delegate.getStatusCode();
+  }
+
+  @Override
+  public String getStatusText() {
+    return _delegate.getStatusText();
+  }
+
+  @Override
+  public byte[] getResponseBodyAsBytes() {
+    return _delegate.getResponseBodyAsBytes();
+  }
+
+  @Override
+  public ByteBuffer getResponseBodyAsByteBuffer() {
+    return _delegate.getResponseBodyAsByteBuffer();
+  }
+
+  @Override
+  public ByteBuf getResponseBodyAsByteBuf() {
+    return _delegate.getResponseBodyAsByteBuf();
+  }
+
+  @Override
+  public InputStream getResponseBodyAsStream() {
+    return _delegate.getResponseBodyAsStream();
+  }
+
+  @Override
+  public String getResponseBody(Charset charset) {
+    return _delegate.getResponseBody(charset);
+  }
+
+  @Override
+  public String getResponseBody() {
+    return _delegate.getResponseBody();
+  }
+
+  @Override
+  public Uri getUri() {
+    return _delegate.getUri();
+  }
+
+  @Override
+  public String getContentType() {
+    return _delegate.getContentType();
+  }
+
+  @Override
+  public String getHeader(CharSequence name) {
+    return _delegate.getHeader(name);
+  }
+
+  @Override
+  public List<String> getHeaders(CharSequence name) {
+    return _delegate.getHeaders(name);
+  }
+
+  @Override
+  public HttpHeaders getHeaders() {
+    return _delegate.getHeaders();
+  }
+
+  @Override
+  public boolean isRedirected() {
+    return _delegate.isRedirected();
+  }
+
+  @Override
+  public List<Cookie> getCookies() {
+    return _delegate.getCookies();
+  }
+
+  @Override
+  public boolean hasResponseStatus() {
+    return _delegate.hasResponseStatus();
+  }
+
+  @Override
+  public boolean hasResponseHeaders() {
+    return _delegate.hasResponseHeaders();
+  }
+
+  @Override
+  public boolean hasResponseBody() {
+    return _delegate.hasResponseBody();
+  }
+
+  @Override
+  public SocketAddress getRemoteAddress() {
+    return _delegate.getRemoteAddress();
+  }
+
+  @Override
+  public SocketAddress getLocalAddress() {
+    return _delegate.getLocalAddress();
+  }
+
+  @Override
+  public String toString() {
+    return _delegate.toString();
+  }
+}
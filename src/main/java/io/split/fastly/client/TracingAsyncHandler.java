@@ -0,0 +1,151 @@
+package io.split.fastly.client;
+
+import io.netty.channel.Channel;
+import io.split.fastly.client.FastlyApiClient.Method;
+import org.asynchttpclient.AsyncCompletionHandlerBase;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.netty.request.NettyRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSession;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static io.split.fastly.client.RequestTimings.UNSET;
+
+/**
+ * Handler of a sampled request that timestamps the lifecycle events reported by the http client, hands the
+ * resulting {@link RequestTimings} to the tracer and attaches them to the response.
+ * <p>
+ * Events of one request are delivered one after the other by the event loop, so plain fields are enough.
+ */
+/* package private */ final class TracingAsyncHandler extends AsyncCompletionHandlerBase {
+
+  private static final Logger _log = LoggerFactory.getLogger(TracingAsyncHandler.class);
+
+  private final RequestTracer _tracer;
+  private final String _apiUrl;
+  private final Method _method;
+  private final long _start = System.nanoTime();
+  private long _connectionReady = UNSET;
+  private boolean _connectionReused;
+  private long _dnsStart = UNSET;
+  private long _dnsEnd = UNSET;
+  private long _connectStart = UNSET;
+  private long _connectEnd = UNSET;
+  private long _tlsStart = UNSET;
+  private long _tlsEnd = UNSET;
+  private long _requestSent = UNSET;
+  private long _statusReceived = UNSET;
+  private int _retries;
+
+  TracingAsyncHandler(RequestTracer tracer, String apiUrl, Method method) {
+    _tracer = tracer;
+    _apiUrl = apiUrl;
+    _method = method;
+  }
+
+  @Override
+  public void onConnectionPooled(Channel connection) {
+    _connectionReused = true;
+    _connectionReady = System.nanoTime();
+  }
+
+  @Override
+  public void onHostnameResolutionAttempt(String name) {
+    _dnsStart = System.nanoTime();
+    connectionOpening(_dnsStart);
+  }
+
+  @Override
+  public void onHostnameResolutionSuccess(String name, List<InetSocketAddress> addresses) {
+    _dnsEnd = System.nanoTime();
+  }
+
+  @Override
+  public void onTcpConnectAttempt(InetSocketAddress remoteAddress) {
+    _connectStart = System.nanoTime();
+    connectionOpening(_connectStart);
+  }
+
+  @Override
+  public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+    _connectEnd = System.nanoTime();
+  }
+
+  @Override
+  public void onTlsHandshakeAttempt() {
+    _tlsStart = System.nanoTime();
+  }
+
+  @Override
+  public void onTlsHandshakeSuccess(SSLSession sslSession) {
+    _tlsEnd = System.nanoTime();
+  }
+
+  @Override
+  public void onRequestSend(NettyRequest request) {
+    _requestSent = System.nanoTime();
+  }
+
+  @Override
+  public State onStatusReceived(HttpResponseStatus status) throws Exception {
+    _statusReceived = System.nanoTime();
+    return super.onStatusReceived(status);
+  }
+
+  /**
+   * Forgets the phases of the failed attempt, so the timings describe the one that produced the outcome.
+   */
+  @Override
+  public void onRetry() {
+    _retries++;
+    _connectionReady = UNSET;
+    _connectionReused = false;
+    _dnsStart = UNSET;
+    _dnsEnd = UNSET;
+    _connectStart = UNSET;
+    _connectEnd = UNSET;
+    _tlsStart = UNSET;
+    _tlsEnd = UNSET;
+    _requestSent = UNSET;
+    _statusReceived = UNSET;
+  }
+
+  @Override
+  public Response onCompleted(Response response) throws Exception {
+    RequestTimings timings = timings();
+    trace(timings, response, null);
+    return new TracedResponse(super.onCompleted(response), timings);
+  }
+
+  @Override
+  public void onThrowable(Throwable t) {
+    trace(timings(), null, t);
+    super.onThrowable(t);
+  }
+
+  /**
+   * The first event of a new connection ends the wait for one.
+   */
+  private void connectionOpening(long now) {
+    if (_connectionReady == UNSET) {
+      _connectionReady = now;
+    }
+  }
+
+  private RequestTimings timings() {
+    return new RequestTimings(_start, _connectionReady, _connectionReused, _dnsStart, _dnsEnd, _connectStart,
+        _connectEnd, _tlsStart, _tlsEnd, _requestSent, _statusReceived, System.nanoTime(), _retries);
+  }
+
+  private void trace(RequestTimings timings, Response response, Throwable error) {
+    try {
+      _tracer.onRequestTraced(_apiUrl, _method, timings, response, error);
+    } catch (RuntimeException e) {
+      _log.debug("Request tracer failed", e);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Outcome of a {@link FastlyApiClient#purgeUrlsAsync} call, with one entry per url in the order they were given.
+ */
+public class UrlPurgeResult {
+
+  private final List<Entry> _urls;
+
+  /* package private */ UrlPurgeResult(List<Entry> urls) {
+    _urls = Collections.unmodifiableList(urls);
+  }
+
+  public List<Entry> getUrls() {
+    return _urls;
+  }
+
+  /**
+   * Urls that failed or that Fastly did not answer with a 2xx status.
+   */
+  public List<Entry> getFailed() {
+    return _urls.stream().filter(u -> !u.isSuccessful()).collect(toList());
+  }
+
+  public boolean isSuccessful() {
+    return _urls.stream().allMatch(Entry::isSuccessful);
+  }
+
+  @Override
+  public String toString() {
+    return "UrlPurgeResult{urls=" + _urls + '}';
+  }
+
+  /**
+   * Outcome for a single url.
+   */
+  public static class Entry {
+
+    private final String _url;
+    private final String _host;
+    private final Response _response;
+    private final Throwable _error;
+
+    /* package private */ Entry(String url, String host, Response response, Throwable error) {
+      _url = url;
+      _host = host;
+      _response = response;
+      _error = error;
+    }
+
+    public String getUrl() {
+      return _url;
+    }
+
+    /**
+     * The host the url was grouped under: the <code>Host</code> header when given, the host of the url otherwise.
+     */
+    public String getHost() {
+      return _host;
+    }
+
+    /**
+     * The response received, null if the request failed.
+     */
+    public Response getResponse() {
+      return _response;
+    }
+
+    /**
+     * Why the request failed, null if a response was received.
+     */
+    public Throwable getError() {
+      return _error;
+    }
+
+    public boolean isSuccessful() {
+      return _response != null && _response.getStatusCode() / 100 == 2;
+    }
+
+    @Override
+    public String toString() {
+      return _url + (_response != null ? "=" + _response.getStatusCode() : "") + (_error != null ? "=" + _error : "");
+    }
+  }
+}
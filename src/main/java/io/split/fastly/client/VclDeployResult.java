@@ -0,0 +1,113 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Outcome of a {@link VclDeployer#deploy} call, with one entry per VCL file in the order they were given.
+ */
+public class VclDeployResult {
+
+  public enum Status {
+    /** The content didn't change since the last successful deploy, nothing was sent. */
+    UNCHANGED,
+    /** An existing VCL was updated. */
+    UPDATED,
+    /** The VCL didn't exist in the version and was uploaded. */
+    CREATED,
+    /** Fastly answered with an error or the request failed, see the response or error. */
+    FAILED
+  }
+
+  private final int _version;
+  private final List<FileResult> _files;
+
+  /* package private */ VclDeployResult(int version, List<FileResult> files) {
+    _version = version;
+    _files = Collections.unmodifiableList(files);
+  }
+
+  public int getVersion() {
+    return _version;
+  }
+
+  public List<FileResult> getFiles() {
+    return _files;
+  }
+
+  public List<FileResult> getFailed() {
+    return _files.stream().filter(f -> f.getStatus() == Status.FAILED).collect(toList());
+  }
+
+  public boolean isSuccessful() {
+    return _files.stream().noneMatch(f -> f.getStatus() == Status.FAILED);
+  }
+
+  public long count(Status status) {
+    return _files.stream().filter(f -> f.getStatus() == status).count();
+  }
+
+  @Override
+  public String toString() {
+    return "VclDeployResult{version=" + _version + ", files=" + _files + '}';
+  }
+
+  /**
+   * Outcome for a single VCL file.
+   */
+  public static class FileResult {
+
+    private final String _name;
+    private final String _hash;
+    private final Status _status;
+    private final Response _response;
+    private final Throwable _error;
+
+    /* package private */ FileResult(String name, String hash, Status status, Response response, Throwable error) {
+      _name = name;
+      _hash = hash;
+      _status = status;
+      _response = response;
+      _error = error;
+    }
+
+    public String getName() {
+      return _name;
+    }
+
+    /**
+     * SHA-256 of the content, hex encoded.
+     */
+    public String getHash() {
+      return _hash;
+    }
+
+    public Status getStatus() {
+      return _status;
+    }
+
+    /**
+     * The last response received for the file, null if nothing was sent or the request failed.
+     */
+    public Response getResponse() {
+      return _response;
+    }
+
+    /**
+     * Why the request failed, null if a response was received.
+     */
+    public Throwable getError() {
+      return _error;
+    }
+
+    @Override
+    public String toString() {
+      return _name + "=" + _status + (_response != null ? " (" + _response.getStatusCode() + ")" : "")
+          + (_error != null ? " (" + _error + ")" : "");
+    }
+  }
+}
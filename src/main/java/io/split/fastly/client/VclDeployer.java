@@ -0,0 +1,112 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import io.split.fastly.client.VclDeployResult.FileResult;
+import io.split.fastly.client.VclDeployResult.Status;
+import org.asynchttpclient.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Deploys sets of VCL files, sending only the ones whose content changed since the last successful deploy.
+ * <p>
+ * Each file is hashed with SHA-256 and compared with the hash of what this deployer last deployed under the same
+ * name. Changed files are updated with a PUT, falling back to an upload when the VCL does not exist yet in the
+ * version, with at most {@code parallelism} requests in flight.
+ * <p>
+ * Fastly carries VCLs over when a version is cloned, so deploying to a version cloned from the last one only needs
+ * the changes. Seed the known hashes through the constructor to keep that state across restarts, and call
+ * {@link #reset()} before deploying to a version that was not cloned from the last one.
+ */
+public class VclDeployer {
+
+  public static final int DEFAULT_PARALLELISM = 8;
+
+  private final FastlyApiClient _client;
+  private final int _parallelism;
+  private final String _fastlyUrl;
+  private final ConcurrentMap<String, String> _hashes = new ConcurrentHashMap<>();
+
+  public VclDeployer(FastlyApiClient client) {
+    this(client, DEFAULT_PARALLELISM, FastlyApiClient.FASTLY_URL, ImmutableMap.of());
+  }
+
+  /**
+   * @param knownHashes hashes of the VCLs already deployed, by name, as returned by {@link #getKnownHashes()}.
+   */
+  public VclDeployer(FastlyApiClient client, int parallelism, String fastlyUrl, Map<String, String> knownHashes) {
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+    _client = Preconditions.checkNotNull(client, "client cannot be null!");
+    _fastlyUrl = Preconditions.checkNotNull(fastlyUrl, "fastlyUrl cannot be null!");
+    _parallelism = parallelism;
+    _hashes.putAll(Preconditions.checkNotNull(knownHashes, "knownHashes cannot be null!"));
+  }
+
+  /**
+   * Updates or uploads the VCL files whose content changed. Files that fail are reported in the result and will be
+   * sent again by the next deploy.
+   *
+   * @param vcls VCL content by name.
+   */
+  public CompletableFuture<VclDeployResult> deploy(int version, Map<String, String> vcls) {
+    Preconditions.checkNotNull(vcls, "vcls cannot be null!");
+    List<Map.Entry<String, String>> files = new ArrayList<>(vcls.entrySet());
+    return ParallelRunner.run(files, _parallelism, e -> deploy(version, e.getKey(), e.getValue()))
+        .thenApply(results -> new VclDeployResult(version, results));
+  }
+
+  /**
+   * Hashes of the VCLs deployed so far, by name.
+   */
+  public Map<String, String> getKnownHashes() {
+    return ImmutableMap.copyOf(_hashes);
+  }
+
+  /**
+   * Forgets every deployed hash so the next deploy sends all files.
+   */
+  public void reset() {
+    _hashes.clear();
+  }
+
+  /* package private */ static String hash(String content) {
+    return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+  }
+
+  private CompletableFuture<FileResult> deploy(int version, String name, String content) {
+    String hash = hash(content);
+    if (hash.equals(_hashes.get(name))) {
+      return CompletableFuture.completedFuture(new FileResult(name, hash, Status.UNCHANGED, null, null));
+    }
+
+    CompletableFuture<Response> update;
+    try {
+      update = _client.vclUpdateAsync(version, name, content, _fastlyUrl);
+    } catch (RuntimeException e) {
+      update = FastlyApiClient.failedFuture(e);
+    }
+    return update
+        .thenCompose(updated -> updated.getStatusCode() == 404
+            ? _client.vclCreateAsync(version, name, content, _fastlyUrl)
+                .thenApply(created -> result(name, hash, Status.CREATED, created))
+            : CompletableFuture.completedFuture(result(name, hash, Status.UPDATED, updated)))
+        .exceptionally(t -> new FileResult(name, hash, Status.FAILED, null, FastlyApiClient.unwrap(t)));
+  }
+
+  private FileResult result(String name, String hash, Status status, Response response) {
+    if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+      _hashes.remove(name);
+      return new FileResult(name, hash, Status.FAILED, response, null);
+    }
+    _hashes.put(name, hash);
+    return new FileResult(name, hash, status, response, null);
+  }
+}
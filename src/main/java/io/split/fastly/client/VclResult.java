@@ -0,0 +1,45 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+
+/**
+ * Response to a VCL upload or update, describing the VCL as stored by Fastly.
+ */
+public class VclResult extends FastlyResult {
+
+  public VclResult(Response response) {
+    super(response);
+  }
+
+  public String getName() {
+    return field("name");
+  }
+
+  /**
+   * The VCL source, which can be large: it is only decoded when this is called.
+   */
+  public String getContent() {
+    return field("content");
+  }
+
+  public boolean isMain() {
+    return Boolean.parseBoolean(field("main"));
+  }
+
+  /**
+   * The service version the VCL belongs to, 0 if the response doesn't say.
+   */
+  public int getVersion() {
+    String version = field("version");
+    return version != null ? Integer.parseInt(version) : 0;
+  }
+
+  public String getServiceId() {
+    return field("service_id");
+  }
+
+  @Override
+  public String toString() {
+    return "VclResult{status=" + getStatusCode() + '}';
+  }
+}
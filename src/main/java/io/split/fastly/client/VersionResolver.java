@@ -15,7 +15,6 @@ public class VersionResolver {
 
     private static final Logger _log = LoggerFactory.getLogger(VersionResolver.class);
 
-    private static VersionResolver _instance;
     private String _version;
 
     public String getVersion() {
@@ -26,16 +25,12 @@ public class VersionResolver {
         setVersion();
     }
 
+    /**
+     * Created once by the initialization of {@code Holder}, so callers never enter a synchronized block, which would
+     * pin virtual threads to their carrier.
+     */
     public static VersionResolver instance() {
-        if (_instance == null) {
-            synchronized (VersionResolver.class) {
-                if (_instance == null) {
-                    _instance = new VersionResolver();
-                }
-            }
-        }
-
-        return _instance;
+        return Holder.INSTANCE;
     }
 
     private void setVersion() {
@@ -48,4 +43,8 @@ public class VersionResolver {
         _version = (String) props.getOrDefault("client.version", "undefined");
     }
 
+    private static final class Holder {
+
+        private static final VersionResolver INSTANCE = new VersionResolver();
+    }
 }
@@ -0,0 +1,139 @@
+package io.split.fastly.client;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.split.fastly.client.AdmissionControlledAsyncHttpExecutor.OverflowPolicy;
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdmissionControlledAsyncHttpExecutorTest {
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor delegate;
+
+    @Mock
+    private Response response;
+
+    private final List<CompletableFuture<Response>> sent = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void init() {
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(i -> {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            sent.add(future);
+            return future;
+        });
+    }
+
+    @Test
+    public void testRequestsWaitForAFreeSlot() {
+        AdmissionControlledAsyncHttpExecutor executor =
+                new AdmissionControlledAsyncHttpExecutor(delegate, 2, 2, OverflowPolicy.FAIL_FAST);
+        FastlyApiClient client = client(executor);
+
+        CompletableFuture<Response> first = client.purgeKeyAsync("a");
+        for (String key : new String[]{"b", "c", "d"}) {
+            client.purgeKeyAsync(key);
+        }
+        assertThat(sent.size(), is(2));
+        assertThat(executor.getInFlight(), is(2));
+        assertThat(executor.getQueued(), is(2));
+
+        sent.get(0).complete(response);
+        assertThat(first.join(), is(response));
+        assertThat(sent.size(), is(3));
+        assertThat(executor.getQueued(), is(1));
+
+        for (int i = 1; i < 4; i++) {
+            sent.get(i).complete(response);
+        }
+        assertThat(sent.size(), is(4));
+        assertThat(executor.getInFlight(), is(0));
+        assertThat(executor.getQueueWait().getCount(), is(4L));
+    }
+
+    @Test
+    public void testFailFastRejectsWhenQueueIsFull() {
+        AdmissionControlledAsyncHttpExecutor executor =
+                new AdmissionControlledAsyncHttpExecutor(delegate, 1, 1, OverflowPolicy.FAIL_FAST);
+        FastlyApiClient client = client(executor);
+
+        client.purgeKeyAsync("a");
+        client.purgeKeyAsync("b");
+        CompletableFuture<Response> rejected = client.purgeKeyAsync("c");
+
+        assertRejected(rejected);
+        assertThat(executor.getRejected(), is(1L));
+        assertThat(sent.size(), is(1));
+    }
+
+    @Test
+    public void testOldestSoftPurgeIsDropped() {
+        AdmissionControlledAsyncHttpExecutor executor =
+                new AdmissionControlledAsyncHttpExecutor(delegate, 1, 2, OverflowPolicy.DROP_OLDEST_SOFT_PURGE);
+        FastlyApiClient client = client(executor);
+
+        client.purgeKeyAsync("inFlight");
+        CompletableFuture<Response> soft = client.softPurgeKeyAsync("soft");
+        CompletableFuture<Response> hard = client.purgeKeyAsync("hard");
+        CompletableFuture<Response> latest = client.purgeKeyAsync("latest");
+
+        assertRejected(soft);
+        assertThat(executor.getQueued(), is(2));
+        assertRejected(client.purgeKeyAsync("noSoftPurgeLeft"));
+
+        sent.get(0).complete(response);
+        sent.get(1).complete(response);
+        sent.get(2).complete(response);
+        assertThat(hard.join(), is(response));
+        assertThat(latest.join(), is(response));
+        assertThat(executor.getRejected(), is(2L));
+    }
+
+    @Test
+    public void testBlockWaitsForRoomInTheQueue() {
+        AdmissionControlledAsyncHttpExecutor executor =
+                new AdmissionControlledAsyncHttpExecutor(delegate, 1, 0, OverflowPolicy.BLOCK);
+        FastlyApiClient client = client(executor);
+
+        client.purgeKeyAsync("a");
+        CompletableFuture<CompletableFuture<Response>> blocked =
+                CompletableFuture.supplyAsync(() -> client.purgeKeyAsync("b"));
+        Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+        assertThat(blocked.isDone(), is(false));
+
+        sent.get(0).complete(response);
+        blocked.join();
+        assertThat(sent.size(), is(2));
+    }
+
+    private FastlyApiClient client(AdmissionControlledAsyncHttpExecutor executor) {
+        return new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+    }
+
+    private static void assertRejected(CompletableFuture<Response> future) {
+        try {
+            future.join();
+            throw new AssertionError("request was not rejected");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BlockingFastlyClientTest {
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor executor;
+
+    @Mock
+    private Response response;
+
+    private BlockingFastlyClient client;
+
+    @Before
+    public void init() {
+        client = new BlockingFastlyClient(new FastlyApiClient("someApiKey", "someServiceId", null, executor));
+    }
+
+    @Test
+    public void testReturnsTheResponse() throws Exception {
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+        when(response.getStatusCode()).thenReturn(200);
+
+        assertThat(client.purgeKey("key").getResponse(), is(sameInstance(response)));
+        assertThat(client.softPurgeKeys(Arrays.asList("key1", "key2")).getResponse(), is(sameInstance(response)));
+        assertThat(client.purgeUrls(Arrays.asList("https://a.com/1", "https://b.com/1")).isSuccessful(), is(true));
+    }
+
+    @Test
+    public void testFailuresAreRethrownUnwrapped() throws Exception {
+        ConnectException refused = new ConnectException("refused");
+        RejectedExecutionException rejected = new RejectedExecutionException("full");
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(FastlyApiClient.failedFuture(refused))
+                .thenReturn(FastlyApiClient.failedFuture(rejected))
+                .thenReturn(FastlyApiClient.failedFuture(new Exception("checked")));
+
+        try {
+            client.purgeAll();
+            fail();
+        } catch (IOException e) {
+            assertThat(e, is(sameInstance(refused)));
+        }
+        try {
+            client.purgeAll();
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertThat(e, is(sameInstance(rejected)));
+        }
+        try {
+            client.purgeAll();
+            fail();
+        } catch (IOException e) {
+            assertThat(e.getCause().getMessage(), is("checked"));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.split.fastly.client;
+
+import com.google.common.collect.ImmutableMap;
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkPurgeJobTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor executor;
+
+    @Mock
+    private Response ok;
+
+    @Mock
+    private Response error;
+
+    private final List<String> sentKeys = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Response>> pending = new CopyOnWriteArrayList<>();
+    private FastlyApiClient client;
+    private Path keys;
+    private Path checkpoint;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() throws IOException {
+        when(ok.getStatusCode()).thenReturn(200);
+        when(error.getStatusCode()).thenReturn(500);
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(i -> {
+            String header = ((Map<String, String>) i.getArguments()[2]).get("Surrogate-Key");
+            for (String key : header.split(" ")) {
+                sentKeys.add(key);
+            }
+            CompletableFuture<Response> response = new CompletableFuture<>();
+            pending.add(response);
+            return response;
+        });
+        client = new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("key-").append(i).append('\n');
+        }
+        keys = folder.newFile("keys.txt").toPath();
+        Files.write(keys, content.toString().getBytes(StandardCharsets.UTF_8));
+        checkpoint = folder.getRoot().toPath().resolve("keys.checkpoint");
+    }
+
+    @Test
+    public void testPurgesEveryKeyWithBoundedConcurrency() {
+        BulkPurgeJob job = new BulkPurgeJob(client, keys, checkpoint, 2, 8192, ImmutableMap.of(),
+                FastlyApiClient.FASTLY_URL);
+        CompletableFuture<BulkPurgeResult> result = job.start();
+
+        int answered = 0;
+        while (answered < pending.size()) {
+            assertThat(pending.size() - answered <= 2, is(true));
+            pending.get(answered++).complete(ok);
+        }
+
+        BulkPurgeResult purged = result.join();
+        assertThat(purged.isComplete(), is(true));
+        assertThat(purged.getKeysPurged(), is(1000L));
+        assertThat(purged.getBatches(), is(4L));
+        assertThat(sentKeys.size(), is(1000));
+        assertThat(new HashSet<>(sentKeys).size(), is(1000));
+        assertThat(purged.getCheckpoint(), is(keys.toFile().length()));
+    }
+
+    @Test
+    public void testFailedJobResumesFromCheckpoint() throws IOException {
+        BulkPurgeJob job = new BulkPurgeJob(client, keys, checkpoint, 2, 8192, ImmutableMap.of(),
+                FastlyApiClient.FASTLY_URL);
+        CompletableFuture<BulkPurgeResult> result = job.start();
+        assertThat(pending.size(), is(2));
+        pending.get(1).complete(ok);
+        pending.get(0).complete(ok);
+        pending.get(3).complete(ok);
+        pending.get(2).complete(error);
+
+        BulkPurgeResult failed = result.join();
+        assertThat(failed.isComplete(), is(false));
+        assertThat(failed.getFailedResponse(), is(error));
+        assertThat(failed.getKeysPurged(), is(744L));
+        assertThat(new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII).trim(),
+                is(failed.getCheckpoint() + " 512"));
+
+        sentKeys.clear();
+        pending.clear();
+        BulkPurgeJob resumed = new BulkPurgeJob(client, keys, checkpoint, 2, 8192, ImmutableMap.of(),
+                FastlyApiClient.FASTLY_URL);
+        result = resumed.start();
+        for (int i = 0; i < pending.size(); i++) {
+            pending.get(i).complete(ok);
+        }
+
+        BulkPurgeResult purged = result.join();
+        assertThat(purged.isComplete(), is(true));
+        assertThat(purged.getError(), is(nullValue()));
+        assertThat(sentKeys.get(0), is("key-512"));
+        assertThat(sentKeys.size(), is(488));
+        assertThat(purged.getKeysPurged(), is(1000L));
+    }
+}
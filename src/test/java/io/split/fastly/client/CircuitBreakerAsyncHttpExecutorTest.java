@@ -0,0 +1,175 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import io.split.fastly.client.CircuitBreakerAsyncHttpExecutor.State;
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CircuitBreakerAsyncHttpExecutorTest {
+
+    private static final String API = "https://api.fastly.com";
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor delegate;
+
+    @Mock
+    private Response ok;
+
+    @Mock
+    private Response error;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private CircuitBreakerAsyncHttpExecutor executor;
+    private FastlyApiClient client;
+
+    @Before
+    public void init() {
+        when(ok.getStatusCode()).thenReturn(200);
+        when(error.getStatusCode()).thenReturn(503);
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        executor = new CircuitBreakerAsyncHttpExecutor(delegate, new CircuitBreakerAsyncHttpExecutor.Settings()
+                .withWindow(10, 4)
+                .withFailureRateThreshold(0.5)
+                .withSlowCallRateThreshold(0.5, 1, TimeUnit.SECONDS)
+                .withOpenDuration(30, TimeUnit.SECONDS, 2), ticker);
+        client = new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+    }
+
+    @Test
+    public void testOpensOnErrorRateAndFailsFast() {
+        respondWith(ok, ok, error, error);
+        for (int i = 0; i < 4; i++) {
+            client.purgeKeyAsync("key" + i).join();
+        }
+        assertThat(executor.getState(API), is(Optional.of(State.OPEN)));
+
+        CircuitBreakerOpenException e = rejection(client.purgeAllAsync());
+        assertThat(e.getEndpoint(), is(API));
+        assertThat(e.getRetryAfterMillis(), is(30_000L));
+        Mockito.verify(delegate, Mockito.times(4)).executeAsync(Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+    }
+
+    @Test
+    public void testHalfOpenLetsLimitedProbesThrough() {
+        respondWith(error, error, error, error);
+        for (int i = 0; i < 4; i++) {
+            client.purgeKeyAsync("key" + i).join();
+        }
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        CompletableFuture<Response> firstProbe = new CompletableFuture<>();
+        CompletableFuture<Response> secondProbe = new CompletableFuture<>();
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(firstProbe)
+                .thenReturn(secondProbe);
+        client.purgeKeyAsync("probe1");
+        client.purgeKeyAsync("probe2");
+        assertThat(rejection(client.purgeKeyAsync("extra")).getRetryAfterMillis(), is(0L));
+        assertThat(executor.getState(API), is(Optional.of(State.HALF_OPEN)));
+
+        firstProbe.complete(ok);
+        secondProbe.complete(ok);
+        assertThat(executor.getState(API), is(Optional.of(State.CLOSED)));
+    }
+
+    @Test
+    public void testFailedProbeOpensAgain() {
+        respondWith(error, error, error, error, error);
+        for (int i = 0; i < 4; i++) {
+            client.purgeKeyAsync("key" + i).join();
+        }
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        client.purgeKeyAsync("probe").join();
+
+        assertThat(executor.getState(API), is(Optional.of(State.OPEN)));
+        assertThat(rejection(client.purgeKeyAsync("next")).getRetryAfterMillis(), is(30_000L));
+    }
+
+    @Test
+    public void testOpensOnSlowCalls() {
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(i -> {
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            return CompletableFuture.completedFuture(ok);
+        });
+        for (int i = 0; i < 4; i++) {
+            client.purgeKeyAsync("key" + i).join();
+        }
+
+        assertThat(executor.getState(API), is(Optional.of(State.OPEN)));
+    }
+
+    @Test
+    public void testUrlPurgesAreKeyedByTargetHost() {
+        respondWith(error, error, error, error, ok);
+        for (int i = 0; i < 4; i++) {
+            client.purgeUrlAsync("https://www.example.com/page" + i).join();
+        }
+
+        assertThat(executor.getState("www.example.com"), is(Optional.of(State.OPEN)));
+        rejection(client.purgeUrlAsync("http://10.0.0.1/page", ImmutableMap.of("Host", "www.example.com")));
+        assertThat(client.purgeKeyAsync("key").join(), is(ok));
+        assertThat(executor.getState(API), is(Optional.of(State.CLOSED)));
+        assertThat(executor.getState("https://other.url"), is(Optional.empty()));
+    }
+
+    @Test
+    public void testEndpoint() {
+        assertThat(endpoint("https://api.fastly.com/service/id/purge", FastlyApiClient.Method.POST), is(API));
+        assertThat(endpoint("http://localhost:8080/service/id/purge_all", FastlyApiClient.Method.POST),
+                is("http://localhost:8080"));
+        assertThat(endpoint("https://www.example.com:8443/page", FastlyApiClient.Method.PURGE),
+                is("www.example.com:8443"));
+    }
+
+    private static String endpoint(String url, FastlyApiClient.Method method) {
+        return CircuitBreakerAsyncHttpExecutor.endpoint(
+                new ForwardingAsyncHttpExecutor.Call(null, url, method, Collections.emptyMap(), Collections.emptyMap(),
+                        null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondWith(Response first, Response... rest) {
+        CompletableFuture<Response>[] others = (CompletableFuture<Response>[]) new CompletableFuture<?>[rest.length];
+        for (int i = 0; i < rest.length; i++) {
+            others[i] = CompletableFuture.completedFuture(rest[i]);
+        }
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(first), others);
+    }
+
+    private static CircuitBreakerOpenException rejection(CompletableFuture<Response> future) {
+        try {
+            future.join();
+            throw new AssertionError("request was not rejected");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(CircuitBreakerOpenException.class));
+            return (CircuitBreakerOpenException) e.getCause();
+        }
+    }
+}
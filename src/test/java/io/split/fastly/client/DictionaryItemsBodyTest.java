@@ -0,0 +1,40 @@
+package io.split.fastly.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.asynchttpclient.request.body.Body;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DictionaryItemsBodyTest {
+
+    @Test
+    public void testEncodesItemsAsJson() throws IOException {
+        DictionaryItemsBody generator = new DictionaryItemsBody(Arrays.asList(
+                DictionaryItemUpdate.upsert("ñandú", "line\nbreak \"quoted\" \\ \u0001"),
+                DictionaryItemUpdate.delete("old")));
+
+        String expected = "{\"items\":["
+                + "{\"op\":\"upsert\",\"item_key\":\"ñandú\",\"item_value\":\"line\\nbreak \\\"quoted\\\" \\\\ \\u0001\"},"
+                + "{\"op\":\"delete\",\"item_key\":\"old\"}]}";
+        for (int attempt = 0; attempt < 2; attempt++) {
+            ByteBuf sent = Unpooled.buffer();
+            try (Body body = generator.createBody()) {
+                assertThat(body.getContentLength(), is((long) expected.getBytes(StandardCharsets.UTF_8).length));
+                Body.BodyState state;
+                do {
+                    ByteBuf chunk = Unpooled.buffer(7, 7);
+                    state = body.transferTo(chunk);
+                    sent.writeBytes(chunk);
+                } while (state != Body.BodyState.STOP);
+            }
+            assertThat(sent.toString(StandardCharsets.UTF_8), is(expected));
+        }
+    }
+}
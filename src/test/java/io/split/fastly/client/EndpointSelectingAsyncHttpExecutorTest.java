@@ -0,0 +1,153 @@
+package io.split.fastly.client;
+
+import com.google.common.base.Ticker;
+import org.asynchttpclient.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EndpointSelectingAsyncHttpExecutorTest {
+
+    private static final String EU = "https://eu.proxy.example.com";
+    private static final String US = "https://us.proxy.example.com";
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor delegate;
+
+    @Mock
+    private Response ok;
+
+    @Mock
+    private Response unavailable;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Map<String, Long> latencies = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Response>> responses = new ConcurrentHashMap<>();
+    private final List<String> sentUrls = new CopyOnWriteArrayList<>();
+    private EndpointSelectingAsyncHttpExecutor executor;
+    private FastlyApiClient client;
+
+    @Before
+    public void init() {
+        when(ok.getStatusCode()).thenReturn(200);
+        when(unavailable.getStatusCode()).thenReturn(503);
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(i -> {
+            String url = (String) i.getArguments()[0];
+            sentUrls.add(url);
+            String endpoint = url.startsWith(EU) ? EU : url.startsWith(US) ? US : url;
+            nanos.addAndGet(latencies.getOrDefault(endpoint, 0L));
+            return responses.getOrDefault(endpoint, CompletableFuture.completedFuture(ok));
+        });
+        executor = new EndpointSelectingAsyncHttpExecutor(delegate, Arrays.asList(EU, US),
+                TimeUnit.MILLISECONDS.toNanos(50), new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos.get();
+                    }
+                });
+        client = new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.close();
+    }
+
+    @Test
+    public void testRequestsGoToTheFastestEndpoint() {
+        latencies.put(EU, TimeUnit.MILLISECONDS.toNanos(80));
+        latencies.put(US, TimeUnit.MILLISECONDS.toNanos(20));
+
+        for (int i = 0; i < 4; i++) {
+            client.vclUpdateAsync(1, "main", "vcl", FastlyApiClient.FASTLY_URL).join();
+        }
+
+        assertThat(sentUrls, is(Arrays.asList(
+                EU + "/service/someServiceId/version/1/vcl/main",
+                US + "/service/someServiceId/version/1/vcl/main",
+                US + "/service/someServiceId/version/1/vcl/main",
+                US + "/service/someServiceId/version/1/vcl/main")));
+        assertThat(executor.getLatency(US), is((double) TimeUnit.MILLISECONDS.toNanos(20)));
+        assertThat(executor.getHedged(), is(0L));
+    }
+
+    @Test
+    public void testFailedPurgeFailsOver() {
+        responses.put(EU, CompletableFuture.completedFuture(unavailable));
+
+        assertThat(client.purgeKeyAsync("key").join(), is(ok));
+        assertThat(sentUrls, is(Arrays.asList(EU + "/service/someServiceId/purge/key",
+                US + "/service/someServiceId/purge/key")));
+        assertThat(executor.getErrorRate(EU), is(1.0));
+        assertThat(executor.getFailedOver(), is(1L));
+
+        sentUrls.clear();
+        client.purgeAllAsync().join();
+        assertThat(sentUrls, is(Arrays.asList(US + "/service/someServiceId/purge_all")));
+    }
+
+    @Test
+    public void testLastFailureIsReturnedWhenEveryEndpointFails() {
+        responses.put(EU, FastlyApiClient.failedFuture(new ConnectException("refused")));
+        responses.put(US, CompletableFuture.completedFuture(unavailable));
+
+        assertThat(client.purgeKeyAsync("key").join(), is(unavailable));
+    }
+
+    @Test
+    public void testSlowPurgeIsHedged() throws Exception {
+        responses.put(EU, new CompletableFuture<>());
+
+        Response response = client.purgeKeysAsync(Arrays.asList("a", "b")).get(5, TimeUnit.SECONDS);
+
+        assertThat(response, is(ok));
+        assertThat(sentUrls.size(), is(2));
+        assertThat(executor.getHedged(), is(1L));
+    }
+
+    @Test
+    public void testUrlPurgesAndOtherHostsAreNotRedirected() {
+        client.purgeUrlAsync("https://www.example.com/page").join();
+        client.purgeAllAsync("http://localhost:8080").join();
+
+        assertThat(sentUrls, is(Arrays.asList("https://www.example.com/page",
+                "http://localhost:8080/service/someServiceId/purge_all")));
+    }
+
+    @Test
+    public void testStaleEndpointIsProbedAgainByPurgesOnly() {
+        latencies.put(EU, TimeUnit.MILLISECONDS.toNanos(500));
+        client.vclUpdateAsync(1, "main", "vcl", FastlyApiClient.FASTLY_URL).join();
+        client.vclUpdateAsync(1, "main", "vcl", FastlyApiClient.FASTLY_URL).join();
+        client.vclUpdateAsync(1, "main", "vcl", FastlyApiClient.FASTLY_URL).join();
+        assertThat(sentUrls.get(2).startsWith(US), is(true));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        latencies.put(EU, 0L);
+        client.vclUpdateAsync(1, "main", "vcl", FastlyApiClient.FASTLY_URL).join();
+        assertThat(sentUrls.get(3).startsWith(US), is(true));
+
+        client.purgeKeyAsync("key").join();
+        assertThat(sentUrls.get(4).startsWith(EU), is(true));
+    }
+}
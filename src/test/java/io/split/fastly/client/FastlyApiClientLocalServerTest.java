@@ -0,0 +1,266 @@
+package io.split.fastly.client;
+
+import com.google.common.collect.ImmutableMap;
+import org.asynchttpclient.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Runs the client, including {@link AsyncHttpExecutorImpl}, against {@link LocalFastlyServer}.
+ */
+public class FastlyApiClientLocalServerTest {
+
+    private static final String API_KEY = "someApiKey";
+    private static final String SERVICE_ID = "someServiceId";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalFastlyServer server;
+    private FastlyApiClient client;
+
+    @Before
+    public void init() throws InterruptedException {
+        server = new LocalFastlyServer();
+        client = new FastlyApiClient(API_KEY, SERVICE_ID);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.closeConnectionPool();
+        server.close();
+    }
+
+    @Test
+    public void testPurgeKeys() throws Exception {
+        Response response = client.softPurgeKeys(Arrays.asList("a", "b"), server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+
+        assertThat(response.getStatusCode(), is(200));
+        assertThat(response.getResponseBody(), containsString("\"a\":\"purge-"));
+
+        LocalFastlyServer.RecordedRequest request = server.getRequests().get(0);
+        assertThat(request.getMethod(), is("POST"));
+        assertThat(request.getPath(), is("/service/" + SERVICE_ID + "/purge"));
+        assertThat(request.getHeaders().get("surrogate-key"), is("a b"));
+        assertThat(request.getHeaders().get("fastly-soft-purge"), is("1"));
+        assertThat(request.getHeaders().get("fastly-key"), is(API_KEY));
+    }
+
+    @Test
+    public void testPurgeKeyAndPurgeAll() throws Exception {
+        assertThat(client.purgeKey("a", ImmutableMap.of(), server.getBaseUrl()).get(5, TimeUnit.SECONDS).getStatusCode(),
+                is(200));
+        assertThat(client.purgeAllAsync(server.getBaseUrl()).get(5, TimeUnit.SECONDS).getStatusCode(), is(200));
+
+        List<LocalFastlyServer.RecordedRequest> requests = server.getRequests();
+        assertThat(requests.get(0).getPath(), is("/service/" + SERVICE_ID + "/purge/a"));
+        assertThat(requests.get(1).getPath(), is("/service/" + SERVICE_ID + "/purge_all"));
+    }
+
+    @Test
+    public void testPurgeUrl() throws Exception {
+        Response response = client.purgeUrl(server.getBaseUrl() + "/some/page.html").get(5, TimeUnit.SECONDS);
+
+        assertThat(response.getStatusCode(), is(200));
+        assertThat(server.getRequests().get(0).getMethod(), is("PURGE"));
+        assertThat(server.getRequests().get(0).getPath(), is("/some/page.html"));
+    }
+
+    @Test
+    public void testVclUploadSendsFormParameters() throws Exception {
+        Response response = client.vclUpload(3, "sub vcl_recv { }", "main", "main", server.getBaseUrl())
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(response.getStatusCode(), is(200));
+        LocalFastlyServer.RecordedRequest request = server.getRequests().get(0);
+        assertThat(request.getPath(), is("/service/" + SERVICE_ID + "/version/3/vcl"));
+        assertThat(request.getFormParameters().get("content"), is("sub vcl_recv { }"));
+        assertThat(request.getFormParameters().get("name"), is("main"));
+    }
+
+    @Test
+    public void testVclUpdateIncludesVersionInPath() throws Exception {
+        client.vclUpload(3, "sub vcl_recv { }", "main", "main", server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+        List<Response> responses = client.vclUpdateAsync(3, ImmutableMap.of("main", "sub vcl_recv { return(pass); }"),
+                server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+
+        assertThat(responses.get(0).getStatusCode(), is(200));
+        assertThat(server.getRequests().get(1).getMethod(), is("PUT"));
+        assertThat(server.getRequests().get(1).getPath(), is("/service/" + SERVICE_ID + "/version/3/vcl/main"));
+        assertThat(server.getVcl(SERVICE_ID, 3, "main"), is("sub vcl_recv { return(pass); }"));
+    }
+
+    @Test
+    public void testDictionaryItemsAreUpdatedInBatches() throws Exception {
+        List<DictionaryItemUpdate> updates = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            updates.add(DictionaryItemUpdate.upsert("flag-" + i, "on"));
+        }
+        updates.add(DictionaryItemUpdate.delete("retired \"flag\""));
+
+        List<Response> responses = client.updateDictionaryItemsAsync("dict", updates, 2, server.getBaseUrl())
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(responses.size(), is(3));
+        assertThat(responses.get(2).getStatusCode(), is(200));
+        List<LocalFastlyServer.RecordedRequest> requests = server.getRequests();
+        assertThat(requests.size(), is(3));
+        assertThat(requests.get(0).getMethod(), is("PATCH"));
+        assertThat(requests.get(0).getPath(), is("/service/" + SERVICE_ID + "/dictionary/dict/items"));
+        String last = requests.stream().filter(r -> r.getBody().contains("retired")).findFirst().get().getBody();
+        assertThat(last, containsString("{\"op\":\"upsert\",\"item_key\":\"flag-2499\",\"item_value\":\"on\"},"
+                + "{\"op\":\"delete\",\"item_key\":\"retired \\\"flag\\\"\"}]}"));
+    }
+
+    @Test
+    public void testStreamedVclUploadFromFile() throws Exception {
+        StringBuilder vcl = new StringBuilder();
+        while (vcl.length() < 3 * 1024 * 1024) {
+            vcl.append("sub vcl_recv { set req.http.X-Q = \"a=1&b=2+3 %20 \u00f1\"; }\n");
+        }
+        Path file = folder.newFile("main.vcl").toPath();
+        Files.write(file, vcl.toString().getBytes(StandardCharsets.UTF_8));
+
+        Response response = client.vclUploadAsync(3, file, "main", "main", server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+
+        assertThat(response.getStatusCode(), is(200));
+        assertThat(server.getVcl(SERVICE_ID, 3, "main"), is(vcl.toString()));
+        LocalFastlyServer.RecordedRequest request = server.getRequests().get(0);
+        assertThat(request.getHeaders().get("content-length"), is(String.valueOf(request.getBody().length())));
+        assertThat(request.getHeaders().get("content-type"), is("application/x-www-form-urlencoded"));
+    }
+
+    @Test
+    public void testStreamedVclUpdateFromInputStream() throws Exception {
+        client.vclUpload(3, "sub vcl_recv { }", "main", "main", server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+        String vcl = "sub vcl_recv { return(pass); }";
+
+        Response response = client.vclUpdateAsync(3, "main",
+                new ByteArrayInputStream(vcl.getBytes(StandardCharsets.UTF_8)), server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+
+        assertThat(response.getStatusCode(), is(200));
+        assertThat(server.getVcl(SERVICE_ID, 3, "main"), is(vcl));
+    }
+
+    @Test
+    public void testInjectedFailures() throws Exception {
+        server.withTooManyRequestsRate(1);
+        assertThat(client.purgeKey("a", ImmutableMap.of(), server.getBaseUrl()).get(5, TimeUnit.SECONDS).getStatusCode(),
+                is(429));
+
+        server.withTooManyRequestsRate(0).withErrorRate(1);
+        assertThat(client.purgeKey("a", ImmutableMap.of(), server.getBaseUrl()).get(5, TimeUnit.SECONDS).getStatusCode(),
+                is(500));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testConnectionResetFailsAfterRetries() throws Exception {
+        server.withConnectionResetRate(1);
+        client.purgeAll(server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testConcurrentPurgesWithLatency() {
+        server.withLatency(1, 10, TimeUnit.MILLISECONDS);
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            futures.add(client.purgeKeyAsync("key" + i, ImmutableMap.of(), server.getBaseUrl()));
+        }
+
+        for (CompletableFuture<Response> future : futures) {
+            assertThat(future.join().getStatusCode(), is(200));
+        }
+        assertThat(server.getRequests().size(), is(500));
+    }
+
+    @Test
+    public void testSampledRequestsAreTraced() throws Exception {
+        List<RequestTimings> traced = new CopyOnWriteArrayList<>();
+        FastlyApiClient tracing = new FastlyApiClient(API_KEY, SERVICE_ID, null,
+                new AsyncHttpExecutorImpl(null, (url, method, timings, response, error) -> traced.add(timings), 1));
+        try {
+            Response first = tracing.purgeKeyAsync("a", ImmutableMap.of(), server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+            Response second = tracing.purgeKeyAsync("b", ImmutableMap.of(), server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+
+            assertThat(second.getStatusCode(), is(200));
+            assertThat(traced.size(), is(2));
+            RequestTimings opened = RequestTimings.of(first);
+            assertThat(opened, is(traced.get(0)));
+            assertThat(opened.isConnectionReused(), is(false));
+            assertThat(opened.getConnectNanos() >= 0, is(true));
+            assertThat(opened.getTlsNanos(), is(-1L));
+            assertThat(opened.getTimeToFirstByteNanos() > 0, is(true));
+            assertThat(opened.getTotalNanos() >= opened.getTimeToFirstByteNanos(), is(true));
+            RequestTimings reused = RequestTimings.of(second);
+            assertThat(reused.isConnectionReused(), is(true));
+            assertThat(reused.getConnectNanos(), is(-1L));
+            assertThat(reused.getQueueNanos() >= 0, is(true));
+        } finally {
+            tracing.closeConnectionPool();
+        }
+
+        Response untraced = client.purgeKeyAsync("c", ImmutableMap.of(), server.getBaseUrl()).get(5, TimeUnit.SECONDS);
+        assertThat(RequestTimings.of(untraced), is((RequestTimings) null));
+    }
+
+    @Test
+    public void testWarmUpOpensConnectionsAndKeepsThemAlive() throws Exception {
+        server.withLatency(50, 50, TimeUnit.MILLISECONDS);
+        try (ConnectionWarmer warmer = client.warmUp(3, Arrays.asList(server.getBaseUrl()), 200, TimeUnit.MILLISECONDS)) {
+            warmer.ready().get(5, TimeUnit.SECONDS);
+            assertThat(warmer.isReady(), is(true));
+            assertThat(server.getConnectionCount(), is(3));
+            assertThat(server.getRequests().get(0).getPath(), is(ConnectionWarmer.PING_PATH));
+            assertThat(server.getRequests().get(0).getHeaders().containsKey("fastly-key"), is(false));
+
+            List<CompletableFuture<Response>> purges = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                purges.add(client.purgeKeyAsync("key" + i, ImmutableMap.of(), server.getBaseUrl()));
+            }
+            for (CompletableFuture<Response> purge : purges) {
+                assertThat(purge.get(5, TimeUnit.SECONDS).getStatusCode(), is(200));
+            }
+            assertThat(server.getConnectionCount(), is(3));
+
+            TimeUnit.MILLISECONDS.sleep(500);
+            assertThat(server.getRequests().size() >= 3 + 3 + 3, is(true));
+            assertThat(server.getConnectionCount(), is(3));
+        }
+    }
+
+    @Test
+    public void testWarmUpReportsUnreachableEndpoint() throws Exception {
+        String baseUrl;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            baseUrl = "http://127.0.0.1:" + socket.getLocalPort();
+        }
+
+        try (ConnectionWarmer warmer = client.warmUp(1, Arrays.asList(baseUrl), 1, TimeUnit.MINUTES)) {
+            warmer.ready().get(5, TimeUnit.SECONDS);
+            throw new AssertionError("warm up did not fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause() instanceof IOException, is(true));
+        }
+    }
+}
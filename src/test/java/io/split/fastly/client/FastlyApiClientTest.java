@@ -1,5 +1,7 @@
 package io.split.fastly.client;
 
+import com.google.common.collect.ImmutableMap;
+import org.asynchttpclient.Response;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -9,12 +11,22 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.when;
 
@@ -120,4 +132,122 @@ public class FastlyApiClientTest {
         assertThat(headers.get("Surrogate-Key"), is(FastlyApiClient.SURROGATE_KEY_JOINER.join(SURROGATE_KEYS)));
         assertThat(headers.get("Fastly-Soft-Purge"), is("1"));
     }
+
+    @Test
+    public void testPurgeKeysAsync() {
+        CompletableFuture<Response> expected = new CompletableFuture<>();
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(expected);
+
+        assertThat(fastlyApiClient.softPurgeKeysAsync(SURROGATE_KEYS), is(sameInstance(expected)));
+
+        Mockito.verify(executor).executeAsync(urlCaptor.capture(), methodCaptor.capture(), headersCaptor.capture(),
+                parametersCaptor.capture());
+        Mockito.verify(executor, Mockito.never()).execute(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+
+        assertThat(urlCaptor.getValue(), is(String.format("%s/service/%s/purge", FastlyApiClient.FASTLY_URL, SERVICE_ID)));
+        assertThat(methodCaptor.getValue(), is(FastlyApiClient.Method.POST));
+
+        Map<String, String> headers = headersCaptor.getValue();
+        assertThat(headers.get("Fastly-Key"), is(API_KEY));
+        assertThat(headers.get("Surrogate-Key"), is(FastlyApiClient.SURROGATE_KEY_JOINER.join(SURROGATE_KEYS)));
+        assertThat(headers.get("Fastly-Soft-Purge"), is("1"));
+    }
+
+    @Test
+    public void testPlainFutureIsAdaptedToCompletableFuture() throws Exception {
+        Response response = Mockito.mock(Response.class);
+        FutureTask<Response> plain = new FutureTask<>(() -> response);
+
+        CompletableFuture<Response> adapted = FastlyApiClient.toCompletableFuture(plain);
+        assertThat(adapted.isDone(), is(false));
+
+        plain.run();
+        assertThat(adapted.get(1, TimeUnit.SECONDS), is(sameInstance(response)));
+    }
+
+    @Test
+    public void testSoftPurgeKey() {
+        fastlyApiClient.softPurgeKey("key1");
+
+        Mockito.verify(executor).execute(urlCaptor.capture(), methodCaptor.capture(), headersCaptor.capture(),
+                parametersCaptor.capture());
+
+        assertThat(urlCaptor.getValue(), is(String.format("%s/service/%s/purge/key1", FastlyApiClient.FASTLY_URL, SERVICE_ID)));
+        assertThat(methodCaptor.getValue(), is(FastlyApiClient.Method.POST));
+
+        Map<String, String> headers = headersCaptor.getValue();
+        assertThat(headers.get("Fastly-Key"), is(API_KEY));
+        assertThat(headers.get("Fastly-Soft-Purge"), is("1"));
+        assertThat(headers.get("Surrogate-Key"), is(nullValue()));
+    }
+
+    @Test
+    public void testPurgeAllWithCustomFastlyUrl() {
+        fastlyApiClient.purgeAll(CUSTOM_FASTLY_URL);
+        fastlyApiClient.purgeAll(CUSTOM_FASTLY_URL);
+
+        Mockito.verify(executor, Mockito.times(2)).execute(urlCaptor.capture(), methodCaptor.capture(),
+                headersCaptor.capture(), parametersCaptor.capture());
+
+        for (String url : urlCaptor.getAllValues()) {
+            assertThat(url, is(String.format("%s/service/%s/purge_all", CUSTOM_FASTLY_URL, SERVICE_ID)));
+        }
+        assertThat(headersCaptor.getValue().get("Fastly-Key"), is(API_KEY));
+    }
+
+    @Test
+    public void testPurgeUrlsCapsRequestsPerHost() {
+        Map<String, CompletableFuture<Response>> sent = new LinkedHashMap<>();
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(i -> {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            sent.put((String) i.getArguments()[0], future);
+            return future;
+        });
+        List<String> urls = Arrays.asList("https://a.com/1", "https://a.com/2", "https://B.com/1", "https://a.com/3",
+                "https://b.com/2?q=1");
+
+        CompletableFuture<UrlPurgeResult> result = fastlyApiClient.purgeUrlsAsync(urls, Collections.emptyMap(), 1);
+        assertThat(new ArrayList<>(sent.keySet()), is(Arrays.asList("https://a.com/1", "https://B.com/1")));
+
+        Response ok = response(200);
+        sent.get("https://a.com/1").complete(ok);
+        sent.get("https://B.com/1").completeExceptionally(new IOException("reset"));
+        assertThat(sent.size(), is(4));
+        sent.get("https://a.com/2").complete(response(404));
+        sent.get("https://b.com/2?q=1").complete(ok);
+        assertThat(result.isDone(), is(false));
+        sent.get("https://a.com/3").complete(ok);
+
+        UrlPurgeResult purged = result.join();
+        assertThat(purged.getUrls().stream().map(UrlPurgeResult.Entry::getUrl).collect(toList()), is(urls));
+        assertThat(purged.getUrls().get(2).getHost(), is("b.com"));
+        assertThat(purged.getUrls().get(2).getError(), instanceOf(IOException.class));
+        assertThat(purged.getFailed().stream().map(UrlPurgeResult.Entry::getUrl).collect(toList()),
+                is(Arrays.asList("https://a.com/2", "https://B.com/1")));
+        assertThat(purged.isSuccessful(), is(false));
+    }
+
+    @Test
+    public void testPurgeUrlsGroupsUnderHostHeader() {
+        Response ok = response(200);
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), headersCaptor.capture(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(ok));
+
+        UrlPurgeResult purged = fastlyApiClient.purgeUrlsAsync(Arrays.asList("http://10.0.0.1/a", "http://10.0.0.2/b"),
+                ImmutableMap.of("Host", "www.example.com", "Fastly-Soft-Purge", "1"), 4).join();
+
+        assertThat(purged.isSuccessful(), is(true));
+        for (UrlPurgeResult.Entry entry : purged.getUrls()) {
+            assertThat(entry.getHost(), is("www.example.com"));
+            assertThat(entry.getResponse(), is(ok));
+        }
+        assertThat(headersCaptor.getValue().get("Host"), is("www.example.com"));
+        assertThat(headersCaptor.getValue().get("Fastly-Key"), is(API_KEY));
+    }
+
+    private static Response response(int status) {
+        Response response = Mockito.mock(Response.class);
+        when(response.getStatusCode()).thenReturn(status);
+        return response;
+    }
 }
@@ -0,0 +1,86 @@
+package io.split.fastly.client;
+
+import com.google.common.collect.ImmutableMap;
+import org.asynchttpclient.Response;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+public class FastlyResultTest {
+
+    @Test
+    public void testPurgeResult() {
+        Response response = response(200, "{\"status\": \"ok\", \"id\": \"108-1391560174-974124\"}");
+        PurgeResult result = new PurgeResult(response);
+
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.getStatus(), is("ok"));
+        assertThat(result.getId(), is("108-1391560174-974124"));
+        assertThat(result.getErrorMessage(), is(nullValue()));
+        Mockito.verify(response).getResponseBodyAsBytes();
+        Mockito.verify(response, Mockito.never()).getResponseBody();
+    }
+
+    @Test
+    public void testBodyIsOnlyReadWhenAFieldIs() {
+        Response response = response(200, "{\"status\": \"ok\"}");
+        PurgeResult result = new PurgeResult(response);
+
+        assertThat(result.isSuccessful(), is(true));
+        Mockito.verify(response, Mockito.never()).getResponseBodyAsBytes();
+        assertThat(result.getId(), is(nullValue()));
+    }
+
+    @Test
+    public void testErrorMessage() {
+        PurgeResult result = new PurgeResult(response(401, "{\"msg\":\"Provided credentials are missing or invalid\"}"));
+
+        assertThat(result.isSuccessful(), is(false));
+        assertThat(result.getErrorMessage(), is("Provided credentials are missing or invalid"));
+    }
+
+    @Test
+    public void testBatchPurgeResult() {
+        BatchPurgeResult result = new BatchPurgeResult(response(200,
+                "{\"key1\":\"108-1\",\"k\\u00e9y \\\"2\\\"\":\"108-2\",\n \"clé\" : \"108-3\"}"));
+
+        assertThat(result.getPurgeId("key1"), is("108-1"));
+        assertThat(result.getPurgeId("kéy \"2\""), is("108-2"));
+        assertThat(result.getPurgeId("clé"), is("108-3"));
+        assertThat(result.getPurgeId("missing"), is(nullValue()));
+        assertThat(result.getPurgeIds(), is(ImmutableMap.of("key1", "108-1", "kéy \"2\"", "108-2", "clé", "108-3")));
+    }
+
+    @Test
+    public void testVclResultSkipsNestedValues() {
+        VclResult result = new VclResult(response(200, "{\"service_id\":\"SU1Z0isxPaozGVKXdv0eY\",\"version\":7,"
+                + "\"deleted_at\":null,\"tags\":[{\"a\":\"}\"},[1,2]],\"meta\":{\"main\":true},"
+                + "\"name\":\"my_vcl\",\"main\":false,\"content\":\"sub vcl_recv {\\n\\t#FASTLY recv\\n}\"}"));
+
+        assertThat(result.getServiceId(), is("SU1Z0isxPaozGVKXdv0eY"));
+        assertThat(result.getVersion(), is(7));
+        assertThat(result.getName(), is("my_vcl"));
+        assertThat(result.isMain(), is(false));
+        assertThat(result.getContent(), is("sub vcl_recv {\n\t#FASTLY recv\n}"));
+        assertThat(result.field("deleted_at"), is(nullValue()));
+        assertThat(result.field("tags"), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedBody() {
+        new VclResult(response(200, "{\"name\":\"my_vcl")).getName();
+    }
+
+    private static Response response(int status, String body) {
+        Response response = Mockito.mock(Response.class);
+        when(response.getStatusCode()).thenReturn(status);
+        when(response.getResponseBodyAsBytes()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+        return response;
+    }
+}
@@ -0,0 +1,88 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FastlyServiceRegistryTest {
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor executor;
+
+    @Mock
+    private Response response;
+
+    @Captor
+    private ArgumentCaptor<String> urlCaptor;
+
+    @Captor
+    private ArgumentCaptor<Map<String, String>> headersCaptor;
+
+    private FastlyServiceRegistry registry;
+
+    @Before
+    public void init() {
+        registry = new FastlyServiceRegistry("someApiKey", executor);
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+    }
+
+    @Test
+    public void testServicesShareTheExecutor() {
+        registry.forService("serviceA").purgeKeyAsync("key");
+        registry.forService("serviceB").purgeKeyAsync("key");
+        registry.forService("otherApiKey", "serviceC").purgeAllAsync();
+
+        Mockito.verify(executor, Mockito.times(3)).executeAsync(urlCaptor.capture(), Mockito.any(),
+                headersCaptor.capture(), Mockito.any());
+        assertThat(urlCaptor.getAllValues(), is(Arrays.asList(
+                "https://api.fastly.com/service/serviceA/purge/key",
+                "https://api.fastly.com/service/serviceB/purge/key",
+                "https://api.fastly.com/service/serviceC/purge_all")));
+        assertThat(headersCaptor.getAllValues().get(1).get("Fastly-Key"), is("someApiKey"));
+        assertThat(headersCaptor.getAllValues().get(2).get("Fastly-Key"), is("otherApiKey"));
+    }
+
+    @Test
+    public void testClientsAreCached() {
+        FastlyApiClient client = registry.forService("serviceA");
+
+        assertThat(registry.forService("serviceA"), sameInstance(client));
+        assertThat(registry.forService("otherApiKey", "serviceA"), not(sameInstance(client)));
+        assertThat(registry.size(), is(2));
+    }
+
+    @Test
+    public void testOnlyTheRegistryClosesTheExecutor() throws IOException {
+        registry.forService("serviceA").closeConnectionPool();
+        Mockito.verify(executor, Mockito.never()).close();
+
+        registry.close();
+        registry.close();
+        Mockito.verify(executor, Mockito.times(1)).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedRegistryRejectsNewServices() throws IOException {
+        registry.close();
+        registry.forService("serviceA");
+    }
+}
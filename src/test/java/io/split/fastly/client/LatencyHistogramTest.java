@@ -0,0 +1,59 @@
+package io.split.fastly.client;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getCount(), is(50L));
+        assertThat(histogram.getMax(), is(50L));
+        assertThat(histogram.getValueAtPercentile(50), is(25L));
+        assertThat(histogram.getValueAtPercentile(100), is(50L));
+        assertThat(histogram.getMean(), is(25.5));
+    }
+
+    @Test
+    public void testLargeValuesStayWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertWithin(histogram.getValueAtPercentile(50), 50_000_000L);
+        assertWithin(histogram.getValueAtPercentile(99), 99_000_000L);
+        assertWithin(histogram.getValueAtPercentile(99.9), 99_900_000L);
+        assertThat(histogram.getValueAtPercentile(100), is(100_000_000L));
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for (long v = 0; v < 1 << 16; v++) {
+            int index = LatencyHistogram.index(v);
+            assertThat(LatencyHistogram.index(v + 1) - index <= 1, is(true));
+        }
+        assertThat(LatencyHistogram.index(Long.MAX_VALUE) > LatencyHistogram.index(Long.MAX_VALUE / 2), is(true));
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.reset();
+
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getValueAtPercentile(99), is(0L));
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertThat(actual + " expected ~" + expected, actual >= expected && actual <= expected * 1.04, is(true));
+    }
+}
@@ -0,0 +1,356 @@
+package io.split.fastly.client;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for the Fastly API, so the real network path of the client can be exercised without
+ * network access or API keys.
+ * <p>
+ * Answers the endpoints used by {@link FastlyApiClient} (purge by key, batch purge, purge all, VCL upload and
+ * update, batch dictionary item updates) plus PURGE on any path, and can inject latency, server errors, 429s and
+ * connection resets.
+ */
+public class LocalFastlyServer implements Closeable {
+
+    private static final Pattern PURGE_KEY = Pattern.compile("/service/([^/]+)/purge/(.+)");
+    private static final Pattern PURGE_KEYS = Pattern.compile("/service/([^/]+)/purge");
+    private static final Pattern PURGE_ALL = Pattern.compile("/service/([^/]+)/purge_all");
+    private static final Pattern VCL_UPLOAD = Pattern.compile("/service/([^/]+)/version/(\\d+)/vcl");
+    private static final Pattern VCL_UPDATE = Pattern.compile("/service/([^/]+)/version/([^/]+)/vcl/(.+)");
+    private static final Pattern DICTIONARY_ITEMS = Pattern.compile("/service/([^/]+)/dictionary/([^/]+)/items");
+
+    private final EventLoopGroup _boss = new NioEventLoopGroup(1);
+    private final EventLoopGroup _workers = new NioEventLoopGroup();
+    private final ConcurrentLinkedQueue<RecordedRequest> _requests = new ConcurrentLinkedQueue<>();
+    private final AtomicLong _purgeIds = new AtomicLong();
+    private final ConcurrentMap<String, String> _vcls = new ConcurrentHashMap<>();
+    private final AtomicLong _rateLimitRemaining = new AtomicLong(-1);
+    private final AtomicInteger _connections = new AtomicInteger();
+    private final Channel _channel;
+
+    private volatile long _minLatencyMillis;
+    private volatile long _maxLatencyMillis;
+    private volatile double _errorRate;
+    private volatile double _tooManyRequestsRate;
+    private volatile double _connectionResetRate;
+
+    public LocalFastlyServer() throws InterruptedException {
+        _channel = new ServerBootstrap()
+                .group(_boss, _workers)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        _connections.incrementAndGet();
+                        ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(64 * 1024 * 1024),
+                                new Handler());
+                    }
+                })
+                .bind("127.0.0.1", 0)
+                .sync()
+                .channel();
+    }
+
+    /**
+     * Base url to pass as <code>fastlyUrl</code> to the client.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + ((InetSocketAddress) _channel.localAddress()).getPort();
+    }
+
+    /**
+     * Delays every response by a random amount between the given bounds.
+     */
+    public LocalFastlyServer withLatency(long min, long max, TimeUnit unit) {
+        _minLatencyMillis = unit.toMillis(min);
+        _maxLatencyMillis = unit.toMillis(max);
+        return this;
+    }
+
+    /**
+     * Fraction of requests answered with a 500.
+     */
+    public LocalFastlyServer withErrorRate(double rate) {
+        _errorRate = rate;
+        return this;
+    }
+
+    /**
+     * Fraction of requests answered with a 429.
+     */
+    public LocalFastlyServer withTooManyRequestsRate(double rate) {
+        _tooManyRequestsRate = rate;
+        return this;
+    }
+
+    /**
+     * Fraction of requests whose connection is reset instead of answered.
+     */
+    public LocalFastlyServer withConnectionResetRate(double rate) {
+        _connectionResetRate = rate;
+        return this;
+    }
+
+    /**
+     * Enables the Fastly rate limit headers. Each API request consumes one unit, and requests beyond the budget get
+     * a 429.
+     */
+    public LocalFastlyServer withRateLimit(long budget) {
+        _rateLimitRemaining.set(budget);
+        return this;
+    }
+
+    /**
+     * Connections accepted so far.
+     */
+    public int getConnectionCount() {
+        return _connections.get();
+    }
+
+    public List<RecordedRequest> getRequests() {
+        return new ArrayList<>(_requests);
+    }
+
+    public void clearRequests() {
+        _requests.clear();
+    }
+
+    @Override
+    public void close() {
+        _channel.close().syncUninterruptibly();
+        _boss.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        _workers.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    private class Handler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            RecordedRequest recorded = new RecordedRequest(request);
+            _requests.add(recorded);
+            boolean keepAlive = HttpUtil.isKeepAlive(request);
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < _connectionResetRate) {
+                ctx.channel().config().setOption(ChannelOption.SO_LINGER, 0);
+                ctx.close();
+                return;
+            }
+
+            FullHttpResponse response;
+            if (random.nextDouble() < _errorRate) {
+                response = json(HttpResponseStatus.INTERNAL_SERVER_ERROR, "{\"msg\":\"injected error\"}");
+            } else if (random.nextDouble() < _tooManyRequestsRate || !consumeRateLimit(recorded)) {
+                response = json(HttpResponseStatus.TOO_MANY_REQUESTS, "{\"msg\":\"rate limit exceeded\"}");
+            } else {
+                response = route(recorded);
+            }
+            addRateLimitHeaders(response, recorded);
+
+            long latency = _maxLatencyMillis <= _minLatencyMillis
+                    ? _minLatencyMillis
+                    : random.nextLong(_minLatencyMillis, _maxLatencyMillis + 1);
+            if (latency > 0) {
+                ctx.executor().schedule(() -> write(ctx, response, keepAlive), latency, TimeUnit.MILLISECONDS);
+            } else {
+                write(ctx, response, keepAlive);
+            }
+        }
+
+        private void write(ChannelHandlerContext ctx, FullHttpResponse response, boolean keepAlive) {
+            if (keepAlive) {
+                HttpUtil.setKeepAlive(response, true);
+                ctx.writeAndFlush(response);
+            } else {
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+    }
+
+    private boolean consumeRateLimit(RecordedRequest request) {
+        if (request.getMethod().equals("PURGE") || _rateLimitRemaining.get() < 0) {
+            return true;
+        }
+        return _rateLimitRemaining.getAndUpdate(r -> Math.max(r - 1, 0)) > 0;
+    }
+
+    private void addRateLimitHeaders(FullHttpResponse response, RecordedRequest request) {
+        long remaining = _rateLimitRemaining.get();
+        if (remaining >= 0 && !request.getMethod().equals("PURGE")) {
+            long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600;
+            response.headers().set(RateLimitedAsyncHttpExecutor.REMAINING_HEADER, remaining);
+            response.headers().set(RateLimitedAsyncHttpExecutor.RESET_HEADER, reset);
+        }
+    }
+
+    private FullHttpResponse route(RecordedRequest request) {
+        String method = request.getMethod();
+        String path = request.getPath();
+        Matcher matcher;
+
+        if (method.equals("PURGE")) {
+            return json(HttpResponseStatus.OK, "{\"status\":\"ok\",\"id\":\"" + nextPurgeId() + "\"}");
+        }
+        if (method.equals("GET") && path.equals(ConnectionWarmer.PING_PATH)) {
+            return json(HttpResponseStatus.OK, "{\"addresses\":[\"23.235.32.0/20\"]}");
+        }
+        if (method.equals("POST") && PURGE_ALL.matcher(path).matches()) {
+            return json(HttpResponseStatus.OK, "{\"status\":\"ok\"}");
+        }
+        if (method.equals("POST") && PURGE_KEY.matcher(path).matches()) {
+            return json(HttpResponseStatus.OK, "{\"status\":\"ok\",\"id\":\"" + nextPurgeId() + "\"}");
+        }
+        if (method.equals("POST") && PURGE_KEYS.matcher(path).matches()) {
+            String keys = request.getHeaders().get("surrogate-key");
+            if (keys == null) {
+                return json(HttpResponseStatus.BAD_REQUEST, "{\"msg\":\"missing Surrogate-Key\"}");
+            }
+            StringBuilder body = new StringBuilder("{");
+            for (String key : keys.split(" ")) {
+                if (body.length() > 1) {
+                    body.append(',');
+                }
+                body.append('"').append(key).append("\":\"").append(nextPurgeId()).append('"');
+            }
+            return json(HttpResponseStatus.OK, body.append('}').toString());
+        }
+        if (method.equals("POST") && (matcher = VCL_UPLOAD.matcher(path)).matches()) {
+            return vcl(matcher.group(1), matcher.group(2), request.getFormParameters().get("name"),
+                    request.getFormParameters());
+        }
+        if (method.equals("PUT") && (matcher = VCL_UPDATE.matcher(path)).matches()) {
+            if (!matcher.group(2).matches("\\d+")) {
+                return json(HttpResponseStatus.BAD_REQUEST, "{\"msg\":\"invalid version\"}");
+            }
+            if (!_vcls.containsKey(vclKey(matcher.group(1), matcher.group(2), matcher.group(3)))) {
+                return json(HttpResponseStatus.NOT_FOUND, "{\"msg\":\"Record not found\"}");
+            }
+            return vcl(matcher.group(1), matcher.group(2), matcher.group(3), request.getFormParameters());
+        }
+        if (method.equals("PATCH") && DICTIONARY_ITEMS.matcher(path).matches()) {
+            if (!"application/json".equals(request.getHeaders().get("content-type"))) {
+                return json(HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE, "{\"msg\":\"expected JSON\"}");
+            }
+            return json(HttpResponseStatus.OK, "{\"status\":\"ok\"}");
+        }
+        return json(HttpResponseStatus.NOT_FOUND, "{\"msg\":\"Record not found\"}");
+    }
+
+    private String nextPurgeId() {
+        return "purge-" + _purgeIds.incrementAndGet();
+    }
+
+    /**
+     * Content of the VCL as last uploaded or updated, or null if there is none.
+     */
+    public String getVcl(String serviceId, int version, String name) {
+        return _vcls.get(vclKey(serviceId, String.valueOf(version), name));
+    }
+
+    private FullHttpResponse vcl(String serviceId, String version, String name, Map<String, String> form) {
+        if (name == null || form.get("content") == null) {
+            return json(HttpResponseStatus.BAD_REQUEST, "{\"msg\":\"name and content are required\"}");
+        }
+        _vcls.put(vclKey(serviceId, version, name), form.get("content"));
+        return json(HttpResponseStatus.OK, "{\"name\":\"" + name + "\",\"service_id\":\"" + serviceId
+                + "\",\"version\":" + version + ",\"main\":false}");
+    }
+
+    private static String vclKey(String serviceId, String version, String name) {
+        return serviceId + "/" + version + "/" + name;
+    }
+
+    private static FullHttpResponse json(HttpResponseStatus status, String body) {
+        ByteBuf content = Unpooled.copiedBuffer(body, StandardCharsets.UTF_8);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json");
+        HttpUtil.setContentLength(response, content.readableBytes());
+        return response;
+    }
+
+    /**
+     * A request as received by the server.
+     */
+    public static class RecordedRequest {
+
+        private final String _method;
+        private final String _path;
+        private final Map<String, String> _headers;
+        private final String _body;
+
+        RecordedRequest(FullHttpRequest request) {
+            _method = request.method().name();
+            _path = new QueryStringDecoder(request.uri()).path();
+            Map<String, String> headers = new LinkedHashMap<>();
+            request.headers().forEach(e -> headers.put(e.getKey().toLowerCase(), e.getValue()));
+            _headers = Collections.unmodifiableMap(headers);
+            _body = request.content().toString(StandardCharsets.UTF_8);
+        }
+
+        public String getMethod() {
+            return _method;
+        }
+
+        public String getPath() {
+            return _path;
+        }
+
+        /**
+         * Request headers, with lower cased names.
+         */
+        public Map<String, String> getHeaders() {
+            return _headers;
+        }
+
+        public String getBody() {
+            return _body;
+        }
+
+        public Map<String, String> getFormParameters() {
+            Map<String, String> form = new LinkedHashMap<>();
+            new QueryStringDecoder(_body, StandardCharsets.UTF_8, false).parameters()
+                    .forEach((k, v) -> form.put(k, v.get(0)));
+            return form;
+        }
+    }
+}
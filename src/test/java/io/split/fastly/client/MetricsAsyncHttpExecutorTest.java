@@ -0,0 +1,134 @@
+package io.split.fastly.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MetricsAsyncHttpExecutorTest {
+
+    private static final String SERVICE_URL = FastlyApiClient.FASTLY_URL + "/service/someServiceId";
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor delegate;
+
+    @Mock
+    private Response response;
+
+    private RecordingFastlyClientMetrics metrics;
+    private FastlyApiClient client;
+
+    @Before
+    public void init() {
+        metrics = new RecordingFastlyClientMetrics();
+        client = new FastlyApiClient("someApiKey", "someServiceId", null, new MetricsAsyncHttpExecutor(delegate, metrics));
+        when(response.getStatusCode()).thenReturn(200);
+        when(response.getHeader("Content-Length")).thenReturn("42");
+    }
+
+    @Test
+    public void testCompletedRequestsAreRecorded() {
+        CompletableFuture<Response> pending = new CompletableFuture<>();
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(pending);
+
+        client.purgeKeysAsync(Arrays.asList("a", "b"));
+        RecordingFastlyClientMetrics.EndpointStats stats =
+                metrics.getStats(EndpointKind.PURGE_BATCH, FastlyApiClient.Method.POST);
+        assertThat(stats.getInFlight(), is(1L));
+        assertThat(stats.getBytesSent() > 0, is(true));
+
+        pending.complete(response);
+        assertThat(stats.getInFlight(), is(0L));
+        assertThat(stats.getLatency().getCount(), is(1L));
+        assertThat(stats.getStatusCodes(), is(Collections.singletonMap(200, 1L)));
+        assertThat(stats.getBytesReceived(), is(42L));
+    }
+
+    @Test
+    public void testResponseWithoutContentLengthIsNotMeasured() {
+        when(response.getHeader("Content-Length")).thenReturn(null);
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+
+        client.purgeKeyAsync("a");
+
+        RecordingFastlyClientMetrics.EndpointStats stats =
+                metrics.getStats(EndpointKind.PURGE_KEY, FastlyApiClient.Method.POST);
+        assertThat(stats.getStatusCodes(), is(Collections.singletonMap(200, 1L)));
+        assertThat(stats.getBytesReceived(), is(0L));
+        Mockito.verify(response, Mockito.never()).getResponseBodyAsBytes();
+    }
+
+    @Test
+    public void testFailedRequestsAreRecorded() {
+        CompletableFuture<Response> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new ConnectException());
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(failed);
+
+        client.purgeAllAsync();
+
+        RecordingFastlyClientMetrics.EndpointStats stats =
+                metrics.getStats(EndpointKind.PURGE_ALL, FastlyApiClient.Method.POST);
+        assertThat(stats.getInFlight(), is(0L));
+        assertThat(stats.getFailures(), is(1L));
+        assertThat(stats.getStatusCodes().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testMicrometerAdapter() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+        FastlyApiClient micrometerClient = new FastlyApiClient("someApiKey", "someServiceId", null,
+                new MetricsAsyncHttpExecutor(delegate, new MicrometerFastlyClientMetrics(registry)));
+
+        micrometerClient.softPurgeKeyAsync("a");
+        micrometerClient.softPurgeKeyAsync("b");
+
+        assertThat(registry.get("fastly.client.requests")
+                .tags("endpoint", "purge_key", "method", "POST", "status", "200").timer().count(), is(2L));
+        assertThat(registry.get("fastly.client.requests.in.flight").gauge().value(), is(0.0));
+        assertThat(registry.get("fastly.client.bytes.received").summary().totalAmount(), is(84.0));
+    }
+
+    @Test
+    public void testEndpointClassification() {
+        assertThat(EndpointKind.classify(SERVICE_URL + "/purge/key", FastlyApiClient.Method.POST),
+                is(EndpointKind.PURGE_KEY));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/purge", FastlyApiClient.Method.POST),
+                is(EndpointKind.PURGE_BATCH));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/purge_all", FastlyApiClient.Method.POST),
+                is(EndpointKind.PURGE_ALL));
+        assertThat(EndpointKind.classify("https://www.example.com/purge", FastlyApiClient.Method.PURGE),
+                is(EndpointKind.PURGE_URL));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/version/1/vcl/main", FastlyApiClient.Method.PUT),
+                is(EndpointKind.VCL));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/details", FastlyApiClient.Method.GET),
+                is(EndpointKind.OTHER));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/purge/purge_all", FastlyApiClient.Method.POST),
+                is(EndpointKind.PURGE_KEY));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/purge/purge", FastlyApiClient.Method.POST),
+                is(EndpointKind.PURGE_KEY));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/purge/vcl", FastlyApiClient.Method.POST),
+                is(EndpointKind.PURGE_KEY));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/version/1/vcl", FastlyApiClient.Method.POST),
+                is(EndpointKind.VCL));
+        assertThat(EndpointKind.classify(SERVICE_URL + "/dictionary/vcl/items", FastlyApiClient.Method.PATCH),
+                is(EndpointKind.OTHER));
+    }
+}
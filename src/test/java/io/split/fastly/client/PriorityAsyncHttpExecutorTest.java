@@ -0,0 +1,130 @@
+package io.split.fastly.client;
+
+import com.google.common.collect.ImmutableList;
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PriorityAsyncHttpExecutorTest {
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor delegate;
+
+    @Mock
+    private Response response;
+
+    private final List<String> sentUrls = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Response>> sent = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void init() {
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(i -> {
+            sentUrls.add((String) i.getArguments()[0]);
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            sent.add(future);
+            return future;
+        });
+    }
+
+    @Test
+    public void testUrgentPurgesSkipTheBulkQueue() {
+        PriorityAsyncHttpExecutor executor = new PriorityAsyncHttpExecutor(delegate, 1, 100);
+        FastlyApiClient client = new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+
+        client.softPurgeKeyAsync("bulk0");
+        for (int i = 1; i < 100; i++) {
+            client.softPurgeKeyAsync("bulk" + i);
+        }
+        client.purgeUrlAsync("https://www.example.com/page");
+        client.purgeKeyAsync("urgent");
+        CompletableFuture<Response> purgeAll = client.purgeAllAsync();
+        assertThat(executor.getQueued("soft-key"), is(99));
+
+        sent.get(0).complete(response);
+        assertThat(last(), is("https://api.fastly.com/service/someServiceId/purge_all"));
+        sent.get(1).complete(response);
+        assertThat(last(), is("https://api.fastly.com/service/someServiceId/purge/urgent"));
+        sent.get(2).complete(response);
+        assertThat(last(), is("https://api.fastly.com/service/someServiceId/purge/bulk1"));
+        sent.get(3).complete(response);
+        assertThat(last(), is("https://api.fastly.com/service/someServiceId/purge/bulk2"));
+        sent.get(4).complete(response);
+        assertThat(last(), is("https://www.example.com/page"));
+
+        assertThat(purgeAll.join(), is(response));
+        assertThat(executor.getQueueWait("purge-all").getCount(), is(1L));
+        assertThat(executor.getQueueWait("soft-key").getCount(), is(3L));
+        assertThat(executor.getInFlight(), is(1));
+    }
+
+    @Test
+    public void testLanesShareSlotsByWeight() {
+        PriorityAsyncHttpExecutor executor = new PriorityAsyncHttpExecutor(delegate, 1, 100, ImmutableList.of(
+                new PriorityAsyncHttpExecutor.Lane("a", 3, call -> call.getApiUrl().contains("/a/")),
+                new PriorityAsyncHttpExecutor.Lane("b", 1, call -> true)));
+        assertThat(executor.getLanes(), is(Arrays.asList("a", "b")));
+
+        get(executor, "http://host/first");
+        for (int i = 0; i < 4; i++) {
+            get(executor, "http://host/a/" + i);
+            get(executor, "http://host/b/" + i);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            sent.get(i).complete(response);
+        }
+        assertThat(sentUrls.subList(1, 9), is(Arrays.asList("http://host/a/0", "http://host/a/1", "http://host/b/0",
+                "http://host/a/2", "http://host/a/3", "http://host/b/1", "http://host/b/2", "http://host/b/3")));
+    }
+
+    @Test
+    public void testFullLaneRejectsRequests() {
+        PriorityAsyncHttpExecutor executor = new PriorityAsyncHttpExecutor(delegate, 1, 2);
+        FastlyApiClient client = new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+
+        client.softPurgeKeyAsync("inFlight");
+        client.softPurgeKeyAsync("queued1");
+        client.softPurgeKeyAsync("queued2");
+        CompletableFuture<Response> rejected = client.softPurgeKeyAsync("rejected");
+        CompletableFuture<Response> urgent = client.purgeKeyAsync("urgent");
+
+        assertThat(rejected.isCompletedExceptionally(), is(true));
+        try {
+            rejected.join();
+        } catch (CompletionException e) {
+            assertThat(e.getCause() instanceof RejectedExecutionException, is(true));
+        }
+        assertThat(executor.getRejected(), is(1L));
+        assertThat(executor.getQueued("soft-key"), is(2));
+        assertThat(executor.getQueued("hard-key"), is(1));
+
+        sent.get(0).complete(response);
+        assertThat(last(), is("https://api.fastly.com/service/someServiceId/purge/urgent"));
+        assertThat(urgent.isDone(), is(false));
+    }
+
+    private static void get(PriorityAsyncHttpExecutor executor, String url) {
+        executor.executeAsync(url, FastlyApiClient.Method.GET, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    private String last() {
+        return sentUrls.get(sentUrls.size() - 1);
+    }
+}
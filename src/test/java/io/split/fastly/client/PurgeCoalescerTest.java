@@ -0,0 +1,166 @@
+package io.split.fastly.client;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.asynchttpclient.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PurgeCoalescerTest {
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor executor;
+
+    @Mock
+    private Response response;
+
+    @Captor
+    private ArgumentCaptor<Map<String, String>> headersCaptor;
+
+    private PurgeCoalescer coalescer;
+
+    @Before
+    public void init() {
+        FastlyApiClient client = new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+        coalescer = new PurgeCoalescer(client, 1, TimeUnit.HOURS);
+    }
+
+    @After
+    public void tearDown() {
+        coalescer.close();
+    }
+
+    @Test
+    public void testKeysFromManyThreadsAreSentInOneBatch() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<CompletableFuture<Response>>> submitted = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String key = "key" + (i % 50);
+            submitted.add(CompletableFuture.supplyAsync(() -> {
+                Uninterruptibles.awaitUninterruptibly(start);
+                return coalescer.purgeKey(key);
+            }, pool));
+        }
+        start.countDown();
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (CompletableFuture<CompletableFuture<Response>> future : submitted) {
+            futures.add(future.join());
+        }
+        pool.shutdown();
+
+        coalescer.flush();
+
+        Mockito.verify(executor).executeAsync(Mockito.any(), Mockito.any(), headersCaptor.capture(), Mockito.any());
+        Set<String> sent = new HashSet<>(Arrays.asList(headersCaptor.getValue().get("Surrogate-Key").split(" ")));
+        assertThat(sent.size(), is(50));
+        for (CompletableFuture<Response> future : futures) {
+            assertThat(future.get(), sameInstance(response));
+        }
+    }
+
+    @Test
+    public void testDuplicatedKeysGetTheirOwnHandle() throws Exception {
+        CompletableFuture<Response> first = coalescer.purgeKey("a");
+        CompletableFuture<Response> second = coalescer.purgeKey("a");
+        CompletableFuture<Response> cancelled = coalescer.purgeKey("a");
+        assertThat(first, not(sameInstance(second)));
+
+        cancelled.cancel(false);
+        coalescer.flush();
+
+        Mockito.verify(executor).executeAsync(Mockito.any(), Mockito.any(), headersCaptor.capture(), Mockito.any());
+        assertThat(headersCaptor.getValue().get("Surrogate-Key"), is("a"));
+        assertThat(first.get(), sameInstance(response));
+        assertThat(second.get(), sameInstance(response));
+    }
+
+    @Test
+    public void testHardAndSoftPurgesUseSeparateLanes() {
+        coalescer.purgeKey("a");
+        coalescer.softPurgeKey("b");
+        coalescer.flush();
+
+        Mockito.verify(executor, times(2)).executeAsync(Mockito.any(), Mockito.any(), headersCaptor.capture(), Mockito.any());
+        Map<String, String> hard = headersCaptor.getAllValues().get(0);
+        Map<String, String> soft = headersCaptor.getAllValues().get(1);
+        assertThat(hard.get("Surrogate-Key"), is("a"));
+        assertThat(hard.get("Fastly-Soft-Purge"), is(nullValue()));
+        assertThat(soft.get("Surrogate-Key"), is("b"));
+        assertThat(soft.get("Fastly-Soft-Purge"), is("1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatchesRespectMaxSize() throws InterruptedException {
+        AtomicInteger total = new AtomicInteger();
+        AtomicBoolean oversized = new AtomicBoolean();
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            Map<String, String> headers = (Map<String, String>) invocation.getArguments()[2];
+            int size = headers.get("Surrogate-Key").split(" ").length;
+            oversized.compareAndSet(false, size > PurgeCoalescer.MAX_BATCH_SIZE);
+            total.addAndGet(size);
+            return CompletableFuture.completedFuture(response);
+        });
+
+        for (int i = 0; i < 600; i++) {
+            coalescer.purgeKey("key" + i);
+        }
+        coalescer.flush();
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (total.get() < 600 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(total.get(), is(600));
+        assertThat(oversized.get(), is(false));
+    }
+
+    @Test
+    public void testKeysAddedAfterCloseAreRejected() {
+        coalescer.close();
+
+        CompletableFuture<Response> future = coalescer.purgeKey("late");
+
+        assertThat(future.isCompletedExceptionally(), is(true));
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            assertThat(e.getCause() instanceof IllegalStateException, is(true));
+        }
+        Mockito.verify(executor, Mockito.never()).executeAsync(Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+    }
+}
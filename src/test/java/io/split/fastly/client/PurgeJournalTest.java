@@ -0,0 +1,185 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PurgeJournalTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final String SERVICE_ID = "someServiceId";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor executor;
+
+    @Mock
+    private Response ok;
+
+    @Mock
+    private Response error;
+
+    @Captor
+    private ArgumentCaptor<Map<String, String>> headersCaptor;
+
+    private Path directory;
+
+    @Before
+    public void init() {
+        directory = folder.getRoot().toPath().resolve("journal");
+        when(ok.getStatusCode()).thenReturn(200);
+        when(error.getStatusCode()).thenReturn(503);
+    }
+
+    @Test
+    public void testUnacknowledgedEntriesAreRecovered() throws IOException {
+        PurgeJournal journal = new PurgeJournal(directory, SEGMENT_SIZE);
+        PurgeJournal.Entry acknowledged = journal.append(SERVICE_ID, FastlyApiClient.FASTLY_URL, false, Arrays.asList("a", "b"));
+        journal.append(SERVICE_ID, "http://other.url", true, Arrays.asList("c", "d"));
+        journal.acknowledge(acknowledged);
+        journal.close();
+
+        List<PurgeJournal.Entry> recovered = new PurgeJournal(directory, SEGMENT_SIZE).getRecovered();
+
+        assertThat(recovered.size(), is(1));
+        assertThat(recovered.get(0).getServiceId(), is(SERVICE_ID));
+        assertThat(recovered.get(0).getFastlyUrl(), is("http://other.url"));
+        assertThat(recovered.get(0).isSoft(), is(true));
+        assertThat(recovered.get(0).getKeys(), is(Arrays.asList("c", "d")));
+    }
+
+    @Test
+    public void testAcknowledgedSegmentsAreDeleted() throws IOException {
+        PurgeJournal journal = new PurgeJournal(directory, SEGMENT_SIZE);
+        List<PurgeJournal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            entries.add(journal.append(SERVICE_ID, FastlyApiClient.FASTLY_URL, false,
+                    Collections.singletonList("some-key-" + i)));
+        }
+        assertThat(segments() > 1, is(true));
+
+        entries.forEach(journal::acknowledge);
+        assertThat(segments(), is(1));
+
+        journal.close();
+        assertThat(segments(), is(0));
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException {
+        PurgeJournal journal = new PurgeJournal(directory, SEGMENT_SIZE);
+        journal.append(SERVICE_ID, FastlyApiClient.FASTLY_URL, false, Collections.singletonList("kept"));
+        journal.append(SERVICE_ID, FastlyApiClient.FASTLY_URL, false, Collections.singletonList("torn"));
+        journal.close();
+
+        File segment = directory.toFile().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // segment header, first record (header, service id, url, key), then into the url of the second record
+            int record = 10 + 2 + SERVICE_ID.length() + 2 + FastlyApiClient.FASTLY_URL.length();
+            file.seek(4 + record + 4 + record - FastlyApiClient.FASTLY_URL.length() + 3);
+            file.write('X');
+        }
+
+        List<PurgeJournal.Entry> recovered = new PurgeJournal(directory, SEGMENT_SIZE).getRecovered();
+        assertThat(recovered.size(), is(1));
+        assertThat(recovered.get(0).getKeys(), is(Collections.singletonList("kept")));
+    }
+
+    @Test
+    public void testPurgesAreAcknowledgedOnSuccessOnly() throws IOException {
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(ok))
+                .thenReturn(CompletableFuture.completedFuture(error));
+        PurgeJournal journal = new PurgeJournal(directory, SEGMENT_SIZE);
+        JournaledPurgeClient client = new JournaledPurgeClient(newClient(), journal);
+
+        client.purgeKey("confirmed");
+        client.softPurgeKeys(Arrays.asList("failed1", "failed2"));
+        journal.close();
+
+        List<PurgeJournal.Entry> recovered = new PurgeJournal(directory, SEGMENT_SIZE).getRecovered();
+        assertThat(recovered.size(), is(1));
+        assertThat(recovered.get(0).getKeys(), is(Arrays.asList("failed1", "failed2")));
+    }
+
+    @Test
+    public void testReplaySendsPendingEntriesInBatches() throws IOException {
+        PurgeJournal previous = new PurgeJournal(directory, SEGMENT_SIZE);
+        for (int i = 0; i < 300; i++) {
+            previous.append(SERVICE_ID, FastlyApiClient.FASTLY_URL, false, Collections.singletonList("key" + i));
+        }
+        previous.append(SERVICE_ID, FastlyApiClient.FASTLY_URL, true, Collections.singletonList("soft"));
+        previous.close();
+
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        PurgeJournal journal = new PurgeJournal(directory, SEGMENT_SIZE);
+        int replayed = new JournaledPurgeClient(newClient(), journal).replay().join();
+
+        assertThat(replayed, is(301));
+        Mockito.verify(executor, Mockito.times(3)).executeAsync(Mockito.any(), Mockito.any(), headersCaptor.capture(),
+                Mockito.any());
+        assertThat(headersCaptor.getAllValues().get(0).get("Surrogate-Key").split(" ").length, is(256));
+        assertThat(headersCaptor.getAllValues().get(1).get("Surrogate-Key").split(" ").length, is(44));
+        assertThat(headersCaptor.getAllValues().get(2).get("Fastly-Soft-Purge"), is("1"));
+
+        journal.close();
+        assertThat(new PurgeJournal(directory, SEGMENT_SIZE).getRecovered().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testReplaySkipsEntriesOfOtherServices() throws IOException {
+        PurgeJournal previous = new PurgeJournal(directory, SEGMENT_SIZE);
+        previous.append("otherServiceId", FastlyApiClient.FASTLY_URL, false, Collections.singletonList("other"));
+        previous.append(SERVICE_ID, FastlyApiClient.FASTLY_URL, false, Collections.singletonList("mine"));
+        previous.close();
+
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        PurgeJournal journal = new PurgeJournal(directory, SEGMENT_SIZE);
+        int replayed = new JournaledPurgeClient(newClient(), journal).replay().join();
+
+        assertThat(replayed, is(1));
+        Mockito.verify(executor).executeAsync(Mockito.any(), Mockito.any(), headersCaptor.capture(), Mockito.any());
+        assertThat(headersCaptor.getValue().get("Surrogate-Key"), is("mine"));
+
+        journal.close();
+        List<PurgeJournal.Entry> recovered = new PurgeJournal(directory, SEGMENT_SIZE).getRecovered();
+        assertThat(recovered.size(), is(1));
+        assertThat(recovered.get(0).getServiceId(), is("otherServiceId"));
+    }
+
+    private FastlyApiClient newClient() {
+        return new FastlyApiClient("someApiKey", SERVICE_ID, null, executor);
+    }
+
+    private int segments() {
+        return directory.toFile().listFiles().length;
+    }
+}
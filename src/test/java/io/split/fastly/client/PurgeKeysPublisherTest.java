@@ -0,0 +1,206 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PurgeKeysPublisherTest {
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor executor;
+
+    @Mock
+    private Response response;
+
+    private final List<String> sentKeys = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Response>> sent = new CopyOnWriteArrayList<>();
+    private FastlyApiClient client;
+
+    @Before
+    public void init() {
+        when(response.getStatusCode()).thenReturn(200);
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(i -> {
+            @SuppressWarnings("unchecked")
+            Map<String, String> headers = (Map<String, String>) i.getArguments()[2];
+            sentKeys.add(headers.get("Surrogate-Key"));
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            sent.add(future);
+            return future;
+        });
+        client = new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+    }
+
+    @Test
+    public void testBatchesKeysWithBoundedInFlight() {
+        KeysPublisher keys = new KeysPublisher(keys(600), null);
+        RecordingSubscriber results = new RecordingSubscriber();
+        new PurgeKeysPublisher(client, keys, 2).subscribe(results);
+        results.request(Long.MAX_VALUE);
+
+        assertThat(sent.size(), is(2));
+        assertThat(sentKeys.get(0).split(" ").length, is(256));
+        assertThat(sentKeys.get(1).split(" ").length, is(256));
+        assertThat(keys.emitted, is(600));
+
+        sent.get(0).complete(response);
+        assertThat(results.batches.size(), is(1));
+        assertThat(sent.size(), is(3));
+        assertThat(sentKeys.get(2).split(" ").length, is(600 - 512));
+
+        sent.get(1).completeExceptionally(new IOException("reset"));
+        sent.get(2).complete(response);
+        assertThat(results.completed, is(true));
+        assertThat(results.batches.get(1).getError(), instanceOf(IOException.class));
+        assertThat(results.batches.get(2).getKeys().get(0), is("key512"));
+        assertThat(results.batches.stream().mapToInt(b -> b.getKeys().size()).sum(), is(600));
+    }
+
+    @Test
+    public void testSlowSubscriberHoldsBackBatches() {
+        KeysPublisher keys = new KeysPublisher(keys(2000), null);
+        RecordingSubscriber results = new RecordingSubscriber();
+        new PurgeKeysPublisher(client, keys, 2).subscribe(results);
+        results.request(1);
+
+        sent.get(0).complete(response);
+        sent.get(1).complete(response);
+        assertThat(results.batches.size(), is(1));
+        assertThat(sent.size(), is(3));
+
+        sent.get(2).complete(response);
+        assertThat(sent.size(), is(3));
+        assertThat(keys.emitted, is(4 * 256));
+
+        results.request(2);
+        assertThat(results.batches.size(), is(3));
+        assertThat(sent.size(), is(5));
+        assertThat(results.completed, is(false));
+    }
+
+    @Test
+    public void testUpstreamErrorIsSignalledAfterPendingBatches() {
+        KeysPublisher keys = new KeysPublisher(keys(10), new IllegalStateException("cdc lag"));
+        RecordingSubscriber results = new RecordingSubscriber();
+        new PurgeKeysPublisher(client, keys, 4, true, FastlyApiClient.FASTLY_URL).subscribe(results);
+        results.request(Long.MAX_VALUE);
+
+        assertThat(sent.size(), is(1));
+        assertThat(results.error, is(nullValue()));
+        sent.get(0).complete(response);
+        assertThat(results.batches.get(0).isSuccessful(), is(true));
+        assertThat(results.error, instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testCancelStopsTheKeys() {
+        KeysPublisher keys = new KeysPublisher(keys(1000), null);
+        RecordingSubscriber results = new RecordingSubscriber();
+        new PurgeKeysPublisher(client, keys, 1).subscribe(results);
+        results.request(Long.MAX_VALUE);
+        results.subscription.cancel();
+
+        sent.get(0).complete(response);
+        assertThat(keys.cancelled, is(true));
+        assertThat(results.batches.size(), is(0));
+        assertThat(sent.size(), is(1));
+    }
+
+    private static List<String> keys(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "key" + i).collect(Collectors.toList());
+    }
+
+    /**
+     * Emits the given keys synchronously as they are requested, then completes or fails.
+     */
+    private static final class KeysPublisher implements Publisher<String> {
+
+        private final List<String> keys;
+        private final Throwable error;
+        private int emitted;
+        private boolean cancelled;
+
+        KeysPublisher(List<String> keys, Throwable error) {
+            this.keys = keys;
+            this.error = error;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    for (long i = 0; i < n && emitted < keys.size() && !cancelled; i++) {
+                        subscriber.onNext(keys.get(emitted++));
+                    }
+                    if (emitted == keys.size() && !cancelled) {
+                        cancelled = true;
+                        if (error != null) {
+                            subscriber.onError(error);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static final class RecordingSubscriber implements Subscriber<PurgeKeysPublisher.Batch> {
+
+        private final List<PurgeKeysPublisher.Batch> batches = new CopyOnWriteArrayList<>();
+        private Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        void request(long n) {
+            subscription.request(n);
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(PurgeKeysPublisher.Batch batch) {
+            batches.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
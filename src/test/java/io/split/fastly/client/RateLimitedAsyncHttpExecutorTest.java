@@ -0,0 +1,151 @@
+package io.split.fastly.client;
+
+import org.asynchttpclient.Response;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+public class RateLimitedAsyncHttpExecutorTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void testRequestsPassUntilBudgetIsKnown() {
+        RateLimitedAsyncHttpExecutor.TokenBucket bucket = new RateLimitedAsyncHttpExecutor.TokenBucket(5, 10);
+        for (int i = 0; i < 100; i++) {
+            assertThat(bucket.reserve(NOW), is(0L));
+        }
+    }
+
+    @Test
+    public void testRequestsArePacedOverTheWindow() {
+        RateLimitedAsyncHttpExecutor.TokenBucket bucket = new RateLimitedAsyncHttpExecutor.TokenBucket(5, 10);
+        // 15 remaining, 5 kept in reserve, 10 seconds to go: one request per second after the initial burst.
+        bucket.update(response(200, 15, NOW + 10_000), NOW);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.reserve(NOW), is(0L));
+        }
+        assertThat(bucket.reserve(NOW), is(1000L));
+        assertThat(bucket.reserve(NOW), is(2000L));
+        assertThat(bucket.reserve(NOW + 3000), is(0L));
+    }
+
+    @Test
+    public void testQueuedRequestsAreSpacedPastTheReset() {
+        RateLimitedAsyncHttpExecutor.TokenBucket bucket = new RateLimitedAsyncHttpExecutor.TokenBucket(5, 10);
+        bucket.update(response(200, 15, NOW + 10_000), NOW);
+
+        for (int i = 0; i < 10; i++) {
+            bucket.reserve(NOW);
+        }
+        for (int i = 1; i <= 12; i++) {
+            assertThat(bucket.reserve(NOW), is(i * 1000L));
+        }
+    }
+
+    @Test
+    public void testTooManyRequestsBlocksUntilReset() {
+        RateLimitedAsyncHttpExecutor.TokenBucket bucket = new RateLimitedAsyncHttpExecutor.TokenBucket(5, 10);
+        bucket.update(response(429, 0, NOW + 30_000), NOW);
+
+        assertThat(bucket.reserve(NOW), is(30_000L));
+        // no rate seen yet: maxBurst requests per second after the reset
+        assertThat(bucket.reserve(NOW), is(30_100L));
+        assertThat(bucket.reserve(NOW), is(30_200L));
+    }
+
+    @Test
+    public void testRequestsAfterTheResetQueueBehindTheBacklog() {
+        RateLimitedAsyncHttpExecutor.TokenBucket bucket = new RateLimitedAsyncHttpExecutor.TokenBucket(5, 10);
+        bucket.update(response(429, 0, NOW + 30_000), NOW);
+        for (int i = 0; i < 3; i++) {
+            bucket.reserve(NOW);
+        }
+
+        // queued at 30_000, 30_100 and 30_200: the next one goes after them
+        assertThat(bucket.reserve(NOW + 30_000), is(300L));
+        assertThat(bucket.reserve(NOW + 30_250), is(150L));
+    }
+
+    @Test
+    public void testNewWindowIsReducedByTheQueuedRequests() {
+        RateLimitedAsyncHttpExecutor.TokenBucket bucket = new RateLimitedAsyncHttpExecutor.TokenBucket(5, 10);
+        bucket.update(response(429, 0, NOW + 30_000), NOW);
+        for (int i = 0; i < 4; i++) {
+            bucket.reserve(NOW);
+        }
+
+        // the first queued request goes at the reset, 3 are still queued when the new window is reported
+        bucket.update(response(200, 15, NOW + 40_000), NOW + 30_000);
+        for (int i = 0; i < 7; i++) {
+            assertThat(bucket.reserve(NOW + 30_000), is(0L));
+        }
+        assertThat(bucket.reserve(NOW + 30_000), is(1000L));
+    }
+
+    @Test
+    public void testRequestsAfterCloseFail() throws Exception {
+        FastlyApiClient.AsyncHttpExecutor delegate = Mockito.mock(FastlyApiClient.AsyncHttpExecutor.class);
+        Response throttled = response(429, 0, NOW + 30_000);
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(throttled));
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+        RateLimitedAsyncHttpExecutor executor = new RateLimitedAsyncHttpExecutor(delegate, 0, 10, clock);
+        String url = "https://api.fastly.com/service/someServiceId/purge/key";
+        executor.executeAsync(url, FastlyApiClient.Method.POST, Collections.emptyMap(), Collections.emptyMap())
+                .get(1, TimeUnit.SECONDS);
+        executor.close();
+
+        CompletableFuture<Response> delayed = executor.executeAsync(url, FastlyApiClient.Method.POST,
+                Collections.emptyMap(), Collections.emptyMap());
+
+        assertThat(delayed.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void testBudgetIsExposedPerApiKeyAndService() throws Exception {
+        FastlyApiClient.AsyncHttpExecutor delegate = Mockito.mock(FastlyApiClient.AsyncHttpExecutor.class);
+        Response response = response(200, 900, NOW + 60_000);
+        when(delegate.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+        RateLimitedAsyncHttpExecutor executor = new RateLimitedAsyncHttpExecutor(delegate, 0, 10, clock);
+
+        executor.executeAsync("https://api.fastly.com/service/someServiceId/purge/key", FastlyApiClient.Method.POST,
+                Collections.singletonMap("Fastly-Key", "someApiKey"), Collections.emptyMap()).get(1, TimeUnit.SECONDS);
+
+        RateLimitedAsyncHttpExecutor.Budget budget = executor.getBudget("someApiKey", "someServiceId").get();
+        assertThat(budget.getRemaining(), is(900L));
+        assertThat(budget.getResetAtMillis(), is(NOW + 60_000));
+        assertThat(budget.getRequestsPerSecond(), is(15.0));
+        assertThat(executor.getBudget("someApiKey", "otherServiceId").isPresent(), is(false));
+        executor.close();
+    }
+
+    @Test
+    public void testServiceIdIsTakenFromUrl() {
+        assertThat(RateLimitedAsyncHttpExecutor.serviceId("https://api.fastly.com/service/abc/purge_all"), is("abc"));
+        assertThat(RateLimitedAsyncHttpExecutor.serviceId("https://api.fastly.com/service/abc"), is("abc"));
+        assertThat(RateLimitedAsyncHttpExecutor.serviceId("https://www.example.com/index.html"), is((String) null));
+    }
+
+    private static Response response(int status, long remaining, long resetAtMillis) {
+        Response response = Mockito.mock(Response.class);
+        when(response.getStatusCode()).thenReturn(status);
+        when(response.getHeader(RateLimitedAsyncHttpExecutor.REMAINING_HEADER)).thenReturn(Long.toString(remaining));
+        when(response.getHeader(RateLimitedAsyncHttpExecutor.RESET_HEADER))
+                .thenReturn(Long.toString(TimeUnit.MILLISECONDS.toSeconds(resetAtMillis)));
+        return response;
+    }
+}
@@ -0,0 +1,75 @@
+package io.split.fastly.client;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.asynchttpclient.request.body.Body;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StreamingFormBodyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEncodesLikeUrlEncoder() throws IOException {
+        String content = "sub vcl_recv {\n  set req.http.X = \"a=1&b=2+3 %20 ñ ~!'()\";\n}";
+        StreamingFormBody generator = StreamingFormBody.of(ImmutableMap.of("name", "main vcl", "id", "a&b"), "content",
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(read(generator), is("name=" + URLEncoder.encode("main vcl", "UTF-8")
+                + "&id=" + URLEncoder.encode("a&b", "UTF-8")
+                + "&content=" + URLEncoder.encode(content, "UTF-8")));
+        assertThat(generator.getContentLength(), is(-1L));
+    }
+
+    @Test
+    public void testFileBodiesSendTheMeasuredContentOnEveryAttempt() throws IOException {
+        Path file = folder.newFile("main.vcl").toPath();
+        Files.write(file, "a b&c".getBytes(StandardCharsets.UTF_8));
+        StreamingFormBody generator = StreamingFormBody.of(ImmutableMap.of(), "content", file);
+
+        Path replacement = folder.newFile().toPath();
+        Files.write(replacement, "something else entirely".getBytes(StandardCharsets.UTF_8));
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+
+        assertThat(read(generator), is("content=a+b%26c"));
+        assertThat(read(generator), is("content=a+b%26c"));
+        assertThat(generator.getContentLength(), is((long) "content=a+b%26c".length()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInputStreamBodiesAreSentOnce() {
+        StreamingFormBody generator = StreamingFormBody.of(ImmutableMap.of(), "content",
+                new ByteArrayInputStream(new byte[0]));
+
+        generator.createBody();
+        generator.createBody();
+    }
+
+    private static String read(StreamingFormBody generator) throws IOException {
+        StringBuilder encoded = new StringBuilder();
+        try (Body body = generator.createBody()) {
+            Body.BodyState state;
+            do {
+                ByteBuf chunk = Unpooled.buffer(5, 5);
+                state = body.transferTo(chunk);
+                encoded.append(chunk.toString(StandardCharsets.US_ASCII));
+            } while (state != Body.BodyState.STOP);
+        }
+        return encoded.toString();
+    }
+}
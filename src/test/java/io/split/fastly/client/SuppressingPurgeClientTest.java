@@ -0,0 +1,190 @@
+package io.split.fastly.client;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.asynchttpclient.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SuppressingPurgeClientTest {
+
+    @Mock
+    private FastlyApiClient.AsyncHttpExecutor executor;
+
+    @Mock
+    private Response ok;
+
+    @Mock
+    private Response error;
+
+    @Captor
+    private ArgumentCaptor<String> urlCaptor;
+
+    private FastlyApiClient client;
+    private RecentPurgeCache cache;
+
+    @Before
+    public void init() {
+        client = new FastlyApiClient("someApiKey", "someServiceId", null, executor);
+        when(ok.getStatusCode()).thenReturn(200);
+        when(error.getStatusCode()).thenReturn(503);
+    }
+
+    @After
+    public void cleanUp() {
+        cache.close();
+    }
+
+    @Test
+    public void testRepeatsWithinWindowAreMergedIntoOneTrailingPurge() {
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        cache = new RecentPurgeCache(100, TimeUnit.MILLISECONDS, 1000);
+        SuppressingPurgeClient suppressing = new SuppressingPurgeClient(client, cache);
+
+        assertThat(suppressing.purgeKey("hot").join(), is(ok));
+        CompletableFuture<Response> second = suppressing.purgeKey("hot");
+        CompletableFuture<Response> third = suppressing.purgeKey("hot");
+        Mockito.verify(executor, Mockito.times(1)).executeAsync(Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+
+        assertThat(second.join(), is(ok));
+        assertThat(third.join(), is(ok));
+        Mockito.verify(executor, Mockito.times(2)).executeAsync(Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getTrailingPurges(), is(1L));
+    }
+
+    @Test
+    public void testPurgeArrivingWhileInFlightIsSentAfterIt() {
+        CompletableFuture<Response> first = new CompletableFuture<>();
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(first)
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        cache = new RecentPurgeCache(0, TimeUnit.MILLISECONDS, 1000);
+        SuppressingPurgeClient suppressing = new SuppressingPurgeClient(client, cache);
+
+        suppressing.purgeKey("key");
+        CompletableFuture<Response> second = suppressing.purgeKey("key");
+        Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+        Mockito.verify(executor, Mockito.times(1)).executeAsync(Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+
+        first.complete(ok);
+        assertThat(second.join(), is(ok));
+        Mockito.verify(executor, Mockito.times(2)).executeAsync(Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+    }
+
+    @Test
+    public void testMergedCallersGetTheirOwnHandle() {
+        CompletableFuture<Response> first = new CompletableFuture<>();
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(first)
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        cache = new RecentPurgeCache(0, TimeUnit.MILLISECONDS, 1000);
+        SuppressingPurgeClient suppressing = new SuppressingPurgeClient(client, cache);
+
+        suppressing.purgeKey("key");
+        CompletableFuture<Response> cancelled = suppressing.purgeKey("key");
+        CompletableFuture<Response> other = suppressing.purgeKey("key");
+        assertThat(cancelled.cancel(false), is(true));
+
+        first.complete(ok);
+        assertThat(other.join(), is(ok));
+        Mockito.verify(executor, Mockito.times(2)).executeAsync(Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+    }
+
+    @Test
+    public void testPurgesGoToTheGivenUrl() {
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        cache = new RecentPurgeCache(100, TimeUnit.MILLISECONDS, 1000);
+        SuppressingPurgeClient suppressing = new SuppressingPurgeClient(client, cache, "http://localhost:8080");
+
+        suppressing.softPurgeKey("key").join();
+        suppressing.purgeKeys(Arrays.asList("a", "b")).join();
+
+        Mockito.verify(executor, Mockito.times(2)).executeAsync(urlCaptor.capture(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+        assertThat(urlCaptor.getAllValues().get(0), is("http://localhost:8080/service/someServiceId/purge/key"));
+        assertThat(urlCaptor.getAllValues().get(1), is("http://localhost:8080/service/someServiceId/purge"));
+    }
+
+    @Test
+    public void testKeysAreScopedByServiceAndPurgeKind() {
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        cache = new RecentPurgeCache(1, TimeUnit.HOURS, 1000);
+        SuppressingPurgeClient suppressing = new SuppressingPurgeClient(client, cache);
+        SuppressingPurgeClient other = new SuppressingPurgeClient(
+                new FastlyApiClient("someApiKey", "otherServiceId", null, executor), cache);
+
+        suppressing.purgeKey("key").join();
+        suppressing.softPurgeKey("key").join();
+        other.purgeKey("key").join();
+        CompletableFuture<List<Response>> responses = suppressing.purgeKeys(Arrays.asList("key", "fresh1", "fresh2"));
+
+        Mockito.verify(executor, Mockito.times(4)).executeAsync(urlCaptor.capture(), Mockito.any(), Mockito.any(),
+                Mockito.any());
+        assertThat(urlCaptor.getAllValues().get(2), is("https://api.fastly.com/service/otherServiceId/purge/key"));
+        assertThat(urlCaptor.getAllValues().get(3), is("https://api.fastly.com/service/someServiceId/purge"));
+        assertThat(cache.size(), is(5L));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(responses.isDone(), is(false));
+    }
+
+    @Test
+    public void testFailedPurgesDoNotOpenAWindow() {
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(error))
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        cache = new RecentPurgeCache(1, TimeUnit.HOURS, 1000);
+        SuppressingPurgeClient suppressing = new SuppressingPurgeClient(client, cache);
+
+        assertThat(suppressing.purgeKey("key").join(), is(error));
+        assertThat(suppressing.purgeKey("key").join(), is(ok));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+
+    @Test
+    public void testPurgesAfterCloseFail() {
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(ok));
+        cache = new RecentPurgeCache(1, TimeUnit.HOURS, 1000);
+        SuppressingPurgeClient suppressing = new SuppressingPurgeClient(client, cache);
+        suppressing.purgeKey("hot").join();
+        cache.close();
+
+        CompletableFuture<Response> late = suppressing.purgeKey("hot");
+
+        assertThat(late.isCompletedExceptionally(), is(true));
+        try {
+            late.join();
+        } catch (CompletionException e) {
+            assertThat(e.getCause() instanceof IllegalStateException, is(true));
+        }
+        assertThat(cache.getHits(), is(0L));
+    }
+}
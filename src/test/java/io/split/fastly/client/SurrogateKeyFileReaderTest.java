@@ -0,0 +1,103 @@
+package io.split.fastly.client;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SurrogateKeyFileReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPacksKeysUnderCountAndHeaderLimits() throws IOException {
+        Path file = write("a\r\nbb\n\n  \nccc\ndddd \neeeee\nff");
+
+        try (SurrogateKeyFileReader reader = new SurrogateKeyFileReader(file, 0, 3, 10, 16)) {
+            SurrogateKeyFileReader.Batch batch = reader.next();
+            assertThat(batch.getSurrogateKeys(), is("a bb ccc"));
+            assertThat(batch.getCount(), is(3));
+            assertThat(batch.getEnd(), is(14L));
+
+            batch = reader.next();
+            assertThat(batch.getSurrogateKeys(), is("dddd eeeee"));
+            assertThat(batch.getCount(), is(2));
+
+            batch = reader.next();
+            assertThat(batch.getSurrogateKeys(), is("ff"));
+            assertThat(batch.getEnd(), is(reader.getSize()));
+            assertThat(reader.next(), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void testResumesFromOffsetAcrossWindows() throws IOException {
+        StringBuilder keys = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            keys.append("key-").append(i).append('\n');
+        }
+        Path file = write(keys.toString());
+
+        SurrogateKeyFileReader.Batch first;
+        try (SurrogateKeyFileReader reader = new SurrogateKeyFileReader(file, 0, 256, 64, 64)) {
+            first = reader.next();
+        }
+        StringBuilder read = new StringBuilder();
+        int count = 0;
+        try (SurrogateKeyFileReader reader = new SurrogateKeyFileReader(file, first.getEnd(), 256, 64, 64)) {
+            SurrogateKeyFileReader.Batch batch;
+            while ((batch = reader.next()) != null) {
+                read.append(batch.getSurrogateKeys()).append(' ');
+                count += batch.getCount();
+            }
+        }
+
+        assertThat(count, is(1000 - first.getCount()));
+        assertThat(read.toString().startsWith("key-" + first.getCount() + " "), is(true));
+        assertThat(read.toString().endsWith(" key-999 "), is(true));
+    }
+
+    @Test
+    public void testKeysOfALineAreCountedOneByOne() throws IOException {
+        Path file = write("a b\tc\nd  e f\ng\n");
+
+        try (SurrogateKeyFileReader reader = new SurrogateKeyFileReader(file, 0, 4, 64, 64)) {
+            SurrogateKeyFileReader.Batch batch = reader.next();
+            assertThat(batch.getSurrogateKeys(), is("a b c d"));
+            assertThat(batch.getCount(), is(4));
+            assertThat(batch.getEnd(), is(9L));
+
+            batch = reader.next();
+            assertThat(batch.getSurrogateKeys(), is("e f g"));
+            assertThat(batch.getCount(), is(3));
+            assertThat(reader.next(), is(nullValue()));
+        }
+
+        try (SurrogateKeyFileReader reader = new SurrogateKeyFileReader(file, 9, 4, 64, 64)) {
+            assertThat(reader.next().getSurrogateKeys(), is("e f g"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeyLongerThanHeaderIsRejected() throws IOException {
+        try (SurrogateKeyFileReader reader = new SurrogateKeyFileReader(write("short\nway-too-long\n"), 0, 256, 8, 16)) {
+            reader.next();
+            reader.next();
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
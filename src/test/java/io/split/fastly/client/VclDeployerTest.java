@@ -0,0 +1,119 @@
+package io.split.fastly.client;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.asynchttpclient.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+public class VclDeployerTest {
+
+    private static final String SERVICE_ID = "someServiceId";
+
+    private LocalFastlyServer server;
+    private FastlyApiClient client;
+
+    @Before
+    public void init() throws InterruptedException {
+        server = new LocalFastlyServer();
+        client = new FastlyApiClient("someApiKey", SERVICE_ID);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.closeConnectionPool();
+        server.close();
+    }
+
+    @Test
+    public void testOnlyChangedFilesAreSent() throws Exception {
+        VclDeployer deployer = new VclDeployer(client, 4, server.getBaseUrl(), ImmutableMap.of());
+        Map<String, String> vcls = new LinkedHashMap<>();
+        vcls.put("main", "sub vcl_recv { }");
+        vcls.put("backends", "backend origin { }");
+        vcls.put("acl", "acl office { }");
+
+        VclDeployResult first = deployer.deploy(3, vcls).get(5, TimeUnit.SECONDS);
+        assertThat(first.isSuccessful(), is(true));
+        assertThat(first.count(VclDeployResult.Status.CREATED), is(3L));
+        assertThat(first.getFiles().get(1).getName(), is("backends"));
+        assertThat(server.getVcl(SERVICE_ID, 3, "acl"), is("acl office { }"));
+        LocalFastlyServer.RecordedRequest created = server.getRequests().stream()
+                .filter(r -> r.getMethod().equals("POST"))
+                .findFirst()
+                .get();
+        assertThat(created.getPath(), is("/service/" + SERVICE_ID + "/version/3/vcl"));
+        assertThat(created.getFormParameters().keySet(), is(ImmutableSet.of("name", "content")));
+
+        server.clearRequests();
+        vcls.put("main", "sub vcl_recv { return(pass); }");
+        VclDeployResult second = deployer.deploy(3, vcls).get(5, TimeUnit.SECONDS);
+
+        assertThat(second.count(VclDeployResult.Status.UNCHANGED), is(2L));
+        assertThat(second.getFiles().get(0).getStatus(), is(VclDeployResult.Status.UPDATED));
+        assertThat(server.getRequests().size(), is(1));
+        assertThat(server.getRequests().get(0).getPath(), is("/service/" + SERVICE_ID + "/version/3/vcl/main"));
+        assertThat(server.getVcl(SERVICE_ID, 3, "main"), is("sub vcl_recv { return(pass); }"));
+        assertThat(deployer.getKnownHashes().get("main"), is(VclDeployer.hash("sub vcl_recv { return(pass); }")));
+    }
+
+    @Test
+    public void testFailedFilesAreReportedAndRetried() throws Exception {
+        VclDeployer deployer = new VclDeployer(client, 4, server.getBaseUrl(), ImmutableMap.of());
+        server.withErrorRate(1);
+
+        VclDeployResult failed = deployer.deploy(3, ImmutableMap.of("main", "sub vcl_recv { }"))
+                .get(5, TimeUnit.SECONDS);
+        assertThat(failed.isSuccessful(), is(false));
+        assertThat(failed.getFailed().get(0).getResponse().getStatusCode(), is(500));
+
+        server.withErrorRate(0);
+        VclDeployResult retried = deployer.deploy(3, ImmutableMap.of("main", "sub vcl_recv { }"))
+                .get(5, TimeUnit.SECONDS);
+        assertThat(retried.getFiles().get(0).getStatus(), is(VclDeployResult.Status.CREATED));
+    }
+
+    @Test
+    public void testParallelismIsBounded() {
+        FastlyApiClient.AsyncHttpExecutor executor = Mockito.mock(FastlyApiClient.AsyncHttpExecutor.class);
+        Response ok = Mockito.mock(Response.class);
+        when(ok.getStatusCode()).thenReturn(200);
+        List<CompletableFuture<Response>> pending = new ArrayList<>();
+        when(executor.executeAsync(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(i -> {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        });
+        VclDeployer deployer = new VclDeployer(new FastlyApiClient("someApiKey", SERVICE_ID, null, executor), 2,
+                FastlyApiClient.FASTLY_URL, ImmutableMap.of());
+        Map<String, String> vcls = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            vcls.put("vcl" + i, "content" + i);
+        }
+
+        CompletableFuture<VclDeployResult> result = deployer.deploy(7, vcls);
+        assertThat(pending.size(), is(2));
+        pending.get(0).complete(ok);
+        assertThat(pending.size(), is(3));
+        for (int i = 1; i < 5; i++) {
+            pending.get(i).complete(ok);
+        }
+
+        assertThat(result.join().count(VclDeployResult.Status.UPDATED), is(5L));
+        assertThat(pending.size(), is(5));
+    }
+}